@@ -27,13 +27,23 @@ import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import org.kopi.ebics.interfaces.EbicsUser;
 import org.kopi.ebics.interfaces.PasswordCallback;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
+import org.kopi.ebics.utils.NamedThreadFactory;
 
 /**
  * Simple manager for EBICS certificates.
@@ -49,22 +59,69 @@ public class CertificateManager {
   }
 
   /**
-   * Creates the certificates for the user
+   * Creates the certificates for the user.
+   * The three key pairs and certificates are generated in parallel.
    * @throws GeneralSecurityException
    * @throws IOException
    */
   public void create() throws GeneralSecurityException, IOException {
-    Calendar		calendar;
+    Calendar			calendar;
+    final Date			end;
+    List<Future<Void>>		tasks;
+    long			start;
 
+    start = Metrics.start();
     calendar = Calendar.getInstance();
     calendar.add(Calendar.DAY_OF_YEAR, X509Constants.DEFAULT_DURATION);
-
-    createA005Certificate(new Date(calendar.getTimeInMillis()));
-    createX002Certificate(new Date(calendar.getTimeInMillis()));
-    createE002Certificate(new Date(calendar.getTimeInMillis()));
+    end = new Date(calendar.getTimeInMillis());
+
+    tasks = new ArrayList<Future<Void>>();
+    tasks.add(KEYGEN_EXECUTOR.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        createA005Certificate(end);
+        return null;
+      }
+    }));
+    tasks.add(KEYGEN_EXECUTOR.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        createX002Certificate(end);
+        return null;
+      }
+    }));
+    createE002Certificate(end);
+
+    for (Future<Void> task : tasks) {
+      await(task);
+    }
+    Metrics.stop(Phase.KEY_GENERATION, start);
     setUserCertificates();
   }
 
+  /**
+   * Waits for a certificate creation task and rethrows its failure.
+   * @param task the certificate creation task
+   * @throws GeneralSecurityException
+   * @throws IOException
+   */
+  private static void await(Future<Void> task) throws GeneralSecurityException, IOException {
+    try {
+      task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e.getMessage());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof GeneralSecurityException) {
+        throw (GeneralSecurityException) e.getCause();
+      } else if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else {
+        throw new GeneralSecurityException(e.getCause());
+      }
+    }
+  }
+
   /**
    * Sets the user certificates
    */
@@ -161,6 +218,7 @@ public class CertificateManager {
     }
 
     loader.load(path, pwdCallBack.getPassword());
+    keyStorePath = path;
     a005Certificate = loader.getCertificate(user.getUserId() + "-A005");
     x002Certificate = loader.getCertificate(user.getUserId() + "-X002");
     e002Certificate = loader.getCertificate(user.getUserId() + "-E002");
@@ -188,9 +246,21 @@ public class CertificateManager {
       filename += ".p12";
     }
 
-    FileOutputStream fos = new FileOutputStream(filename);
-    writePKCS12Certificate(password, fos);
-    fos.close();
+    try (FileOutputStream fos = new FileOutputStream(filename)) {
+      writePKCS12Certificate(password, fos);
+    }
+    KeyStoreCache.getInstance().invalidate(filename);
+    keyStorePath = filename;
+  }
+
+  /**
+   * Drops the key store of the user from the shared {@link KeyStoreCache}.
+   * The certificates and keys already held by this manager stay usable.
+   */
+  public void release() {
+    if (keyStorePath != null) {
+      KeyStoreCache.getInstance().invalidate(keyStorePath);
+    }
   }
 
   /**
@@ -236,4 +306,14 @@ public class CertificateManager {
   private PrivateKey					a005PrivateKey;
   private PrivateKey					x002PrivateKey;
   private PrivateKey					e002PrivateKey;
+  private String					keyStorePath;
+
+  /**
+   * Shared daemon threads generating the A005 and X002 key pairs
+   * while the calling thread generates the E002 one. The pool is bounded
+   * by the number of cores; extra requests wait in its queue.
+   */
+  private static final ExecutorService			KEYGEN_EXECUTOR = Executors.newFixedThreadPool(
+    Runtime.getRuntime().availableProcessors(),
+    new NamedThreadFactory("ebics-certificate"));
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.certificate;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.kopi.ebics.utils.NamedThreadFactory;
+
+
+/**
+ * A pool of RSA key pairs generated in the background.
+ *
+ * <p>Bulk user creation spends most of its time in RSA key generation.
+ * Once installed with {@link KeyUtil#setKeyPairPool(KeyPairPool)}, the pool
+ * serves {@link KeyUtil#makeKeyPair(int)} calls of the same key size from
+ * key pairs that worker threads generate ahead of time. When the pool is
+ * empty the caller generates its key pair itself, so the throughput is
+ * bounded by the available cores rather than by a single thread.
+ * If the workers cannot generate key pairs, the failure is reported to
+ * the next {@link #take()} call instead of leaving the pool empty.
+ *
+ */
+public class KeyPairPool {
+
+  /**
+   * Constructs a new <code>KeyPairPool</code>.
+   * @param keySize the RSA key size
+   * @param capacity the maximum number of key pairs kept in advance
+   * @param threads the number of generating threads
+   */
+  public KeyPairPool(int keySize, int capacity, int threads) {
+    this.keySize = keySize;
+    this.threads = threads;
+    queue = new ArrayBlockingQueue<KeyPair>(capacity);
+  }
+
+  /**
+   * Starts the generating threads.
+   */
+  public synchronized void start() {
+    if (workers != null) {
+      return;
+    }
+
+    workers = Executors.newFixedThreadPool(threads, new NamedThreadFactory("ebics-keygen"));
+    for (int i = 0; i < threads; i++) {
+      workers.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            while (!Thread.currentThread().isInterrupted()) {
+              queue.put(KeyUtil.generateKeyPair(keySize));
+            }
+          } catch (InterruptedException e) {
+            // the pool is shut down
+          } catch (NoSuchAlgorithmException e) {
+            failure = e;
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Returns a pre-generated key pair, or generates one if none is ready.
+   * @return a new key pair
+   * @throws NoSuchAlgorithmException the workers failed to generate a key pair
+   */
+  public KeyPair take() throws NoSuchAlgorithmException {
+    KeyPair		keypair;
+
+    if (failure != null) {
+      throw failure;
+    }
+
+    keypair = queue.poll();
+    if (keypair == null) {
+      keypair = KeyUtil.generateKeyPair(keySize);
+    }
+
+    return keypair;
+  }
+
+  /**
+   * Returns the size of the generated keys.
+   * @return the key size
+   */
+  public int getKeySize() {
+    return keySize;
+  }
+
+  /**
+   * Returns the number of key pairs ready to be taken.
+   * @return the number of available key pairs
+   */
+  public int available() {
+    return queue.size();
+  }
+
+  /**
+   * Stops the generating threads and drops the unused key pairs.
+   */
+  public synchronized void shutdown() {
+    if (workers != null) {
+      workers.shutdownNow();
+      workers = null;
+    }
+    queue.clear();
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final int				keySize;
+  private final int				threads;
+  private final BlockingQueue<KeyPair>		queue;
+  private ExecutorService			workers;
+  private volatile NoSuchAlgorithmException	failure;
+}
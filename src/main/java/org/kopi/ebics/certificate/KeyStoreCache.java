@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.certificate;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A process wide cache of decrypted key stores.
+ *
+ * <p>Entries are keyed by the absolute key store path and are only
+ * returned while the file modification time and size are unchanged and
+ * the same password is supplied. The decrypted private keys and the
+ * certificates are shared between all sessions using the key store, so
+ * the PKCS12 decryption happens once per key rotation instead of once
+ * per session.
+ *
+ * <p>The cache keeps at most {@link #setLimits(int, long) a fixed number}
+ * of key stores and drops the least recently used ones first, as well as
+ * the ones that were not used during the idle timeout. Passwords are not
+ * kept: only a salted digest is stored to check the supplied password.
+ *
+ */
+public class KeyStoreCache {
+
+  private KeyStoreCache() {
+    entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    maxEntries = DEFAULT_MAX_ENTRIES;
+    idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  }
+
+  /**
+   * Returns the shared key store cache.
+   * @return the shared key store cache.
+   */
+  public static KeyStoreCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Sets the bounds of the cache.
+   * @param maxEntries the maximum number of cached key stores, zero to disable the cache
+   * @param idleTimeout the time in milliseconds after which an unused key store
+   *                    is dropped, zero to keep key stores until the cache is full
+   */
+  public synchronized void setLimits(int maxEntries, long idleTimeout) {
+    this.maxEntries = maxEntries;
+    this.idleTimeout = idleTimeout;
+    evict();
+  }
+
+  /**
+   * Returns the cached entry of a key store if it is still up to date.
+   * @param path the key store path
+   * @param password the key store password
+   * @return the cached entry or null
+   */
+  public synchronized Entry get(String path, char[] password) {
+    File		file;
+    Entry		entry;
+
+    evict();
+    file = new File(path);
+    entry = entries.get(file.getAbsolutePath());
+    if (entry == null) {
+      return null;
+    }
+
+    if (entry.lastModified != file.lastModified()
+        || entry.length != file.length()
+        || !MessageDigest.isEqual(entry.passwordDigest, digest(password)))
+    {
+      entries.remove(file.getAbsolutePath());
+      return null;
+    }
+
+    entry.lastAccess = System.currentTimeMillis();
+    return entry;
+  }
+
+  /**
+   * Caches a key store that has just been read from or written to the given path.
+   * @param path the key store path
+   * @param password the key store password
+   * @param keyStore the loaded key store
+   * @param certificates the certificates of the key store
+   * @return the cached entry
+   */
+  public synchronized Entry put(String path,
+                                char[] password,
+                                KeyStore keyStore,
+                                Map<String, X509Certificate> certificates)
+  {
+    File		file;
+    Entry		entry;
+
+    file = new File(path);
+    entry = new Entry(keyStore,
+                      certificates,
+                      digest(password),
+                      file.lastModified(),
+                      file.length());
+    entry.lastAccess = System.currentTimeMillis();
+    if (maxEntries > 0) {
+      entries.put(file.getAbsolutePath(), entry);
+      evict();
+    }
+
+    return entry;
+  }
+
+  /**
+   * Removes the cached entry of the given key store.
+   * @param path the key store path
+   */
+  public synchronized void invalidate(String path) {
+    entries.remove(new File(path).getAbsolutePath());
+  }
+
+  /**
+   * Removes all cached key stores.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Drops the idle key stores and the least recently used ones
+   * while the cache is too big.
+   */
+  private void evict() {
+    Iterator<Entry>	iter;
+    long		now;
+
+    now = System.currentTimeMillis();
+    iter = entries.values().iterator();
+    while (iter.hasNext()) {
+      Entry		entry;
+
+      entry = iter.next();
+      if (entries.size() > maxEntries
+          || (idleTimeout > 0 && now - entry.lastAccess > idleTimeout))
+      {
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Computes the salted digest of a key store password.
+   * @param password the password
+   * @return the digest
+   */
+  private static byte[] digest(char[] password) {
+    MessageDigest	digest;
+    ByteBuffer		bytes;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+
+    digest.update(SALT);
+    if (password != null) {
+      bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+      digest.update(bytes.duplicate());
+      Arrays.fill(bytes.array(), (byte) 0);
+    }
+
+    return digest.digest();
+  }
+
+  /**
+   * Creates the random salt of the password digests of this process.
+   * @return the salt
+   */
+  private static byte[] createSalt() {
+    byte[]		salt;
+
+    salt = new byte[16];
+    new SecureRandom().nextBytes(salt);
+    return salt;
+  }
+
+  /**
+   * A cached key store and its decrypted key material.
+   */
+  public static class Entry {
+
+    Entry(KeyStore keyStore,
+          Map<String, X509Certificate> certificates,
+          byte[] passwordDigest,
+          long lastModified,
+          long length)
+    {
+      this.keyStore = keyStore;
+      this.certificates = certificates;
+      this.passwordDigest = passwordDigest;
+      this.lastModified = lastModified;
+      this.length = length;
+      privateKeys = new ConcurrentHashMap<String, PrivateKey>();
+    }
+
+    /**
+     * Returns the loaded key store.
+     * @return the loaded key store.
+     */
+    public KeyStore getKeyStore() {
+      return keyStore;
+    }
+
+    /**
+     * Returns the certificates of the key store by alias.
+     * @return the certificates of the key store.
+     */
+    public Map<String, X509Certificate> getCertificates() {
+      return certificates;
+    }
+
+    /**
+     * Returns the already decrypted private keys by alias.
+     * @return the decrypted private keys.
+     */
+    public Map<String, PrivateKey> getPrivateKeys() {
+      return privateKeys;
+    }
+
+    private final KeyStore			keyStore;
+    private final Map<String, X509Certificate>	certificates;
+    private final Map<String, PrivateKey>	privateKeys;
+    private final byte[]			passwordDigest;
+    private final long				lastModified;
+    private final long				length;
+    private long				lastAccess;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final LinkedHashMap<String, Entry>	entries;
+  private int					maxEntries;
+  private long					idleTimeout;
+
+  private static final int			DEFAULT_MAX_ENTRIES = 100;
+  private static final long			DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000L;
+  private static final byte[]			SALT = createSalt();
+  private static final KeyStoreCache		INSTANCE = new KeyStoreCache();
+}
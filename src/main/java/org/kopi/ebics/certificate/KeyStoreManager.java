@@ -19,7 +19,10 @@
 
 package org.kopi.ebics.certificate;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -83,16 +86,29 @@ public class KeyStoreManager {
   public final PrivateKey getPrivateKey(String alias) throws GeneralSecurityException {
     PrivateKey			key;
 
+    if (cached != null) {
+      key = cached.getPrivateKeys().get(alias);
+      if (key != null) {
+        return key;
+      }
+    }
+
     key = (PrivateKey) keyStore.getKey(alias, password);
     if (key == null) {
       throw new IllegalArgumentException("private key not found for alias " + alias);
     }
 
+    if (cached != null) {
+      cached.getPrivateKeys().put(alias, key);
+    }
+
     return key;
   }
 
   /**
-   * Loads a key store from a given path and password
+   * Loads a key store from a given path and password.
+   * A key store that did not change since it was last loaded or saved
+   * is taken from the {@link KeyStoreCache} without decrypting it again.
    * @param path the key store path
    * @param password the key store password
    * @throws GeneralSecurityException
@@ -101,8 +117,17 @@ public class KeyStoreManager {
   public void load(String path, char[] password)
     throws GeneralSecurityException, IOException
   {
-    keyStore = KeyStore.getInstance("PKCS12", "BC");
     this.password = password;
+    if (!path.equals("")) {
+      cached = KeyStoreCache.getInstance().get(path, password);
+      if (cached != null) {
+        this.keyStore = cached.getKeyStore();
+        this.certs = cached.getCertificates();
+        return;
+      }
+    }
+
+    keyStore = KeyStore.getInstance("PKCS12", "BC");
     load(path);
   }
 
@@ -116,8 +141,11 @@ public class KeyStoreManager {
     if (path.equals("")) {
       this.keyStore.load(null, null);
     } else {
-      this.keyStore.load(new FileInputStream(path), password);
+      try (InputStream input = new FileInputStream(path)) {
+        this.keyStore.load(input, password);
+      }
       this.certs = read(this.keyStore);
+      cached = KeyStoreCache.getInstance().put(path, password, keyStore, certs);
     }
   }
 
@@ -179,6 +207,7 @@ public class KeyStoreManager {
   public void setCertificateEntry(String alias, InputStream input)
     throws GeneralSecurityException, IOException
   {
+    detach();
     keyStore.setCertificateEntry(alias, read(input, keyStore.getProvider()));
   }
 
@@ -191,6 +220,40 @@ public class KeyStoreManager {
   {
     keyStore.store(output, password);
   }
+
+  /**
+   * Saves the key store to the given path and updates the
+   * {@link KeyStoreCache} with the written key store.
+   * @param path the key store path.
+   */
+  public void save(String path)
+    throws GeneralSecurityException, IOException
+  {
+    try (OutputStream output = new FileOutputStream(path)) {
+      save(output);
+    }
+    certs = read(keyStore);
+    cached = KeyStoreCache.getInstance().put(path, password, keyStore, certs);
+  }
+
+  /**
+   * Stops sharing a cached key store before it is modified.
+   * The cached entry of the loaded path is left untouched for the
+   * other sessions and is replaced when the modified key store is saved.
+   */
+  private void detach() throws GeneralSecurityException, IOException {
+    ByteArrayOutputStream	output;
+
+    if (cached == null) {
+      return;
+    }
+
+    output = new ByteArrayOutputStream();
+    keyStore.store(output, password);
+    keyStore = KeyStore.getInstance("PKCS12", "BC");
+    keyStore.load(new ByteArrayInputStream(output.toByteArray()), password);
+    cached = null;
+  }
   
   /**
    * Returns the certificates contained in the key store.
@@ -232,4 +295,5 @@ public class KeyStoreManager {
   private KeyStore			keyStore;
   private char[]			password;
   private Map<String, X509Certificate>	certs;
+  private KeyStoreCache.Entry		cached;
 }
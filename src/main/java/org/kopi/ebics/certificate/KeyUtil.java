@@ -51,6 +51,25 @@ public class KeyUtil {
    * @throws NoSuchAlgorithmException
    */
   public static KeyPair makeKeyPair(int keyLen) throws NoSuchAlgorithmException{
+    KeyPairPool			pool;
+
+    pool = keyPairPool;
+    if (pool != null && pool.getKeySize() == keyLen) {
+      return pool.take();
+    }
+
+    return generateKeyPair(keyLen);
+  }
+
+  /**
+   * Generates a new <code>KeyPair</code> in RSA format without
+   * using the key pair pool.
+   *
+   * @param keyLen - key size
+   * @return KeyPair the key pair
+   * @throws NoSuchAlgorithmException
+   */
+  static KeyPair generateKeyPair(int keyLen) throws NoSuchAlgorithmException {
     KeyPairGenerator 		keyGen;
 
     keyGen = KeyPairGenerator.getInstance("RSA");
@@ -62,6 +81,14 @@ public class KeyUtil {
 
   }
 
+  /**
+   * Installs a pool of pre-generated key pairs used by {@link #makeKeyPair(int)}.
+   * @param pool the key pair pool, or null to generate every key pair on demand
+   */
+  public static void setKeyPairPool(KeyPairPool pool) {
+    keyPairPool = pool;
+  }
+
   /**
    * Generates a random password
    *
@@ -131,4 +158,10 @@ public class KeyUtil {
       System.arraycopy(byteArray, 1, b, 0, b.length);
       return b;
   }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private static volatile KeyPairPool	keyPairPool;
 }
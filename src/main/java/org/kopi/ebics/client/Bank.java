@@ -25,8 +25,12 @@ import java.io.ObjectOutputStream;
 import java.net.URL;
 import java.security.interfaces.RSAPublicKey;
 
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.EbicsBank;
 import org.kopi.ebics.interfaces.Savable;
+import org.kopi.ebics.io.Splitter;
 
 
 /**
@@ -109,6 +113,38 @@ public class Bank implements EbicsBank, Savable {
     return x002Digest;
   }
 
+  @Override
+  public synchronized byte[] getE002DigestValue() throws EbicsException {
+    if (e002DigestValue == null && e002Digest != null) {
+      e002DigestValue = decodeHex(e002Digest);
+    }
+
+    return e002DigestValue;
+  }
+
+  @Override
+  public synchronized byte[] getX002DigestValue() throws EbicsException {
+    if (x002DigestValue == null && x002Digest != null) {
+      x002DigestValue = decodeHex(x002Digest);
+    }
+
+    return x002DigestValue;
+  }
+
+  /**
+   * Decodes an hexadecimal digest.
+   * @param hex the hexadecimal digest
+   * @return the decoded digest
+   * @throws EbicsException
+   */
+  private static byte[] decodeHex(byte[] hex) throws EbicsException {
+    try {
+      return Hex.decodeHex((new String(hex)).toCharArray());
+    } catch (DecoderException e) {
+      throw new EbicsException(e.getMessage());
+    }
+  }
+
   @Override
   public RSAPublicKey getE002Key() {
     return e002Key;
@@ -148,12 +184,27 @@ public class Bank implements EbicsBank, Savable {
   }
 
   @Override
-  public void setDigests(byte[] e002Digest, byte[] x002Digest) {
+  public synchronized void setDigests(byte[] e002Digest, byte[] x002Digest) {
     this.e002Digest = e002Digest;
     this.x002Digest = x002Digest;
+    this.e002DigestValue = null;
+    this.x002DigestValue = null;
     needSave = true;
   }
 
+  @Override
+  public int getSegmentSize() {
+    return segmentSize > 0 ? segmentSize : Splitter.DEFAULT_SEGMENT_SIZE;
+  }
+
+  @Override
+  public void setSegmentSize(int segmentSize) {
+    if (segmentSize != this.segmentSize) {
+      this.segmentSize = segmentSize;
+      needSave = true;
+    }
+  }
+
   @Override
   public String getSaveName() {
     return hostId + ".cer";
@@ -211,7 +262,15 @@ public class Bank implements EbicsBank, Savable {
    */
   private RSAPublicKey		x002Key;
 
+  /**
+   * The maximum segment size agreed with the bank, 0 for the default one
+   * @serial
+   */
+  private int			segmentSize;
+
   private transient boolean	needSave;
+  private transient byte[]	e002DigestValue;
+  private transient byte[]	x002DigestValue;
 
   private static final long 	serialVersionUID = 2123071449956793284L;
 
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.exception.ReturnCode;
+import org.kopi.ebics.interfaces.Configuration;
+import org.kopi.ebics.interfaces.EbicsPartner;
+import org.kopi.ebics.io.ByteArrayContentFactory;
+import org.kopi.ebics.messages.Messages;
+import org.kopi.ebics.session.EbicsSession;
+import org.kopi.ebics.session.OrderType;
+import org.kopi.ebics.utils.Constants;
+import org.kopi.ebics.utils.Utils;
+import org.kopi.ebics.xml.HEVRequestElement;
+import org.kopi.ebics.xml.HEVResponseElement;
+import org.kopi.ebics.xml.HPDResponseOrderDataElement;
+import org.kopi.ebics.xml.HTDResponseOrderDataElement;
+
+
+/**
+ * A cache of the bank capability profiles of the partners.
+ *
+ * <p>Profiles are fetched by an explicit {@link #refresh(EbicsSession)}
+ * and serialized with the other client objects. Checking an order never
+ * sends anything to the bank: an order type the bank is known not to
+ * offer, or a bank known not to support the protocol version of the
+ * client, is rejected before any signed request is sent. Orders of a
+ * partner without a profile, or whose profile is older than its time to
+ * live, are not checked.
+ *
+ */
+public class BankCapabilities {
+
+  /**
+   * Constructs a new <code>BankCapabilities</code> cache.
+   * @param configuration the client configuration
+   * @param ttl the time to live of a profile in milliseconds
+   */
+  public BankCapabilities(Configuration configuration, long ttl) {
+    this.configuration = configuration;
+    this.ttl = ttl;
+    profiles = new ConcurrentHashMap<String, BankProfile>();
+    expired = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Checks an order against the cached profile of the session partner.
+   * @param session the ebics session of the order
+   * @param orderType the order type
+   * @throws EbicsException the bank does not support the order
+   */
+  public void check(EbicsSession session, OrderType orderType) throws EbicsException {
+    EbicsPartner		partner;
+    BankProfile			profile;
+
+    partner = session.getUser().getPartner();
+    profile = getProfile(partner.getBank().getHostId(), partner.getPartnerId());
+    if (profile == null) {
+      return;
+    }
+    if (ttl > 0 && profile.isExpired(ttl)) {
+      if (expired.add(BankProfile.getSaveName(profile.getHostId(), profile.getPartnerId()))) {
+        configuration.getLogger().warn(Messages.getString("capabilities.expired",
+                                                          Constants.APPLICATION_BUNDLE_NAME,
+                                                          profile.getHostId()));
+      }
+      return;
+    }
+
+    if (!profile.supportsProtocol(configuration.getVersion())) {
+      throw new EbicsException(Messages.getString("capabilities.unsupported.version",
+                                                  Constants.APPLICATION_BUNDLE_NAME,
+                                                  profile.getHostId(),
+                                                  configuration.getVersion()));
+    }
+    if (!profile.supportsOrderType(orderType.toString())) {
+      throw new EbicsException(ReturnCode.EBICS_UNSUPPORTED_ORDER_TYPE,
+                               Messages.getString("capabilities.unsupported.order",
+                                                  Constants.APPLICATION_BUNDLE_NAME,
+                                                  profile.getHostId(),
+                                                  orderType.toString()));
+    }
+  }
+
+  /**
+   * Returns the cached profile of a partner, loading it on first use.
+   * @param hostId the bank host ID
+   * @param partnerId the partner ID
+   * @return the profile, null if it was never fetched
+   */
+  public BankProfile getProfile(String hostId, String partnerId) {
+    String			name;
+    BankProfile			profile;
+
+    name = BankProfile.getSaveName(hostId, partnerId);
+    profile = profiles.get(name);
+    if (profile == null && !profiles.containsKey(name)) {
+      try (ObjectInputStream input = configuration.getSerializationManager().deserialize(name)) {
+        profile = (BankProfile) input.readObject();
+        profiles.putIfAbsent(name, profile);
+      } catch (EbicsException | IOException | ClassNotFoundException e) {
+        // never fetched
+      }
+    }
+
+    return profile;
+  }
+
+  /**
+   * Fetches the profile of the session partner with the HEV, HPD and HTD
+   * orders, and saves it. A failed order leaves its capabilities unknown.
+   * @param session the ebics session
+   * @return the refreshed profile
+   * @throws IOException communication error
+   * @throws EbicsException the profile cannot be saved
+   */
+  public BankProfile refresh(EbicsSession session) throws IOException, EbicsException {
+    EbicsPartner		partner;
+    BankProfile			profile;
+    FileTransfer		transfer;
+
+    partner = session.getUser().getPartner();
+    profile = new BankProfile(partner.getBank().getHostId(), partner.getPartnerId());
+    transfer = new FileTransfer(session);
+    try {
+      profile.setVersions(sendHEV(session));
+    } catch (EbicsException e) {
+      warn(profile, e);
+    }
+    try {
+      HPDResponseOrderDataElement	hpd;
+
+      hpd = new HPDResponseOrderDataElement(new ByteArrayContentFactory(fetch(transfer, OrderType.HPD)));
+      hpd.build();
+      profile.setProtocolVersions(hpd.getProtocolVersions());
+      profile.setRecoverySupported(hpd.isRecoverySupported());
+    } catch (EbicsException e) {
+      warn(profile, e);
+    }
+    try {
+      HTDResponseOrderDataElement	htd;
+      Set<String>			orderTypes;
+
+      htd = new HTDResponseOrderDataElement(new ByteArrayContentFactory(fetch(transfer, OrderType.HTD)));
+      htd.build();
+      orderTypes = htd.getPartnerOrderTypes();
+      if (!orderTypes.isEmpty()) {
+        // the profile downloads are always allowed
+        orderTypes.add(OrderType.HPD.toString());
+        orderTypes.add(OrderType.HTD.toString());
+      }
+      profile.setOrderTypes(orderTypes);
+    } catch (EbicsException e) {
+      warn(profile, e);
+    }
+
+    profile.setUpdated(System.currentTimeMillis());
+    configuration.getSerializationManager().serialize(profile);
+    profiles.put(BankProfile.getSaveName(profile.getHostId(), profile.getPartnerId()), profile);
+    expired.remove(BankProfile.getSaveName(profile.getHostId(), profile.getPartnerId()));
+    configuration.getLogger().info(Messages.getString("capabilities.refreshed",
+                                                      Constants.APPLICATION_BUNDLE_NAME,
+                                                      profile.getHostId(),
+                                                      profile.getPartnerId()));
+    return profile;
+  }
+
+  /**
+   * Sends a HEV request to the bank of the session.
+   * @param session the ebics session
+   * @return the supported versions by schema version
+   * @throws IOException
+   * @throws EbicsException
+   */
+  private Map<String, String> sendHEV(EbicsSession session) throws IOException, EbicsException {
+    HttpRequestSender		sender;
+    HEVRequestElement		request;
+    HEVResponseElement		response;
+
+    sender = new HttpRequestSender(session);
+    request = new HEVRequestElement(session);
+    request.build();
+    request.validate();
+    configuration.getTraceManager().trace(request);
+    Utils.checkHttpCode(sender.send(new ByteArrayContentFactory(request.prettyPrint())));
+    response = new HEVResponseElement(sender.getResponseBody());
+    response.build();
+    configuration.getTraceManager().trace(response);
+    return response.getVersions();
+  }
+
+  /**
+   * Downloads the order data of a profile order.
+   * @param transfer the file transfer of the session
+   * @param orderType the order type
+   * @return the order data
+   * @throws IOException
+   * @throws EbicsException
+   */
+  private static byte[] fetch(FileTransfer transfer, OrderType orderType)
+    throws IOException, EbicsException
+  {
+    ByteArrayOutputStream	output;
+
+    output = new ByteArrayOutputStream();
+    transfer.fetchFile(orderType, null, null, output);
+    return output.toByteArray();
+  }
+
+  private void warn(BankProfile profile, EbicsException e) {
+    configuration.getLogger().warn(Messages.getString("capabilities.partial",
+                                                      Constants.APPLICATION_BUNDLE_NAME,
+                                                      profile.getHostId(),
+                                                      e.getMessage()));
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final Configuration				configuration;
+  private final long					ttl;
+  private final Map<String, BankProfile>		profiles;
+  private final Set<String>				expired;
+}
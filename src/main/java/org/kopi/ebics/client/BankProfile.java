@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.client;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kopi.ebics.interfaces.Savable;
+
+
+/**
+ * The capabilities of a bank as seen by a partner: the EBICS versions
+ * returned by HEV, the bank parameters returned by HPD and the order
+ * types returned by HTD. Empty capabilities are unknown and do not
+ * restrict anything.
+ *
+ */
+public class BankProfile implements Savable, Serializable {
+
+  /**
+   * Constructs a new empty <code>BankProfile</code>.
+   * @param hostId the bank host ID
+   * @param partnerId the partner ID
+   */
+  public BankProfile(String hostId, String partnerId) {
+    this.hostId = hostId;
+    this.partnerId = partnerId;
+    versions = new LinkedHashMap<String, String>();
+    protocolVersions = new ArrayList<String>();
+    orderTypes = new LinkedHashSet<String>();
+    recoverySupported = true;
+  }
+
+  /**
+   * Tells if the bank supports a given EBICS schema version.
+   * @param protocolVersion the schema version, for example H003
+   * @return False if the bank is known not to support the version.
+   */
+  public boolean supportsProtocol(String protocolVersion) {
+    if (versions.isEmpty() && protocolVersions.isEmpty()) {
+      return true;
+    }
+
+    return versions.containsKey(protocolVersion) || protocolVersions.contains(protocolVersion);
+  }
+
+  /**
+   * Tells if the bank offers a given order type to the partner.
+   * @param orderType the order type
+   * @return False if the order type is known not to be offered.
+   */
+  public boolean supportsOrderType(String orderType) {
+    return orderTypes.isEmpty() || orderTypes.contains(orderType);
+  }
+
+  /**
+   * Tells if the profile is older than a given time to live.
+   * @param ttl the time to live in milliseconds
+   * @return True if the profile should be refreshed.
+   */
+  public boolean isExpired(long ttl) {
+    return System.currentTimeMillis() - updated > ttl;
+  }
+
+  public String getHostId() {
+    return hostId;
+  }
+
+  public String getPartnerId() {
+    return partnerId;
+  }
+
+  /**
+   * Returns the EBICS versions returned by HEV by schema version.
+   * @return the supported versions.
+   */
+  public Map<String, String> getVersions() {
+    return Collections.unmodifiableMap(versions);
+  }
+
+  void setVersions(Map<String, String> versions) {
+    this.versions = new LinkedHashMap<String, String>(versions);
+  }
+
+  /**
+   * Returns the schema versions returned by HPD.
+   * @return the supported schema versions.
+   */
+  public List<String> getProtocolVersions() {
+    return Collections.unmodifiableList(protocolVersions);
+  }
+
+  void setProtocolVersions(List<String> protocolVersions) {
+    this.protocolVersions = new ArrayList<String>(protocolVersions);
+  }
+
+  /**
+   * Returns the order types offered to the partner returned by HTD.
+   * @return the order types.
+   */
+  public Set<String> getOrderTypes() {
+    return Collections.unmodifiableSet(orderTypes);
+  }
+
+  void setOrderTypes(Set<String> orderTypes) {
+    this.orderTypes = new LinkedHashSet<String>(orderTypes);
+  }
+
+  public boolean isRecoverySupported() {
+    return recoverySupported;
+  }
+
+  void setRecoverySupported(boolean recoverySupported) {
+    this.recoverySupported = recoverySupported;
+  }
+
+  /**
+   * Returns the last refresh time of the profile.
+   * @return the refresh time in milliseconds.
+   */
+  public long getUpdated() {
+    return updated;
+  }
+
+  void setUpdated(long updated) {
+    this.updated = updated;
+  }
+
+  @Override
+  public void save(ObjectOutputStream oos) throws IOException {
+    oos.writeObject(this);
+    oos.flush();
+    oos.close();
+  }
+
+  @Override
+  public String getSaveName() {
+    return getSaveName(hostId, partnerId) + ".cer";
+  }
+
+  /**
+   * Returns the serialization name of a profile.
+   * @param hostId the bank host ID
+   * @param partnerId the partner ID
+   * @return the serialization name.
+   */
+  static String getSaveName(String hostId, String partnerId) {
+    return "profile-" + hostId + "-" + partnerId;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final String				hostId;
+  private final String				partnerId;
+  private Map<String, String>			versions;
+  private List<String>				protocolVersions;
+  private Set<String>				orderTypes;
+  private boolean				recoverySupported;
+  private long					updated;
+
+  private static final long 			serialVersionUID = 5021683744130528611L;
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.exception.HttpStatusException;
+import org.kopi.ebics.exception.ReturnCode;
+import org.kopi.ebics.interfaces.Configuration;
+import org.kopi.ebics.interfaces.PasswordCallback;
+import org.kopi.ebics.io.ManifestReader;
+import org.kopi.ebics.messages.Messages;
+import org.kopi.ebics.session.Product;
+import org.kopi.ebics.utils.Constants;
+import org.kopi.ebics.utils.NamedThreadFactory;
+
+
+/**
+ * Onboards many subscribers at once.
+ *
+ * <p>Each subscriber goes through a pipeline of three stages: the user
+ * creation (key generation, key store and INI letters), the INI request
+ * and the HIA request. The creation runs on a pool sized to the number of
+ * processors while the INI and HIA requests run on a bounded pool of
+ * network threads, so that the key generation of a user overlaps with the
+ * requests of the others.
+ *
+ * <p>The user is saved after every stage. Users that already exist are
+ * loaded instead of being created again and the requests already sent are
+ * skipped, so that a failed onboarding can simply be run again with the
+ * same manifest. Transient failures of the user creation are retried with
+ * an exponential backoff. The INI and HIA requests are not retried here:
+ * the bank refuses to receive the same keys twice, so they are only sent
+ * again by the HTTP layer when they surely did not reach the bank, see
+ * {@link RetryPolicy}.
+ *
+ */
+public class BulkOnboarding {
+
+  /**
+   * The onboarding status of a subscriber.
+   */
+  public enum Status {
+    PENDING,
+    CREATED,
+    INI_SENT,
+    HIA_SENT,
+    FAILED
+  }
+
+  /**
+   * A subscriber to onboard as described in the manifest.
+   */
+  public static class Subscriber {
+
+    public Subscriber(URL url,
+                      String bankName,
+                      String hostId,
+                      String partnerId,
+                      String userId,
+                      String name,
+                      String email,
+                      String country,
+                      String organization)
+    {
+      this.url = url;
+      this.bankName = bankName;
+      this.hostId = hostId;
+      this.partnerId = partnerId;
+      this.userId = userId;
+      this.name = name;
+      this.email = email;
+      this.country = country;
+      this.organization = organization;
+    }
+
+    public URL getURL() {
+      return url;
+    }
+
+    public String getBankName() {
+      return bankName;
+    }
+
+    public String getHostId() {
+      return hostId;
+    }
+
+    public String getPartnerId() {
+      return partnerId;
+    }
+
+    public String getUserId() {
+      return userId;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getEmail() {
+      return email;
+    }
+
+    public String getCountry() {
+      return country;
+    }
+
+    public String getOrganization() {
+      return organization;
+    }
+
+    private final URL			url;
+    private final String		bankName;
+    private final String		hostId;
+    private final String		partnerId;
+    private final String		userId;
+    private final String		name;
+    private final String		email;
+    private final String		country;
+    private final String		organization;
+  }
+
+  /**
+   * The onboarding result of a subscriber.
+   */
+  public static class Result {
+
+    Result(Subscriber subscriber) {
+      this.subscriber = subscriber;
+      this.status = Status.PENDING;
+    }
+
+    public Subscriber getSubscriber() {
+      return subscriber;
+    }
+
+    /**
+     * Returns the last status reached by the subscriber.
+     * @return the status
+     */
+    public Status getStatus() {
+      return status;
+    }
+
+    /**
+     * Returns the number of attempts of all the stages.
+     * @return the number of attempts
+     */
+    public int getAttempts() {
+      return attempts;
+    }
+
+    /**
+     * Returns the time spent onboarding the subscriber in milliseconds.
+     * @return the onboarding duration
+     */
+    public long getDuration() {
+      return duration;
+    }
+
+    /**
+     * Returns the error message if the onboarding failed.
+     * @return the error message or null
+     */
+    public String getError() {
+      return error;
+    }
+
+    private final Subscriber		subscriber;
+    private volatile Status		status;
+    private volatile int		attempts;
+    private volatile long		duration;
+    private volatile String		error;
+  }
+
+  /**
+   * Constructs a new <code>BulkOnboarding</code>.
+   * @param client the ebics client creating and initializing the users
+   * @param configuration the client configuration
+   * @param product the application product
+   * @param passwordCallback the password of the created key stores
+   * @param threads the maximum number of requests sent in parallel
+   * @param maxAttempts the maximum number of attempts of the user creation
+   * @param retryDelay the delay in milliseconds before the first retry
+   */
+  public BulkOnboarding(EbicsClient client,
+                        Configuration configuration,
+                        Product product,
+                        PasswordCallback passwordCallback,
+                        int threads,
+                        int maxAttempts,
+                        long retryDelay)
+  {
+    this.client = client;
+    this.configuration = configuration;
+    this.product = product;
+    this.passwordCallback = passwordCallback;
+    this.threads = Math.max(1, threads);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.retryDelay = retryDelay;
+  }
+
+  /**
+   * Reads the subscribers of a CSV manifest. The first line is a header
+   * naming the columns among <code>hostId</code>, <code>partnerId</code>,
+   * <code>userId</code>, <code>bank.url</code>, <code>bank.name</code>,
+   * <code>user.name</code>, <code>user.email</code>, <code>user.country</code>
+   * and <code>user.org</code>. Empty lines and lines starting with
+   * <code>#</code> are ignored.
+   * @param manifest the manifest file
+   * @return the subscribers
+   * @throws EbicsException the manifest cannot be read
+   */
+  public static List<Subscriber> readManifest(File manifest) throws EbicsException {
+    List<Subscriber>		subscribers;
+
+    subscribers = new ArrayList<Subscriber>();
+    try (ManifestReader reader = new ManifestReader(manifest, MANIFEST_COLUMNS)) {
+      while (reader.next()) {
+        try {
+          subscribers.add(new Subscriber(new URL(reader.require("bank.url")),
+                                         reader.require("bank.name"),
+                                         reader.require("hostId"),
+                                         reader.require("partnerId"),
+                                         reader.require("userId"),
+                                         reader.require("user.name"),
+                                         reader.require("user.email"),
+                                         reader.require("user.country"),
+                                         reader.require("user.org")));
+        } catch (MalformedURLException | IllegalArgumentException e) {
+          throw reader.error(e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      throw new EbicsException(e.getMessage());
+    }
+
+    return subscribers;
+  }
+
+  /**
+   * Onboards the given subscribers and waits until all of them are
+   * initialized or failed.
+   * @param subscribers the subscribers
+   * @return the results in the order of the subscribers
+   */
+  public List<Result> run(List<Subscriber> subscribers) {
+    ExecutorService			cpuPool;
+    ExecutorService			networkPool;
+    List<Result>			results;
+    List<CompletableFuture<Void>>	pipelines;
+
+    configuration.getLogger().info(Messages.getString("onboard.start",
+                                                      Constants.APPLICATION_BUNDLE_NAME,
+                                                      subscribers.size()));
+    cpuPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                           new NamedThreadFactory("ebics-onboard-create"));
+    networkPool = Executors.newFixedThreadPool(threads, new NamedThreadFactory("ebics-onboard-send"));
+    results = new ArrayList<Result>();
+    pipelines = new ArrayList<CompletableFuture<Void>>();
+    try {
+      for (Subscriber subscriber : subscribers) {
+        final Result		result = new Result(subscriber);
+        final long		start = System.currentTimeMillis();
+
+        results.add(result);
+        pipelines.add(CompletableFuture.supplyAsync(() -> execute(result, Stage.CREATE, null), cpuPool)
+                      .thenApplyAsync(user -> execute(result, Stage.INI, user), networkPool)
+                      .thenApplyAsync(user -> execute(result, Stage.HIA, user), networkPool)
+                      .handle((user, failure) -> {
+                        result.duration = System.currentTimeMillis() - start;
+                        if (failure != null) {
+                          fail(result, failure);
+                        } else {
+                          configuration.getLogger().info(Messages.getString("onboard.user.success",
+                                                                            Constants.APPLICATION_BUNDLE_NAME,
+                                                                            subscriber.getUserId()));
+                        }
+                        return null;
+                      }));
+      }
+
+      CompletableFuture.allOf(pipelines.toArray(new CompletableFuture<?>[pipelines.size()])).join();
+    } finally {
+      cpuPool.shutdown();
+      networkPool.shutdown();
+    }
+
+    logSummary(results);
+    return results;
+  }
+
+  /**
+   * Executes a pipeline stage, retrying the transient failures of the
+   * user creation.
+   * @param result the subscriber result
+   * @param stage the stage to execute
+   * @param user the user created by the previous stage
+   * @return the user
+   */
+  private User execute(Result result, Stage stage, User user) {
+    for (int attempt = 1; ; attempt++) {
+      result.attempts++;
+      try {
+        switch (stage) {
+        case CREATE:
+          user = createUser(result.getSubscriber());
+          result.status = Status.CREATED;
+          break;
+        case INI:
+          client.sendINIRequest(user, product);
+          configuration.getSerializationManager().serialize(user);
+          result.status = Status.INI_SENT;
+          break;
+        case HIA:
+          client.sendHIARequest(user, product);
+          configuration.getSerializationManager().serialize(user);
+          result.status = Status.HIA_SENT;
+          break;
+        }
+        return user;
+      } catch (Exception e) {
+        if (attempt >= maxAttempts || stage != Stage.CREATE || !isTransient(e)) {
+          throw new CompletionException(e);
+        }
+
+        configuration.getLogger().warn(Messages.getString("onboard.retry",
+                                                          Constants.APPLICATION_BUNDLE_NAME,
+                                                          result.getSubscriber().getUserId()));
+        try {
+          Thread.sleep(retryDelay << (attempt - 1));
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new CompletionException(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates the user of the given subscriber, or loads it if it was created
+   * by a previous onboarding.
+   * @param subscriber the subscriber
+   * @return the user
+   */
+  private User createUser(Subscriber subscriber) throws Exception {
+    File		serialized;
+
+    serialized = new File(configuration.getSerializationDirectory(),
+                          "user-" + subscriber.getUserId() + ".cer");
+    if (serialized.exists()) {
+      return client.loadUser(subscriber.getHostId(),
+                             subscriber.getPartnerId(),
+                             subscriber.getUserId(),
+                             passwordCallback);
+    }
+
+    return client.createUser(subscriber.getURL(),
+                             subscriber.getBankName(),
+                             subscriber.getHostId(),
+                             subscriber.getPartnerId(),
+                             subscriber.getUserId(),
+                             subscriber.getName(),
+                             subscriber.getEmail(),
+                             subscriber.getCountry(),
+                             subscriber.getOrganization(),
+                             false,
+                             true,
+                             passwordCallback);
+  }
+
+  /**
+   * Tells if a failure may succeed when retried.
+   * @param e the failure
+   * @return True if the failure is transient
+   */
+  private static boolean isTransient(Exception e) {
+    if (e instanceof IOException) {
+      return true;
+    } else if (e instanceof HttpStatusException) {
+      return ((HttpStatusException) e).getStatusCode() >= 500;
+    } else if (e instanceof EbicsException) {
+      return ReturnCode.EBICS_INTERNAL_ERROR.equals(((EbicsException) e).getReturnCode());
+    } else {
+      return false;
+    }
+  }
+
+  private void fail(Result result, Throwable failure) {
+    Throwable		cause;
+
+    cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    result.status = Status.FAILED;
+    result.error = cause.getMessage() == null ? cause.getClass().getName() : cause.getMessage();
+    configuration.getLogger().error(Messages.getString("onboard.user.error",
+                                                       Constants.APPLICATION_BUNDLE_NAME,
+                                                       result.getSubscriber().getUserId()),
+                                    cause);
+  }
+
+  private void logSummary(List<Result> results) {
+    int			failed;
+
+    failed = 0;
+    for (Result result : results) {
+      if (result.getStatus() == Status.FAILED) {
+        failed++;
+      }
+    }
+
+    configuration.getLogger().info(Messages.getString("onboard.summary.success",
+                                                      Constants.APPLICATION_BUNDLE_NAME,
+                                                      results.size() - failed));
+    if (failed > 0) {
+      configuration.getLogger().warn(Messages.getString("onboard.summary.failed",
+                                                        Constants.APPLICATION_BUNDLE_NAME,
+                                                        failed));
+    }
+  }
+
+  /**
+   * Writes a CSV report with one line per subscriber.
+   * @param results the onboarding results
+   * @param report the report file
+   * @throws EbicsException the report cannot be written
+   */
+  public static void writeReport(List<Result> results, File report) throws EbicsException {
+    try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(report),
+                                                                     StandardCharsets.UTF_8))) {
+      writer.println("hostId,partnerId,userId,status,attempts,duration,error");
+      for (Result result : results) {
+        writer.println(result.getSubscriber().getHostId() + ","
+                       + result.getSubscriber().getPartnerId() + ","
+                       + result.getSubscriber().getUserId() + ","
+                       + result.getStatus() + ","
+                       + result.getAttempts() + ","
+                       + result.getDuration() + ","
+                       + (result.getError() == null ? "" : result.getError().replace(',', ' ').replace('\n', ' ')));
+      }
+    } catch (IOException e) {
+      throw new EbicsException(e.getMessage());
+    }
+  }
+
+  /**
+   * The pipeline stages.
+   */
+  private enum Stage {
+    CREATE,
+    INI,
+    HIA
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final EbicsClient			client;
+  private final Configuration			configuration;
+  private final Product				product;
+  private final PasswordCallback		passwordCallback;
+  private final int				threads;
+  private final int				maxAttempts;
+  private final long				retryDelay;
+
+  private static final String[]			MANIFEST_COLUMNS = { "hostId",
+                                                                     "partnerId",
+                                                                     "userId",
+                                                                     "bank.url",
+                                                                     "bank.name",
+                                                                     "user.name",
+                                                                     "user.email",
+                                                                     "user.country",
+                                                                     "user.org" };
+}
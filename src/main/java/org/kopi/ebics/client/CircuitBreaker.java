@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.client;
+
+
+/**
+ * A circuit breaker guarding the requests sent to a bank server.
+ *
+ * <p>The breaker opens after a number of consecutive failures, either
+ * transport errors or server errors. While it is open, requests fail at
+ * once instead of waiting for the connection and response timeouts of an
+ * endpoint that is down. Once the open time has elapsed a single request
+ * is let through: the breaker closes again when it succeeds and opens for
+ * another period when it fails.
+ *
+ */
+public class CircuitBreaker {
+
+  /**
+   * The state of the breaker.
+   */
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  /**
+   * Constructs a new <code>CircuitBreaker</code>.
+   * @param failureThreshold the number of consecutive failures opening the breaker
+   * @param openTime how long the breaker stays open in milliseconds
+   */
+  public CircuitBreaker(int failureThreshold, long openTime) {
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openTime = openTime;
+    state = State.CLOSED;
+  }
+
+  /**
+   * Tells if a request may be sent.
+   * @return True if the request may be sent, false if it should fail at once.
+   */
+  public synchronized boolean allowRequest() {
+    switch (state) {
+    case CLOSED:
+      return true;
+    case OPEN:
+      if (System.currentTimeMillis() - openedAt < openTime) {
+        return false;
+      }
+      // let a single trial request through
+      state = State.HALF_OPEN;
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Records a request that reached the bank.
+   */
+  public synchronized void onSuccess() {
+    failures = 0;
+    state = State.CLOSED;
+  }
+
+  /**
+   * Records a failed request.
+   */
+  public synchronized void onFailure() {
+    failures++;
+    if (state == State.HALF_OPEN || failures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Returns the state of the breaker.
+   * @return the breaker state.
+   */
+  public synchronized State getState() {
+    return state;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final int				failureThreshold;
+  private final long				openTime;
+  private State					state;
+  private int					failures;
+  private long					openedAt;
+}
@@ -22,24 +22,39 @@ package org.kopi.ebics.client;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Level;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.kopi.ebics.certificate.KeyPairPool;
+import org.kopi.ebics.certificate.KeyStoreCache;
+import org.kopi.ebics.certificate.KeyUtil;
+import org.kopi.ebics.certificate.X509Constants;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.exception.NoDownloadDataAvailableException;
 import org.kopi.ebics.interfaces.*;
 import org.kopi.ebics.io.IOUtils;
 import org.kopi.ebics.messages.Messages;
+import org.kopi.ebics.metrics.HistogramRecorder;
+import org.kopi.ebics.metrics.Metrics;
 import org.kopi.ebics.schema.h003.OrderAttributeType;
 import org.kopi.ebics.session.DefaultConfiguration;
+import org.kopi.ebics.session.DefaultEbicsLogger;
 import org.kopi.ebics.session.EbicsSession;
 import org.kopi.ebics.session.OrderType;
 import org.kopi.ebics.session.Product;
 import org.kopi.ebics.utils.Constants;
+import org.kopi.ebics.xml.Schemas;
+import org.kopi.ebics.xml.ValidationPolicy;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * The ebics client application. Performs necessary tasks to contact the ebics
@@ -50,12 +65,30 @@ import java.util.*;
 public class EbicsClient {
 
     private final Configuration configuration;
-    private final Map<String, User> users = new HashMap<>();
-    private final Map<String, Partner> partners = new HashMap<>();
-    private final Map<String, Bank> banks = new HashMap<>();
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final Map<String, Partner> partners = new ConcurrentHashMap<>();
+    private final Map<String, Bank> banks = new ConcurrentHashMap<>();
     private final ConfigProperties properties;
+    private final ValidationPolicy validationPolicy;
     private Product defaultProduct;
     private User defaultUser;
+    private SubscriberRegistry registry;
+    private KeyPairPool keyPairPool;
+    private BankCapabilities capabilities;
+
+    /**
+     * The order types downloaded by the client.
+     */
+    static final List<OrderType> FETCH_FILE_ORDERS = Collections.unmodifiableList(Arrays.asList(
+        OrderType.STA, OrderType.VMK, OrderType.C52, OrderType.C53, OrderType.C54, OrderType.C5N,
+        OrderType.CIZ, OrderType.ZDF, OrderType.ZB6, OrderType.PTK, OrderType.HAC, OrderType.Z01,
+        OrderType.CRC, OrderType.CRJ, OrderType.CRZ, OrderType.HAA, OrderType.HTD));
+
+    /**
+     * The order types uploaded by the client.
+     */
+    static final List<OrderType> SEND_FILE_ORDERS = Collections.unmodifiableList(Arrays.asList(
+        OrderType.XKD, OrderType.FUL, OrderType.XCT, OrderType.XE2, OrderType.CCT, OrderType.CIP));
 
     static {
         org.apache.xml.security.Init.init();
@@ -76,11 +109,33 @@ public class EbicsClient {
         configuration.init();
         configuration.getLogger().info(
             Messages.getString("init.configuration", Constants.APPLICATION_BUNDLE_NAME));
+        if (Boolean.parseBoolean(getProperty("metrics.enabled", "false"))) {
+            // histograms by bank, order type and phase, published through JMX
+            Metrics.addRecorder(HistogramRecorder.getInstance());
+        }
+        if (getProperty("keystore.cache.size", null) != null
+            || getProperty("keystore.cache.idle", null) != null) {
+            KeyStoreCache.getInstance().setLimits(
+                Integer.parseInt(getProperty("keystore.cache.size", "100")),
+                Long.parseLong(getProperty("keystore.cache.idle", "1800")) * 1000);
+        }
+        validationPolicy = new ValidationPolicy(
+            ValidationPolicy.parseMode(getProperty("xml.validation", "always")),
+            Integer.parseInt(getProperty("xml.validation.count", "1")));
+        if (Boolean.parseBoolean(getProperty("startup.warmup", "false"))) {
+            // overlaps the subsystems initialization with the key stores loading
+            WarmUp.start();
+        }
+        if (Boolean.parseBoolean(getProperty("xml.schemas.warmup", "false"))) {
+            configuration.getLogger().info(
+                Messages.getString("init.schemas", Constants.APPLICATION_BUNDLE_NAME, Schemas.warmUp()));
+        }
     }
 
     private EbicsSession createSession(User user, Product product) {
         EbicsSession session = new EbicsSession(user, configuration);
         session.setProduct(product);
+        session.setValidationPolicy(validationPolicy);
         return session;
     }
 
@@ -102,7 +157,8 @@ public class EbicsClient {
 
     /**
      * Creates a new EBICS bank with the data you should have obtained from the
-     * bank.
+     * bank. A bank already known by the client is reused, so that users
+     * created in bulk share it.
      *
      * @param url
      *            the bank URL
@@ -114,26 +170,69 @@ public class EbicsClient {
      *            does the bank use certificates ?
      * @return the created ebics bank
      */
-    private Bank createBank(URL url, String name, String hostId, boolean useCertificate) {
-        Bank bank = new Bank(url, name, hostId, useCertificate);
+    private synchronized Bank createBank(URL url, String name, String hostId, boolean useCertificate) {
+        Bank bank = banks.get(hostId);
+        if (bank != null) {
+            return bank;
+        }
+        bank = new Bank(url, name, hostId, useCertificate);
+        setSegmentSize(bank);
         banks.put(hostId, bank);
         return bank;
     }
 
     /**
-     * Creates a new ebics partner
+     * Sets the segment size agreed with a bank from the
+     * <code>bank.segmentSize.HOSTID</code> property, if any. The property
+     * only applies to a bank being created: a saved bank keeps its segment
+     * size, which may have been lowered after the bank rejected larger
+     * segments.
+     *
+     * @param bank
+     *            the bank
+     */
+    private void setSegmentSize(Bank bank) {
+        String segmentSize = getProperty("bank.segmentSize." + bank.getHostId(), null);
+        if (segmentSize != null) {
+            bank.setSegmentSize(Integer.parseInt(segmentSize.trim()));
+        }
+    }
+
+    /**
+     * Creates a new ebics partner, or returns the one already known by the
+     * client so that its order IDs keep being shared.
      *
      * @param bank
      *            the bank
      * @param partnerId
      *            the partner ID
      */
-    private Partner createPartner(EbicsBank bank, String partnerId) {
-        Partner partner = new Partner(bank, partnerId);
+    private synchronized Partner createPartner(EbicsBank bank, String partnerId) {
+        Partner partner = partners.get(partnerId);
+        if (partner != null) {
+            return partner;
+        }
+        partner = new Partner(bank, partnerId);
+        setOrderIdAllocator(partner);
         partners.put(partnerId, partner);
         return partner;
     }
 
+    /**
+     * Attaches the shared order ID allocator to the given partner. The
+     * allocator counter lives next to the serialized partner so that every
+     * process working with the same root directory shares it.
+     *
+     * @param partner
+     *            the partner
+     */
+    private void setOrderIdAllocator(Partner partner) {
+        File counterFile = new File(configuration.getSerializationDirectory(),
+            partner.getOrderIdCounterName());
+        partner.setOrderIdAllocator(new OrderIdAllocator(counterFile,
+            configuration.getOrderIdBlockSize()));
+    }
+
     /**
      * Creates a new ebics user and generates its certificates.
      *
@@ -183,13 +282,15 @@ public class EbicsClient {
             if (saveCertificates) {
                 user.saveUserCertificates(configuration.getKeystoreDirectory(user.getUserId()));
             }
-            configuration.getSerializationManager().serialize(bank);
-            configuration.getSerializationManager().serialize(partner);
+            // users of the same bank and partner may be created in parallel
+            synchronized (this) {
+                configuration.getSerializationManager().serialize(bank);
+                configuration.getSerializationManager().serialize(partner);
+            }
             configuration.getSerializationManager().serialize(user);
             createLetters(user, useCertificates);
             users.put(userId, user);
-            partners.put(partner.getPartnerId(), partner);
-            banks.put(bank.getHostId(), bank);
+            getSubscriberRegistry().register(hostId, partnerId, userId);
 
             configuration.getLogger().info(
                 Messages.getString("user.create.success", Constants.APPLICATION_BUNDLE_NAME, userId));
@@ -201,6 +302,14 @@ public class EbicsClient {
         }
     }
 
+    /**
+     * Writes the INI letters of the given user in its letters directory.
+     *
+     * @param user
+     *            the user
+     * @param useCertificates
+     *            does the bank use certificates ?
+     */
     private void createLetters(EbicsUser user, boolean useCertificates)
         throws IOException, GeneralSecurityException, EbicsException {
         user.getPartner().getBank().setUseCertificate(useCertificates);
@@ -216,6 +325,35 @@ public class EbicsClient {
         }
     }
 
+    /**
+     * Starts generating RSA key pairs in the background for bulk user
+     * creation. The pool is used by every following
+     * {@link #createUser(URL, String, String, String, String, String, String, String, String, boolean, boolean, PasswordCallback)
+     * createUser} call until {@link #quit()}.
+     *
+     * @param capacity
+     *            the number of key pairs generated in advance
+     */
+    public synchronized void startKeyPairPool(int capacity) {
+        if (keyPairPool == null) {
+            keyPairPool = new KeyPairPool(X509Constants.EBICS_KEY_SIZE, capacity,
+                Runtime.getRuntime().availableProcessors());
+            keyPairPool.start();
+            KeyUtil.setKeyPairPool(keyPairPool);
+        }
+    }
+
+    /**
+     * Stops the background key pair generation.
+     */
+    public synchronized void stopKeyPairPool() {
+        if (keyPairPool != null) {
+            KeyUtil.setKeyPairPool(null);
+            keyPairPool.shutdown();
+            keyPairPool = null;
+        }
+    }
+
     /**
      * Loads a user knowing its ID
      *
@@ -225,30 +363,32 @@ public class EbicsClient {
      * @throws EbicsException
      */
     public User loadUser(String hostId, String partnerId, String userId,
+        PasswordCallback passwordCallback)
+        throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException {
+        User user = readUser(hostId, partnerId, userId, passwordCallback);
+        users.put(userId, user);
+        getSubscriberRegistry().register(hostId, partnerId, userId);
+        return user;
+    }
+
+    /**
+     * Deserializes a user, reusing the bank and partner if they are already
+     * loaded, and opens its key store.
+     */
+    private User readUser(String hostId, String partnerId, String userId,
         PasswordCallback passwordCallback)
         throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException {
         configuration.getLogger().info(
             Messages.getString("user.load.info", Constants.APPLICATION_BUNDLE_NAME, userId));
 
         try {
-            Bank bank;
-            Partner partner;
             User user;
-            try (ObjectInputStream input = configuration.getSerializationManager().deserialize(
-                hostId)) {
-                bank = (Bank) input.readObject();
-            }
-            try (ObjectInputStream input = configuration.getSerializationManager().deserialize(
-                "partner-" + partnerId)) {
-                partner = new Partner(bank, input);
-            }
+            Bank bank = getBank(hostId);
+            Partner partner = getPartner(bank, partnerId);
             try (ObjectInputStream input = configuration.getSerializationManager().deserialize(
                 "user-" + userId)) {
                 user = new User(partner, input, configuration.getKeystoreDirectory(userId), passwordCallback);
             }
-            users.put(userId, user);
-            partners.put(partner.getPartnerId(), partner);
-            banks.put(bank.getHostId(), bank);
             configuration.getLogger().info(
                 Messages.getString("user.load.success", Constants.APPLICATION_BUNDLE_NAME, userId));
             return user;
@@ -259,6 +399,130 @@ public class EbicsClient {
         }
     }
 
+    private synchronized Bank getBank(String hostId)
+        throws IOException, ClassNotFoundException, EbicsException {
+        Bank bank = banks.get(hostId);
+        if (bank == null) {
+            try (ObjectInputStream input = configuration.getSerializationManager().deserialize(
+                hostId)) {
+                bank = (Bank) input.readObject();
+            }
+            banks.put(hostId, bank);
+        }
+        return bank;
+    }
+
+    private synchronized Partner getPartner(Bank bank, String partnerId)
+        throws IOException, EbicsException {
+        Partner partner = partners.get(partnerId);
+        if (partner == null) {
+            try (ObjectInputStream input = configuration.getSerializationManager().deserialize(
+                "partner-" + partnerId)) {
+                partner = new Partner(bank, input);
+            }
+            setOrderIdAllocator(partner);
+            partners.put(partnerId, partner);
+        }
+        return partner;
+    }
+
+    /**
+     * Returns the registry of the subscribers found in the serialization
+     * directory. The registry is created and indexed on first use; users are
+     * only loaded when they are requested through {@link #getUser(String)}.
+     *
+     * @return the subscriber registry
+     * @throws EbicsException
+     *             the subscribers index cannot be read
+     */
+    public synchronized SubscriberRegistry getSubscriberRegistry() throws EbicsException {
+        if (registry == null) {
+            int cacheSize = Integer.parseInt(getProperty("registry.cache.size", "100"));
+            long idleTimeout = Long.parseLong(getProperty("registry.cache.idle", "0"));
+            registry = new SubscriberRegistry(configuration, new SubscriberRegistry.Loader() {
+                @Override
+                public User load(SubscriberRegistry.Subscriber subscriber)
+                    throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException {
+                    return readUser(subscriber.getHostId(), subscriber.getPartnerId(),
+                        subscriber.getUserId(), createPasswordCallback());
+                }
+            }, cacheSize, idleTimeout * 1000);
+            registry.setDefaultSubscriber(getProperty("hostId", null), getProperty("partnerId", null));
+            registry.scan();
+        }
+        return registry;
+    }
+
+    /**
+     * Returns a registered user, loading it and its keys on first use.
+     *
+     * @param userId
+     *            the user ID
+     * @return the user
+     */
+    public User getUser(String userId)
+        throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException {
+        User user = users.get(userId);
+        if (user != null) {
+            return user;
+        }
+        return getSubscriberRegistry().getUser(userId);
+    }
+
+    private String getProperty(String key, String defaultValue) {
+        return properties == null ? defaultValue : properties.get(key, defaultValue);
+    }
+
+    /**
+     * Returns the cache of the bank capability profiles, null unless the
+     * orders are checked against the profiles
+     * (<code>bank.profile.enabled</code>). The profiles are only fetched by
+     * {@link #refreshBankProfile(User, Product)}; profiles older than
+     * <code>bank.profile.ttl</code> seconds are ignored.
+     *
+     * @return the bank capabilities cache
+     */
+    public synchronized BankCapabilities getBankCapabilities() {
+        if (capabilities == null && Boolean.parseBoolean(getProperty("bank.profile.enabled", "false"))) {
+            capabilities = new BankCapabilities(configuration,
+                Long.parseLong(getProperty("bank.profile.ttl", "86400")) * 1000);
+        }
+        return capabilities;
+    }
+
+    /**
+     * Rejects an order the bank is known not to support.
+     *
+     * @param session
+     *            the ebics session of the order
+     * @param orderType
+     *            the order type
+     */
+    private void checkCapabilities(EbicsSession session, OrderType orderType) throws EbicsException {
+        BankCapabilities capabilities = getBankCapabilities();
+        if (capabilities != null) {
+            capabilities.check(session, orderType);
+        }
+    }
+
+    /**
+     * Fetches the capability profile of the bank of a user with the HEV,
+     * HPD and HTD orders.
+     *
+     * @return the refreshed profile
+     */
+    public BankProfile refreshBankProfile(User user, Product product) throws IOException, EbicsException {
+        EbicsSession session = createSession(user, product);
+        BankCapabilities capabilities = getBankCapabilities();
+
+        configuration.getTraceManager().setTraceDirectory(
+            configuration.getTransferTraceDirectory(user.getUserId()));
+        if (capabilities == null) {
+            capabilities = new BankCapabilities(configuration, 0);
+        }
+        return capabilities.refresh(session);
+    }
+
     /**
      * Sends an INI request to the ebics bank server
      *
@@ -396,8 +660,72 @@ public class EbicsClient {
      * @throws EbicsException
      */
     public void sendFile(File file, OrderType orderType) throws IOException, EbicsException {
-        try (final InputStream input = new FileInputStream(file)) {
-            sendFile(input, defaultUser, defaultProduct, orderType);
+        sendFile(file, defaultUser, defaultProduct, orderType, null);
+    }
+
+    /**
+     * Sends a file to the ebics bank server. The file is read through memory
+     * mapped windows and is never loaded in memory as a whole.
+     * @throws IOException
+     * @throws EbicsException
+     */
+    public void sendFile(File file, User user, Product product, OrderType orderType, Integer orderId)
+        throws IOException, EbicsException {
+        EbicsSession session = createSession(user, product);
+        FileTransfer transferManager = new FileTransfer(session);
+
+        configuration.getTraceManager().setTraceDirectory(
+            configuration.getTransferTraceDirectory(user.getUserId()));
+        checkCapabilities(session, orderType);
+
+        try {
+            transferManager.sendFile(file, orderType, OrderAttributeType.OZHNN, orderId);
+        } catch (IOException | EbicsException e) {
+            configuration.getLogger().error(
+                Messages.getString("upload.file.error", Constants.APPLICATION_BUNDLE_NAME), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Signs, compresses and encrypts a file to upload without sending it,
+     * so that the preparation of many uploads may run in parallel with the
+     * sending of others.
+     * @return the prepared upload, to be sent with
+     *         {@link #sendFile(FileTransfer.PreparedUpload) sendFile} or disposed
+     * @throws EbicsException
+     */
+    public FileTransfer.PreparedUpload prepareFile(File file, User user, Product product, OrderType orderType,
+        Integer orderId) throws EbicsException {
+        EbicsSession session = createSession(user, product);
+        FileTransfer transferManager = new FileTransfer(session);
+
+        checkCapabilities(session, orderType);
+        try {
+            return transferManager.prepareFile(file, orderType, OrderAttributeType.OZHNN, orderId);
+        } catch (EbicsException e) {
+            configuration.getLogger().error(
+                Messages.getString("upload.file.error", Constants.APPLICATION_BUNDLE_NAME), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a file prepared by {@link #prepareFile(File, User, Product, OrderType, Integer) prepareFile}
+     * to the ebics bank server.
+     * @throws IOException
+     * @throws EbicsException
+     */
+    public void sendFile(FileTransfer.PreparedUpload upload) throws IOException, EbicsException {
+        configuration.getTraceManager().setTraceDirectory(
+            configuration.getTransferTraceDirectory(upload.getUserId()));
+        try {
+            upload.send();
+        } catch (IOException | EbicsException e) {
+            upload.dispose();
+            configuration.getLogger().error(
+                Messages.getString("upload.file.error", Constants.APPLICATION_BUNDLE_NAME), e);
+            throw e;
         }
     }
 
@@ -421,6 +749,7 @@ public class EbicsClient {
 
         configuration.getTraceManager().setTraceDirectory(
             configuration.getTransferTraceDirectory(user.getUserId()));
+        checkCapabilities(session, orderType);
 
         try {
             transferManager.sendFile(IOUtils.inputStreamToBytes(input), orderType, orderAttribute, orderId);
@@ -432,6 +761,15 @@ public class EbicsClient {
     }
 
     public void fetchFile(OutputStream output, User user, Product product, OrderType orderType,
+        boolean isTest, Date start, Date end) throws IOException, EbicsException {
+        fetchFile(Channels.newChannel(output), user, product, orderType, isTest, start, end);
+    }
+
+    /**
+     * Fetches a file into a channel. Large downloads are decrypted and
+     * uncompressed as a stream and written through a direct buffer.
+     */
+    public void fetchFile(WritableByteChannel output, User user, Product product, OrderType orderType,
         boolean isTest, Date start, Date end) throws IOException, EbicsException {
         FileTransfer transferManager;
         EbicsSession session = createSession(user, product);
@@ -443,6 +781,7 @@ public class EbicsClient {
 
         configuration.getTraceManager().setTraceDirectory(
             configuration.getTransferTraceDirectory(user.getUserId()));
+        checkCapabilities(session, orderType);
 
         try {
             transferManager.fetchFile(orderType, start, end, output);
@@ -457,7 +796,8 @@ public class EbicsClient {
     }
 
     public void fetchFile(File file, OrderType orderType, Date start, Date end) throws IOException, EbicsException {
-        try (final OutputStream out = new FileOutputStream(file)) {
+        try (final FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
             fetchFile(out, defaultUser, defaultProduct, orderType, false, start, end);
         } catch (EbicsException e) {
             file.delete();
@@ -479,6 +819,10 @@ public class EbicsClient {
                 }
             }
 
+            if (registry != null) {
+                registry.flush();
+            }
+
             for (Partner partner : partners.values()) {
                 if (partner.needsSave()) {
                     configuration.getLogger().info(
@@ -501,7 +845,12 @@ public class EbicsClient {
                 Messages.getString("app.quit.error", Constants.APPLICATION_BUNDLE_NAME));
         }
 
+        stopKeyPairPool();
+        HttpRequestSender.closeConnections();
         clearTraces();
+        if (configuration.getLogger() instanceof DefaultEbicsLogger) {
+            ((DefaultEbicsLogger) configuration.getLogger()).close();
+        }
     }
 
     public void clearTraces() {
@@ -585,6 +934,10 @@ public class EbicsClient {
         final Locale locale = new Locale(language, country);
         final boolean logFileEnabled = Boolean.parseBoolean(properties.get("log.file.enabled", "true"));
         final Level logLevel = Level.toLevel(properties.get("log.level", "ALL"), Level.ALL);
+        final boolean logAsync = Boolean.parseBoolean(properties.get("log.async", "false"));
+        final int logBufferSize = Integer.parseInt(properties.get("log.async.bufferSize", "128"));
+        final int orderIdBlockSize = Integer.parseInt(properties.get("orderId.blockSize", "16"));
+        final boolean bankKeyRefresh = Boolean.parseBoolean(properties.get("bank.keys.refresh", "true"));
 
         DefaultConfiguration configuration = new DefaultConfiguration(rootDir.getAbsolutePath()) {
             @Override
@@ -601,6 +954,26 @@ public class EbicsClient {
             public Level getLogLevel() {
                 return logLevel;
             }
+
+            @Override
+            public boolean isLogAsyncEnabled() {
+                return logAsync;
+            }
+
+            @Override
+            public int getLogBufferSize() {
+                return logBufferSize;
+            }
+
+            @Override
+            public int getOrderIdBlockSize() {
+                return orderIdBlockSize;
+            }
+
+            @Override
+            public boolean isBankKeyRefreshEnabled() {
+                return bankKeyRefresh;
+            }
         };
 
 
@@ -646,6 +1019,217 @@ public class EbicsClient {
         this.defaultProduct = product;
     }
 
+    /**
+     * Creates, initializes and saves the subscribers of a CSV manifest.
+     *
+     * @param manifest
+     *            the manifest listing the subscribers
+     * @param report
+     *            the CSV report file, null for no report
+     * @param threads
+     *            the maximum number of INI and HIA requests sent in parallel
+     * @return the onboarding results
+     * @throws EbicsException
+     *             the manifest cannot be read or the report cannot be written
+     */
+    public List<BulkOnboarding.Result> onboard(File manifest, File report, int threads)
+        throws EbicsException {
+        List<BulkOnboarding.Subscriber> subscribers = BulkOnboarding.readManifest(manifest);
+        BulkOnboarding onboarding = new BulkOnboarding(this, configuration, defaultProduct,
+            createPasswordCallback(), threads,
+            Integer.parseInt(getProperty("onboard.attempts", "3")),
+            Long.parseLong(getProperty("onboard.retryDelay", "1000")));
+
+        startKeyPairPool(Integer.parseInt(getProperty("onboard.keyPool", "16")));
+        try {
+            List<BulkOnboarding.Result> results = onboarding.run(subscribers);
+            if (report != null) {
+                BulkOnboarding.writeReport(results, report);
+            }
+            return results;
+        } finally {
+            stopKeyPairPool();
+        }
+    }
+
+    /**
+     * Executes the uploads and downloads of a CSV manifest in this process.
+     *
+     * @param manifest
+     *            the manifest listing the orders
+     * @param results
+     *            the CSV result file, null for no result file
+     * @param threads
+     *            the number of orders executed in parallel
+     * @return the order results
+     * @throws EbicsException
+     *             the manifest cannot be read or the result file cannot be written
+     */
+    public List<OrderBatch.Result> batch(File manifest, File results, int threads)
+        throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException {
+        List<OrderBatch.Order> orders = OrderBatch.readManifest(manifest);
+        for (OrderBatch.Order order : orders) {
+            if (order.getUserId() == null && defaultUser == null) {
+                loadDefaultUser();
+                break;
+            }
+        }
+
+        OrderBatch batch = new OrderBatch(this, defaultProduct, threads);
+        // uploads signed, compressed and encrypted in parallel, zero to prepare them in the order threads
+        batch.setPrepareParallelism(Integer.parseInt(getProperty("batch.prepare.threads",
+            String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        List<OrderBatch.Result> batchResults = batch.run(orders);
+        if (results != null) {
+            OrderBatch.writeResults(batchResults, results);
+        }
+        return batchResults;
+    }
+
+    /**
+     * Downloads several order types for several users concurrently. Each
+     * order is written to <code>output/userId/ORDERTYPE.dat</code>, or
+     * <code>output/ORDERTYPE.dat</code> for the default user. The number of
+     * transactions open at the same time with a bank is limited by the
+     * <code>bank.maxTransactions</code> property. The latency of every order
+     * and the total makespan are logged.
+     *
+     * @param userIds
+     *            the user IDs, null or empty for the default user only
+     * @param orderTypes
+     *            the downloaded order types
+     * @param output
+     *            the output directory
+     * @param start
+     *            the start date, may be null
+     * @param end
+     *            the end date, may be null
+     * @param threads
+     *            the number of downloads executed in parallel
+     * @return the order results
+     */
+    public List<OrderBatch.Result> fetchFiles(List<String> userIds, List<OrderType> orderTypes,
+        File output, Date start, Date end, int threads)
+        throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException {
+        List<OrderBatch.Order> orders = new ArrayList<>();
+        if (userIds == null || userIds.isEmpty()) {
+            if (defaultUser == null) {
+                loadDefaultUser();
+            }
+            for (OrderType type : orderTypes) {
+                orders.add(new OrderBatch.Order(null, type, new File(output, type + ".dat"), start, end));
+            }
+        } else {
+            for (String userId : userIds) {
+                for (OrderType type : orderTypes) {
+                    orders.add(new OrderBatch.Order(userId, type,
+                        new File(new File(output, userId), type + ".dat"), start, end));
+                }
+            }
+        }
+        for (OrderBatch.Order order : orders) {
+            order.getFile().getParentFile().mkdirs();
+        }
+
+        OrderBatch batch = new OrderBatch(this, defaultProduct, threads,
+            Integer.parseInt(getProperty("bank.maxTransactions", "4")));
+        List<OrderBatch.Result> results = batch.run(orders);
+        for (OrderBatch.Result result : results) {
+            configuration.getLogger().info(
+                Messages.getString("fetch.order.result", Constants.APPLICATION_BUNDLE_NAME,
+                    result.getOrder().getUserId() == null ? "" : result.getOrder().getUserId(),
+                    result.getOrder().getOrderType().name(), result.getStatus().name(),
+                    result.getDuration()));
+        }
+        configuration.getLogger().info(
+            Messages.getString("fetch.makespan", Constants.APPLICATION_BUNDLE_NAME,
+                orders.size(), batch.getMakespan()));
+        return results;
+    }
+
+    /**
+     * Runs the client as a daemon accepting orders on a local HTTP port
+     * until a shutdown is requested through the API or the JVM stops.
+     * The users that callers may name are listed in the
+     * <code>daemon.users</code> property, finished jobs are kept for
+     * <code>daemon.job.ttl</code> seconds.
+     *
+     * @param port
+     *            the local port of the control API, 0 for any free port
+     * @param threads
+     *            the number of orders executed in parallel
+     * @throws IOException
+     *             the port cannot be bound
+     */
+    public void daemon(int port, int threads)
+        throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException,
+        InterruptedException {
+        if (defaultUser == null && getProperty("userId", null) != null) {
+            loadDefaultUser();
+        }
+
+        File workDirectory = new File(configuration.getRootDirectory(), "daemon");
+        final EbicsDaemon daemon = new EbicsDaemon(this, defaultProduct, port, threads, workDirectory);
+        String allowedUsers = getProperty("daemon.users", "");
+        daemon.setAllowedUsers(allowedUsers.isEmpty() ? Collections.<String>emptyList()
+            : Arrays.asList(allowedUsers.split("\\s*,\\s*")));
+        daemon.setJobTimeout(Long.parseLong(getProperty("daemon.job.ttl", "3600")) * 1000);
+        Thread hook = new Thread(daemon::stop, "ebics-daemon-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        daemon.start();
+        configuration.getLogger().info(Messages.getString("daemon.start",
+            Constants.APPLICATION_BUNDLE_NAME, daemon.getPort(),
+            new File(workDirectory, "token")));
+        try {
+            daemon.awaitShutdown();
+        } finally {
+            daemon.stop();
+            Runtime.getRuntime().removeShutdownHook(hook);
+        }
+    }
+
+    /**
+     * Polls the downloads listed in a CSV manifest until the JVM stops,
+     * the client is then saved as by {@link #quit()}.
+     * The intervals are read from the <code>poll.interval</code>,
+     * <code>poll.minInterval</code> and <code>poll.maxInterval</code>
+     * properties in seconds, and the jitter from <code>poll.jitter</code>.
+     *
+     * @param manifest
+     *            the manifest listing the user IDs and order types
+     * @param output
+     *            the directory receiving the downloaded files
+     * @param threads
+     *            the number of downloads executed in parallel
+     */
+    public void poll(File manifest, File output, int threads)
+        throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException,
+        InterruptedException {
+        List<PollingScheduler.Target> targets = PollingScheduler.readManifest(manifest);
+        for (PollingScheduler.Target target : targets) {
+            if (target.getUserId() == null && defaultUser == null) {
+                loadDefaultUser();
+                break;
+            }
+        }
+
+        final PollingScheduler scheduler = new PollingScheduler(this, configuration, defaultProduct,
+            output, threads,
+            Long.parseLong(getProperty("poll.interval", "900")) * 1000,
+            Long.parseLong(getProperty("poll.minInterval", "60")) * 1000,
+            Long.parseLong(getProperty("poll.maxInterval", "14400")) * 1000,
+            Double.parseDouble(getProperty("poll.jitter", "0.1")));
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Thread hook = new Thread(() -> {
+            scheduler.stop();
+            quit();
+            stopped.countDown();
+        }, "ebics-poll-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        scheduler.start(targets);
+        stopped.await();
+    }
+
     private static void addOption(Options options, OrderType type, String description) {
         options.addOption(null, type.name().toLowerCase(), false, description);
     }
@@ -694,6 +1278,16 @@ public class EbicsClient {
         options.addOption("s", "start", true, "Start date");
         options.addOption("e", "end", true, "End date");
 
+        options.addOption(null, "onboard", true, "Create and initialize the users of a CSV manifest");
+        options.addOption(null, "report", true, "Onboarding report file");
+        options.addOption(null, "threads", true, "Number of parallel onboarding requests or batch orders");
+        options.addOption(null, "batch", true, "Execute the uploads and downloads of a CSV manifest");
+        options.addOption(null, "result", true, "Batch result file");
+        options.addOption(null, "daemon", false, "Accept orders on a local HTTP port until shut down");
+        options.addOption(null, "port", true, "Daemon HTTP port");
+        options.addOption(null, "poll", true, "Poll the downloads of a CSV manifest into the output directory");
+        options.addOption(null, "profile", false, "Refresh the bank capability profile (HEV, HPD, HTD)");
+
         CommandLine cmd = parseArguments(options, args);
 
         File defaultRootDir = new File(System.getProperty("user.home") + File.separator + "ebics"
@@ -701,6 +1295,38 @@ public class EbicsClient {
         File ebicsClientProperties = new File(defaultRootDir, "ebics.txt");
         EbicsClient client = createEbicsClient(defaultRootDir, ebicsClientProperties);
 
+        if (cmd.hasOption("onboard")) {
+            String report = cmd.getOptionValue("report");
+            client.onboard(new File(cmd.getOptionValue("onboard")),
+                report == null ? null : new File(report),
+                Integer.parseInt(cmd.getOptionValue("threads", "4")));
+            client.quit();
+            return;
+        }
+
+        if (cmd.hasOption("daemon")) {
+            client.daemon(Integer.parseInt(cmd.getOptionValue("port",
+                client.getProperty("daemon.port", "0"))),
+                Integer.parseInt(cmd.getOptionValue("threads", "4")));
+            client.quit();
+            return;
+        }
+
+        if (cmd.hasOption("poll")) {
+            client.poll(new File(cmd.getOptionValue("poll")), new File(cmd.getOptionValue("o", ".")),
+                Integer.parseInt(cmd.getOptionValue("threads", "4")));
+            return;
+        }
+
+        if (cmd.hasOption("batch")) {
+            String result = cmd.getOptionValue("result");
+            client.batch(new File(cmd.getOptionValue("batch")),
+                result == null ? null : new File(result),
+                Integer.parseInt(cmd.getOptionValue("threads", "4")));
+            client.quit();
+            return;
+        }
+
         if (cmd.hasOption("create")) {
             client.createDefaultUser();
         } else {
@@ -720,6 +1346,9 @@ public class EbicsClient {
         if (hasOption(cmd, OrderType.HPB)) {
             client.sendHPBRequest(client.defaultUser, client.defaultProduct);
         }
+        if (cmd.hasOption("profile")) {
+            client.refreshBankProfile(client.defaultUser, client.defaultProduct);
+        }
 
         String outputFileValue = cmd.getOptionValue("o");
         String inputFileValue = cmd.getOptionValue("i");
@@ -738,20 +1367,24 @@ public class EbicsClient {
             throw new EbicsException("Start date required if end date is given");
         }
 
-        List<OrderType> fetchFileOrders = Arrays.asList(OrderType.STA, OrderType.VMK,
-            OrderType.C52, OrderType.C53, OrderType.C54, OrderType.C5N, OrderType.CIZ,
-            OrderType.ZDF, OrderType.ZB6, OrderType.PTK, OrderType.HAC, OrderType.Z01,
-            OrderType.CRC, OrderType.CRJ, OrderType.CRZ, OrderType.HAA, OrderType.HTD);
-        for (OrderType type : fetchFileOrders) {
+        List<OrderType> fetchTypes = new ArrayList<>();
+        for (OrderType type : FETCH_FILE_ORDERS) {
             if (hasOption(cmd, type)) {
-                client.fetchFile(getOutputFile(outputFileValue), type, startDate, endDate);
-                break;
+                fetchTypes.add(type);
+            }
+        }
+        if (fetchTypes.size() == 1) {
+            client.fetchFile(getOutputFile(outputFileValue), fetchTypes.get(0), startDate, endDate);
+        } else if (fetchTypes.size() > 1) {
+            // several order types are fetched concurrently into the output directory
+            if (outputFileValue == null || outputFileValue.isEmpty()) {
+                throw new IllegalArgumentException("output directory not set");
             }
+            client.fetchFiles(null, fetchTypes, new File(outputFileValue), startDate, endDate,
+                Integer.parseInt(cmd.getOptionValue("threads", "4")));
         }
 
-        List<OrderType> sendFileOrders = Arrays.asList(OrderType.XKD, OrderType.FUL, OrderType.XCT,
-            OrderType.XE2, OrderType.CCT, OrderType.CIP);
-        for (OrderType type : sendFileOrders) {
+        for (OrderType type : SEND_FILE_ORDERS) {
             if (hasOption(cmd, type)) {
                 client.sendFile(new File(inputFileValue), type);
                 break;
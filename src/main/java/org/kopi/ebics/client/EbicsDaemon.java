@@ -0,0 +1,578 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kopi.ebics.session.OrderType;
+import org.kopi.ebics.session.Product;
+import org.kopi.ebics.utils.NamedThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Keeps an ebics client running and accepts orders over a local HTTP API.
+ *
+ * <p>The loaded users, their decrypted keys, the pooled bank connections
+ * and the compiled code stay warm between orders, so that submitting an
+ * order costs a local HTTP call instead of a JVM startup. The API only
+ * listens on the loopback interface. At startup the daemon writes a random
+ * token and the bound port to the <code>token</code> and <code>port</code>
+ * files of its work directory, readable by the owner only. Every request
+ * must carry the token as <code>Authorization: Bearer TOKEN</code>.
+ * Requests with an <code>Origin</code> header or a <code>Host</code> that
+ * is not a loopback address are refused, so that web pages cannot reach
+ * the API through the browser.
+ *
+ * <ul>
+ *   <li><code>POST /orders?type=XCT[&amp;user=ID][&amp;wait=true]</code> uploads the request body</li>
+ *   <li><code>POST /orders?type=STA[&amp;user=ID][&amp;start=yyyy-MM-dd][&amp;end=yyyy-MM-dd][&amp;wait=true]</code>
+ *       downloads a file</li>
+ *   <li><code>GET /jobs/ID</code> returns the job status</li>
+ *   <li><code>GET /jobs/ID/result</code> streams the downloaded file</li>
+ *   <li><code>DELETE /jobs/ID</code> forgets a finished job and its files</li>
+ *   <li><code>POST /shutdown</code> stops the daemon</li>
+ * </ul>
+ *
+ * <p>Orders are accepted immediately and executed by a fixed number of
+ * threads. With <code>wait=true</code> the call returns when the order is
+ * done, and streams the downloaded file back if there is one. Orders run
+ * for the default user unless <code>user</code> names one of the
+ * {@link #setAllowedUsers(Collection) allowed users}. Finished jobs and
+ * their files are removed after the {@link #setJobTimeout(long) job timeout}.
+ *
+ */
+public class EbicsDaemon {
+
+  /**
+   * Constructs a new <code>EbicsDaemon</code>.
+   * @param client the ebics client executing the orders
+   * @param product the application product
+   * @param port the local port of the control API, 0 for any free port
+   * @param threads the number of orders executed in parallel
+   * @param workDirectory the directory of the uploaded and downloaded files
+   */
+  public EbicsDaemon(EbicsClient client, Product product, int port, int threads, File workDirectory) {
+    this.batch = new OrderBatch(client, product, threads);
+    this.port = port;
+    this.threads = Math.max(1, threads);
+    this.workDirectory = workDirectory;
+    jobs = new ConcurrentHashMap<Long, Job>();
+    sequence = new AtomicLong();
+    stopped = new CountDownLatch(1);
+    allowedUsers = Collections.emptySet();
+    jobTimeout = DEFAULT_JOB_TIMEOUT;
+  }
+
+  /**
+   * Sets the users that the callers may name with the <code>user</code>
+   * parameter. <code>*</code> allows every user known by the client.
+   * @param users the allowed user IDs
+   */
+  public void setAllowedUsers(Collection<String> users) {
+    this.allowedUsers = Collections.unmodifiableSet(new HashSet<String>(users));
+  }
+
+  /**
+   * Sets the time after which a finished job and its files are removed.
+   * @param jobTimeout the timeout in milliseconds
+   */
+  public void setJobTimeout(long jobTimeout) {
+    this.jobTimeout = jobTimeout;
+  }
+
+  /**
+   * Returns the local port of the control API.
+   * @return the bound port, or the configured one if the daemon is not started
+   */
+  public synchronized int getPort() {
+    return server == null ? port : server.getAddress().getPort();
+  }
+
+  /**
+   * Starts accepting orders.
+   * @throws IOException the port cannot be bound or the token cannot be written
+   */
+  public synchronized void start() throws IOException {
+    byte[]			secret;
+
+    workDirectory.mkdirs();
+    secret = new byte[32];
+    new SecureRandom().nextBytes(secret);
+    token = toHex(secret);
+    executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("ebics-daemon"));
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.setExecutor(Executors.newCachedThreadPool(new NamedThreadFactory("ebics-daemon-http")));
+    server.createContext("/orders", guard(new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        handleOrder(exchange);
+      }
+    }));
+    server.createContext("/jobs/", guard(new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        handleJob(exchange);
+      }
+    }));
+    server.createContext("/shutdown", guard(new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+          send(exchange, 405, "{\"error\":\"method not allowed\"}");
+          return;
+        }
+        send(exchange, 200, "{\"status\":\"stopping\"}");
+        stopped.countDown();
+      }
+    }));
+    writeOwnerOnly(new File(workDirectory, TOKEN_FILE_NAME), token);
+    writeOwnerOnly(new File(workDirectory, PORT_FILE_NAME), String.valueOf(server.getAddress().getPort()));
+    expiry = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ebics-daemon-expiry"));
+    expiry.scheduleWithFixedDelay(this::expireJobs, EXPIRY_PERIOD, EXPIRY_PERIOD, TimeUnit.MILLISECONDS);
+    server.start();
+  }
+
+  /**
+   * Waits until a shutdown is requested through the API.
+   * @throws InterruptedException the waiting thread is interrupted
+   */
+  public void awaitShutdown() throws InterruptedException {
+    stopped.await();
+  }
+
+  /**
+   * Stops accepting orders, waits for the running ones and removes the
+   * job files.
+   */
+  public synchronized void stop() {
+    stopped.countDown();
+    if (server != null) {
+      server.stop(1);
+      ((ExecutorService) server.getExecutor()).shutdown();
+      server = null;
+    }
+    if (expiry != null) {
+      expiry.shutdownNow();
+      expiry = null;
+    }
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      executor = null;
+    }
+    for (Job job : jobs.values()) {
+      job.delete();
+    }
+    jobs.clear();
+    new File(workDirectory, TOKEN_FILE_NAME).delete();
+    new File(workDirectory, PORT_FILE_NAME).delete();
+  }
+
+  /**
+   * Removes the jobs that finished before the job timeout.
+   */
+  private void expireJobs() {
+    Iterator<Job>		iter;
+    long			now;
+
+    now = System.currentTimeMillis();
+    iter = jobs.values().iterator();
+    while (iter.hasNext()) {
+      Job			job;
+
+      job = iter.next();
+      if (job.finished > 0 && now - job.finished > jobTimeout) {
+        iter.remove();
+        job.delete();
+      }
+    }
+  }
+
+  /**
+   * Wraps a handler so that it only runs for authorized local callers.
+   */
+  private HttpHandler guard(final HttpHandler handler) {
+    return new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String			authorization;
+
+        if (exchange.getRequestHeaders().containsKey("Origin")
+            || !isLoopbackHost(exchange.getRequestHeaders().getFirst("Host")))
+        {
+          send(exchange, 403, "{\"error\":\"forbidden\"}");
+          return;
+        }
+
+        authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null
+            || !MessageDigest.isEqual(authorization.getBytes(StandardCharsets.UTF_8),
+                                      ("Bearer " + token).getBytes(StandardCharsets.UTF_8)))
+        {
+          send(exchange, 401, "{\"error\":\"unauthorized\"}");
+          return;
+        }
+
+        handler.handle(exchange);
+      }
+    };
+  }
+
+  /**
+   * Tells if the <code>Host</code> header of a request names the loopback
+   * interface. Requests without the header are accepted.
+   */
+  private static boolean isLoopbackHost(String host) {
+    String			name;
+
+    if (host == null) {
+      return true;
+    }
+
+    name = host.trim().toLowerCase();
+    if (name.startsWith("[")) {
+      name = name.indexOf(']') > 0 ? name.substring(1, name.indexOf(']')) : name;
+    } else if (name.indexOf(':') >= 0) {
+      name = name.substring(0, name.indexOf(':'));
+    }
+
+    return name.equals("localhost") || name.equals("::1") || name.startsWith("127.");
+  }
+
+  /**
+   * Writes a small file that only the owner of the process can read.
+   */
+  private static void writeOwnerOnly(File file, String content) throws IOException {
+    Path			path;
+
+    path = file.toPath();
+    Files.deleteIfExists(path);
+    try {
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } catch (UnsupportedOperationException e) {
+      Files.createFile(path);
+      file.setReadable(false, false);
+      file.setWritable(false, false);
+      file.setReadable(true, true);
+      file.setWritable(true, true);
+    }
+    Files.write(path, content.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder		buffer;
+
+    buffer = new StringBuilder();
+    for (byte b : bytes) {
+      buffer.append(String.format("%02x", b & 0xff));
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * Accepts a new order.
+   */
+  private void handleOrder(HttpExchange exchange) throws IOException {
+    Map<String, String>		params;
+    OrderType			type;
+    Job				job;
+    File			file;
+    Date			start;
+    Date			end;
+
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      send(exchange, 405, "{\"error\":\"method not allowed\"}");
+      return;
+    }
+
+    params = parseQuery(exchange.getRequestURI().getRawQuery());
+    try {
+      type = OrderType.valueOf(String.valueOf(params.get("type")).toUpperCase());
+      start = parseDate(params.get("start"));
+      end = params.get("end") != null ? parseDate(params.get("end")) : start == null ? null : new Date();
+    } catch (IllegalArgumentException | ParseException e) {
+      send(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+      return;
+    }
+    if (!EbicsClient.SEND_FILE_ORDERS.contains(type) && !EbicsClient.FETCH_FILE_ORDERS.contains(type)) {
+      send(exchange, 400, "{\"error\":\"unsupported order type " + type + "\"}");
+      return;
+    }
+    if (params.get("user") != null
+        && !allowedUsers.contains(params.get("user"))
+        && !allowedUsers.contains("*"))
+    {
+      send(exchange, 403, "{\"error\":\"user not allowed\"}");
+      return;
+    }
+
+    job = new Job(sequence.incrementAndGet());
+    file = new File(workDirectory, "job-" + job.id + (EbicsClient.SEND_FILE_ORDERS.contains(type) ? ".in" : ".out"));
+    job.file = file;
+    job.order = new OrderBatch.Order(params.get("user"), type, file, start, end);
+    if (job.order.isUpload()) {
+      try (InputStream input = exchange.getRequestBody()) {
+        Files.copy(input, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+
+    jobs.put(job.id, job);
+    final Job		submitted = job;
+    job.task = executor.submit(() -> {
+      submitted.running = true;
+      submitted.result = batch.execute(submitted.order);
+      if (submitted.order.isUpload()) {
+        submitted.file.delete();
+      }
+      submitted.finished = System.currentTimeMillis();
+      return null;
+    });
+
+    if ("true".equals(params.get("wait"))) {
+      try {
+        job.task.get();
+      } catch (Exception e) {
+        // the job result holds the failure
+      }
+      if (job.result != null && job.result.getStatus() == OrderBatch.Status.OK && !job.order.isUpload()) {
+        sendFile(exchange, job);
+      } else {
+        send(exchange, 200, status(job));
+      }
+    } else {
+      send(exchange, 202, status(job));
+    }
+  }
+
+  /**
+   * Returns, streams or removes a job.
+   */
+  private void handleJob(HttpExchange exchange) throws IOException {
+    String[]			path;
+    Job				job;
+
+    path = exchange.getRequestURI().getPath().substring("/jobs/".length()).split("/");
+    try {
+      job = jobs.get(Long.parseLong(path[0]));
+    } catch (NumberFormatException e) {
+      job = null;
+    }
+    if (job == null) {
+      send(exchange, 404, "{\"error\":\"unknown job\"}");
+      return;
+    }
+
+    if ("DELETE".equals(exchange.getRequestMethod())) {
+      if (job.result == null) {
+        send(exchange, 409, status(job));
+      } else {
+        jobs.remove(job.id);
+        job.delete();
+        send(exchange, 200, status(job));
+      }
+    } else if (path.length > 1 && "result".equals(path[1])) {
+      if (job.result == null || job.result.getStatus() != OrderBatch.Status.OK || job.order.isUpload()) {
+        send(exchange, 409, status(job));
+      } else {
+        sendFile(exchange, job);
+      }
+    } else {
+      send(exchange, 200, status(job));
+    }
+  }
+
+  /**
+   * Returns the JSON status of a job.
+   */
+  private static String status(Job job) {
+    StringBuilder		buffer;
+    OrderBatch.Result		result;
+
+    result = job.result;
+    buffer = new StringBuilder();
+    buffer.append("{\"id\":").append(job.id);
+    buffer.append(",\"orderType\":").append(quote(job.order.getOrderType().name()));
+    buffer.append(",\"status\":").append(quote(result != null ? result.getStatus().name()
+                                                 : job.running ? "RUNNING" : "QUEUED"));
+    if (result != null) {
+      buffer.append(",\"duration\":").append(result.getDuration());
+      if (result.getError() != null) {
+        buffer.append(",\"error\":").append(quote(result.getError()));
+      }
+    }
+    buffer.append("}");
+    return buffer.toString();
+  }
+
+  private static void sendFile(HttpExchange exchange, Job job) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+    exchange.sendResponseHeaders(200, job.file.length());
+    try (InputStream input = new FileInputStream(job.file);
+         OutputStream output = exchange.getResponseBody()) {
+      byte[]		buffer = new byte[8192];
+      int		read;
+
+      while ((read = input.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+    }
+  }
+
+  private static void send(HttpExchange exchange, int code, String json) throws IOException {
+    byte[]		body;
+
+    body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(code, body.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  private static String quote(String value) {
+    StringBuilder		buffer;
+
+    if (value == null) {
+      return "null";
+    }
+    buffer = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        buffer.append('\\').append(c);
+      } else if (c < 0x20) {
+        buffer.append(String.format("\\u%04x", (int) c));
+      } else {
+        buffer.append(c);
+      }
+    }
+    return buffer.append('"').toString();
+  }
+
+  private static Date parseDate(String value) throws ParseException {
+    return value == null ? null : new SimpleDateFormat("yyyy-MM-dd").parse(value);
+  }
+
+  private static Map<String, String> parseQuery(String query) throws IOException {
+    Map<String, String>		params;
+
+    params = new HashMap<String, String>();
+    if (query != null) {
+      for (String param : query.split("&")) {
+        int		index = param.indexOf('=');
+
+        if (index > 0) {
+          params.put(URLDecoder.decode(param.substring(0, index), "UTF-8"),
+                     URLDecoder.decode(param.substring(index + 1), "UTF-8"));
+        }
+      }
+    }
+    return params;
+  }
+
+  /**
+   * An order accepted by the daemon.
+   */
+  private static class Job {
+
+    Job(long id) {
+      this.id = id;
+    }
+
+    void delete() {
+      if (task != null) {
+        task.cancel(false);
+      }
+      if (file != null) {
+        file.delete();
+      }
+    }
+
+    final long				id;
+    OrderBatch.Order			order;
+    File				file;
+    Future<?>				task;
+    volatile boolean			running;
+    volatile OrderBatch.Result		result;
+    volatile long			finished;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final OrderBatch			batch;
+  private final int				port;
+  private final int				threads;
+  private final File				workDirectory;
+  private final Map<Long, Job>			jobs;
+  private final AtomicLong			sequence;
+  private final CountDownLatch			stopped;
+  private HttpServer				server;
+  private ExecutorService			executor;
+  private ScheduledExecutorService		expiry;
+  private volatile String			token;
+  private volatile Set<String>			allowedUsers;
+  private volatile long				jobTimeout;
+
+  private static final String			TOKEN_FILE_NAME = "token";
+  private static final String			PORT_FILE_NAME = "port";
+  private static final long			DEFAULT_JOB_TIMEOUT = 60 * 60 * 1000L;
+  private static final long			EXPIRY_PERIOD = 60 * 1000L;
+}
@@ -20,10 +20,17 @@
 package org.kopi.ebics.client;
 
 import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.exception.ReturnCode;
+import org.kopi.ebics.interfaces.Configuration;
 import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.interfaces.EbicsBank;
 import org.kopi.ebics.io.ByteArrayContentFactory;
 import org.kopi.ebics.io.Joiner;
+import org.kopi.ebics.io.Splitter;
 import org.kopi.ebics.messages.Messages;
+import org.kopi.ebics.metrics.Events;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
 import org.kopi.ebics.schema.h003.OrderAttributeType;
 import org.kopi.ebics.session.EbicsSession;
 import org.kopi.ebics.session.OrderType;
@@ -31,9 +38,14 @@ import org.kopi.ebics.utils.Constants;
 import org.kopi.ebics.utils.Utils;
 import org.kopi.ebics.xml.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -74,6 +86,26 @@ public class FileTransfer {
      */
     public FileTransfer(EbicsSession session) {
         this.session = session;
+        retryPolicy = RetryPolicy.create(session.getConfiguration());
+        preparedMaxAge = getPreparedMaxAge(session.getConfiguration());
+    }
+
+    /**
+     * Returns the age beyond which a prepared upload is prepared again
+     * before being sent, as set in seconds by the
+     * <code>upload.prepared.maxAge</code> property. The nonce and the
+     * timestamp of its initialization request are set when it is prepared
+     * and the bank rejects requests whose timestamp is too old.
+     *
+     * @param conf the client configuration
+     * @return the maximum age in milliseconds
+     */
+    private static long getPreparedMaxAge(Configuration conf) {
+        String value = conf.getProperty("upload.prepared.maxAge");
+
+        return TimeUnit.SECONDS.toMillis(value == null || value.trim().isEmpty()
+                ? DEFAULT_PREPARED_MAX_AGE
+                : Long.parseLong(value.trim()));
     }
 
     /**
@@ -96,14 +128,333 @@ public class FileTransfer {
      * @throws IOException
      * @throws EbicsException
      */
-    public void sendFile(byte[] content, OrderType orderType, OrderAttributeType.Enum orderAttribute, Integer orderId)
+    public void sendFile(final byte[] content, final OrderType orderType,
+                         final OrderAttributeType.Enum orderAttribute, final Integer orderId)
             throws IOException, EbicsException {
-        HttpRequestSender sender = new HttpRequestSender(session);
-        UploadInitializationRequestElement initializer = new UploadInitializationRequestElement(session,
+        upload(orderType, () -> new UploadInitializationRequestElement(session,
+                orderType, orderAttribute, orderId,
+                content));
+    }
+
+    /**
+     * Initiates a file transfer to the bank. The file is read through memory
+     * mapped windows and its compressed and encrypted form is kept in a
+     * temporary file, so that large files are never loaded in memory.
+     *
+     * @param file      The file you want to send.
+     * @param orderType As which order type
+     * @throws IOException
+     * @throws EbicsException
+     */
+    public void sendFile(final File file, final OrderType orderType,
+                         final OrderAttributeType.Enum orderAttribute, final Integer orderId)
+            throws IOException, EbicsException {
+        upload(orderType, () -> new UploadInitializationRequestElement(session,
                 orderType, orderAttribute, orderId,
-                content);
-        initializer.build();
-        initializer.validate();
+                file));
+    }
+
+    /**
+     * Signs, compresses and encrypts a file to upload without sending it.
+     * The preparation only uses the CPU and the local disk, so that many
+     * uploads may be prepared in parallel while others are being sent.
+     *
+     * @param file      The file you want to send.
+     * @param orderType As which order type
+     * @return the prepared upload, to be sent or disposed
+     * @throws EbicsException
+     */
+    @SuppressWarnings("try")
+    public PreparedUpload prepareFile(final File file, final OrderType orderType,
+                                      final OrderAttributeType.Enum orderAttribute, final Integer orderId)
+            throws EbicsException {
+        UploadInitializer initializer = () -> new UploadInitializationRequestElement(session,
+                orderType, orderAttribute, orderId,
+                file);
+
+        try (Metrics.Scope scope = openMetricsScope(orderType)) {
+            return new PreparedUpload(orderType, initializer, prepare(initializer));
+        }
+    }
+
+    /**
+     * Creates the initialization request of an upload.
+     */
+    private interface UploadInitializer {
+        UploadInitializationRequestElement create() throws EbicsException;
+    }
+
+    /**
+     * An upload whose initialization request is built, signed and validated
+     * and whose order data is compressed and encrypted, ready to be sent
+     * by the file transfer that prepared it. An upload sent after the
+     * maximum age of the prepared uploads is prepared again.
+     */
+    public class PreparedUpload {
+
+        PreparedUpload(OrderType orderType,
+                       UploadInitializer initializer,
+                       UploadInitializationRequestElement request) {
+            this.orderType = orderType;
+            this.initializer = initializer;
+            this.request = request;
+            preparedAt = System.currentTimeMillis();
+        }
+
+        public OrderType getOrderType() {
+            return orderType;
+        }
+
+        public String getUserId() {
+            return session.getUser().getUserId();
+        }
+
+        /**
+         * Sends the upload. The upload is disposed once sent.
+         *
+         * @throws IOException
+         * @throws EbicsException
+         */
+        public void send() throws IOException, EbicsException {
+            UploadInitializationRequestElement prepared = request;
+            long age = System.currentTimeMillis() - preparedAt;
+
+            if (prepared == null) {
+                throw new EbicsException("The prepared upload was already sent or disposed");
+            }
+            request = null;
+            if (age > preparedMaxAge) {
+                session.getConfiguration().getLogger().warn(Messages.getString("upload.prepared.expired",
+                        Constants.APPLICATION_BUNDLE_NAME,
+                        orderType,
+                        TimeUnit.MILLISECONDS.toSeconds(age)));
+                prepared.dispose();
+                prepared = null;
+            }
+            upload(orderType, initializer, prepared);
+        }
+
+        /**
+         * Releases the temporary files of an upload that will not be sent.
+         */
+        public void dispose() {
+            if (request != null) {
+                request.dispose();
+                request = null;
+            }
+        }
+
+        private final OrderType orderType;
+        private final UploadInitializer initializer;
+        private final long preparedAt;
+        private UploadInitializationRequestElement request;
+    }
+
+    /**
+     * Creates, builds and validates the initialization request of an upload.
+     * Building it signs the order data, compresses and encrypts it and
+     * encrypts the transaction key.
+     *
+     * @param initializer creates the initialization request
+     * @return the built request
+     * @throws EbicsException
+     */
+    private UploadInitializationRequestElement prepare(UploadInitializer initializer)
+            throws EbicsException {
+        UploadInitializationRequestElement request = initializer.create();
+
+        try {
+            long start = Metrics.start();
+            request.build();
+            Metrics.stop(Phase.BUILD, start);
+            request.validate();
+            return request;
+        } catch (EbicsException | RuntimeException e) {
+            request.dispose();
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads the order data of the initialization request created by the
+     * given initializer. The whole upload is started again with smaller
+     * segments when the bank rejects a segment as too large.
+     *
+     * @param orderType   the order type
+     * @param initializer creates the initialization request
+     * @throws IOException
+     * @throws EbicsException
+     */
+    private void upload(OrderType orderType, UploadInitializer initializer)
+            throws IOException, EbicsException {
+        upload(orderType, initializer, null);
+    }
+
+    /**
+     * Uploads the order data of the given prepared initialization request,
+     * or of the one created by the given initializer. The prepared request
+     * is only used for the first attempt, the next ones are built again
+     * with a new nonce and timestamp.
+     *
+     * @param orderType   the order type
+     * @param initializer creates the initialization request
+     * @param prepared    the prepared initialization request, may be null
+     * @throws IOException
+     * @throws EbicsException
+     */
+    @SuppressWarnings("try")
+    private void upload(OrderType orderType,
+                        UploadInitializer initializer,
+                        UploadInitializationRequestElement prepared)
+            throws IOException, EbicsException {
+        try (Metrics.Scope scope = openMetricsScope(orderType)) {
+            for (;;) {
+                try {
+                    transfer(orderType, initializer, prepared);
+                    return;
+                } catch (EbicsException e) {
+                    if (!reduceSegmentSize(e)) {
+                        throw e;
+                    }
+                } finally {
+                    prepared = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the metrics scope of a transaction of this session.
+     *
+     * @param orderType the order type of the transaction
+     * @return the opened scope
+     */
+    private Metrics.Scope openMetricsScope(OrderType orderType) {
+        return Metrics.open(getHostId(), orderType.toString());
+    }
+
+    /**
+     * Returns the host ID of the bank of this session.
+     *
+     * @return the bank host ID
+     */
+    private String getHostId() {
+        return session.getUser().getPartner().getBank().getHostId();
+    }
+
+    /**
+     * Lowers the segment size of the bank when it rejected a segment as too
+     * large. The size is halved down to the size defined by the specification,
+     * and is kept by the bank for the next transfers.
+     *
+     * @param e the transfer error
+     * @return True if the upload should be started again with smaller segments
+     */
+    private boolean reduceSegmentSize(EbicsException e) {
+        EbicsBank bank = session.getUser().getPartner().getBank();
+        int segmentSize = bank.getSegmentSize();
+
+        if (!ReturnCode.EBICS_SEGMENT_SIZE_EXCEEDED.equals(e.getReturnCode())
+                || segmentSize <= Splitter.DEFAULT_SEGMENT_SIZE) {
+            return false;
+        }
+
+        segmentSize = Math.max(segmentSize / 2, Splitter.DEFAULT_SEGMENT_SIZE);
+        session.getConfiguration().getLogger().warn(Messages.getString("upload.segment.fallback",
+                Constants.APPLICATION_BUNDLE_NAME,
+                bank.getHostId(),
+                segmentSize));
+        bank.setSegmentSize(segmentSize == Splitter.DEFAULT_SEGMENT_SIZE ? 0 : segmentSize);
+        return true;
+    }
+
+    /**
+     * Sends the initialization request created by the given initializer, or
+     * the prepared one for the first attempt, and then every segment of the
+     * upload.
+     *
+     * @param orderType   the order type
+     * @param initializer creates the initialization request
+     * @param prepared    the prepared initialization request, may be null
+     * @throws IOException
+     * @throws EbicsException
+     */
+    private void transfer(OrderType orderType,
+                          UploadInitializer initializer,
+                          UploadInitializationRequestElement prepared)
+            throws IOException, EbicsException {
+        HttpRequestSender sender = new HttpRequestSender(session);
+        UploadInitializationRequestElement request = prepared;
+        InitializationResponseElement response;
+        TransferState state = null;
+        Throwable failure = null;
+        Object event = Events.beginTransaction();
+
+        try {
+            boolean keysRefreshed = false;
+            boolean replayed = false;
+            for (int attempt = 1; ; attempt++) {
+                if (prepared == null) {
+                    if (request != null) {
+                        request.dispose();
+                        request = null;
+                    }
+                    request = prepare(initializer);
+                }
+                prepared = null;
+                try {
+                    response = sendInitialization(sender, request, orderType);
+                    break;
+                } catch (EbicsException e) {
+                    if (!keysRefreshed && isBankKeyUpdateRequired(e)) {
+                        refreshBankKeys();
+                        keysRefreshed = true;
+                    } else if (!replayed && ReturnCode.EBICS_TX_MESSAGE_REPLAY.equals(e.getReturnCode())) {
+                        // the request is built again below with a new nonce and timestamp
+                        session.getConfiguration().getLogger().warn(Messages.getString("upload.replay",
+                                Constants.APPLICATION_BUNDLE_NAME,
+                                getHostId()));
+                        replayed = true;
+                    } else {
+                        awaitRetry(e, attempt);
+                    }
+                }
+            }
+
+            state = new TransferState(request.getSegmentNumber(), response.getTransactionId());
+
+            while (state.hasNext()) {
+                int segmentNumber = state.next();
+                sendFile(request.getContent(segmentNumber), segmentNumber, state.isLastSegment(),
+                        state.getTransactionId(), orderType);
+            }
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            Events.commitTransaction(event, getHostId(), orderType.toString(),
+                    state == null ? null : state.getTransactionId(),
+                    request == null ? 0 : request.getSegmentNumber(), "upload", failure);
+            if (request != null) {
+                request.dispose();
+            }
+        }
+    }
+
+    /**
+     * Sends a built upload initialization request.
+     *
+     * @param sender      the request sender
+     * @param initializer the initialization request
+     * @param orderType   the order type
+     * @return the initialization response
+     * @throws IOException
+     * @throws EbicsException
+     */
+    private InitializationResponseElement sendInitialization(HttpRequestSender sender,
+                                                             UploadInitializationRequestElement initializer,
+                                                             OrderType orderType)
+            throws IOException, EbicsException {
         session.getConfiguration().getTraceManager().trace(initializer.getUserSignature());
         session.getConfiguration().getTraceManager().trace(initializer);
         int httpCode = sender.send(new ByteArrayContentFactory(initializer.prettyPrint()));
@@ -114,13 +465,58 @@ public class FileTransfer {
                 DefaultEbicsRootElement.generateName(orderType));
         response.build();
         session.getConfiguration().getTraceManager().trace(response);
+        return response;
+    }
+
+    /**
+     * Waits before a new attempt of a request the bank answered with a
+     * transient error, or rethrows the error when the request should not
+     * be sent again.
+     *
+     * @param e       the request error
+     * @param attempt the number of attempts already made
+     * @throws IOException
+     * @throws EbicsException
+     */
+    private void awaitRetry(EbicsException e, int attempt) throws IOException, EbicsException {
+        if (!retryPolicy.isRetryable(e.getReturnCode(), attempt)) {
+            throw e;
+        }
+        session.getConfiguration().getLogger().warn(Messages.getString("http.retry",
+                Constants.APPLICATION_BUNDLE_NAME,
+                session.getUser().getPartner().getBank().getHostId(),
+                e.getMessage(),
+                attempt,
+                retryPolicy.getMaxAttempts()));
+        retryPolicy.await(attempt);
+    }
 
-        TransferState state = new TransferState(initializer.getSegmentNumber(), response.getTransactionId());
+    /**
+     * Tells if the bank rejected a request because its public keys changed
+     * and the keys should be fetched again with a HPB request.
+     *
+     * @param e the request error
+     * @return True if the bank keys should be refreshed before a retry
+     */
+    private boolean isBankKeyUpdateRequired(EbicsException e) {
+        return session.getConfiguration().isBankKeyRefreshEnabled()
+                && ReturnCode.EBICS_BANK_PUBKEY_UPDATE_REQUIRED.equals(e.getReturnCode());
+    }
 
-        while (state.hasNext()) {
-            int segmentNumber = state.next();
-            sendFile(initializer.getContent(segmentNumber), segmentNumber, state.isLastSegment(),
-                    state.getTransactionId(), orderType);
+    /**
+     * Fetches the new bank keys and digests through a HPB request.
+     *
+     * @throws IOException
+     * @throws EbicsException
+     */
+    private void refreshBankKeys() throws IOException, EbicsException {
+        session.getConfiguration().getLogger().warn(Messages.getString("hpb.refresh",
+                Constants.APPLICATION_BUNDLE_NAME,
+                session.getUser().getUserId()));
+        try {
+            new KeyManagement(session).sendHPB();
+        } catch (GeneralSecurityException e) {
+            throw new EbicsException(e.getMessage());
         }
     }
 
@@ -145,26 +541,50 @@ public class FileTransfer {
         HttpRequestSender sender;
         TransferResponseElement response;
         int httpCode;
+        Throwable failure;
+        Object event;
 
-        session.getConfiguration().getLogger().info(Messages.getString("upload.segment",
+        event = Events.beginSegment();
+        failure = null;
+        session.getConfiguration().getLogger().info(() -> Messages.getString("upload.segment",
                 Constants.APPLICATION_BUNDLE_NAME,
                 segmentNumber));
-        uploader = new UploadTransferRequestElement(session,
-                orderType,
-                segmentNumber,
-                lastSegment,
-                transactionId,
-                factory);
         sender = new HttpRequestSender(session);
-        uploader.build();
-        uploader.validate();
-        session.getConfiguration().getTraceManager().trace(uploader);
-        httpCode = sender.send(new ByteArrayContentFactory(uploader.prettyPrint()));
-        Utils.checkHttpCode(httpCode);
-        response = new TransferResponseElement(sender.getResponseBody(),
-                DefaultEbicsRootElement.generateName(orderType));
-        response.build();
-        session.getConfiguration().getTraceManager().trace(response);
+        try {
+            for (int attempt = 1; ; attempt++) {
+                uploader = new UploadTransferRequestElement(session,
+                        orderType,
+                        segmentNumber,
+                        lastSegment,
+                        transactionId,
+                        factory);
+                uploader.setTemplate(getTemplate(orderType, transactionId, true));
+                long start = Metrics.start();
+                uploader.build();
+                Metrics.stop(Phase.BUILD, start);
+                uploader.validate();
+                session.getConfiguration().getTraceManager().trace(uploader);
+                httpCode = sender.send(uploader.getRequestContent(), RetryPolicy.Phase.TRANSFER);
+                Utils.checkHttpCode(httpCode);
+                response = new TransferResponseElement(sender.getResponseBody(),
+                        DefaultEbicsRootElement.generateName(orderType));
+                try {
+                    response.build();
+                } catch (EbicsException e) {
+                    awaitRetry(e, attempt);
+                    continue;
+                }
+                session.getConfiguration().getTraceManager().trace(response);
+                break;
+            }
+            Metrics.recordSegment();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            Events.commitSegment(event, getHostId(), orderType.toString(), transactionId, segmentNumber,
+                    sender.getBytesSent(), "upload", failure);
+        }
     }
 
     /**
@@ -185,6 +605,28 @@ public class FileTransfer {
                           Date end,
                           OutputStream output)
             throws IOException, EbicsException {
+        fetchFile(orderType, start, end, Channels.newChannel(output));
+    }
+
+    /**
+     * Fetches a file of the given order type from the bank into a channel.
+     * Large downloads are joined in a temporary file and decrypted and
+     * uncompressed as a stream through a direct buffer, so that they are
+     * never loaded in memory as a whole.
+     *
+     * @param orderType type of file to fetch
+     * @param start     optional begin of fetch term
+     * @param end       optional end of fetch term
+     * @param output    where to put the data
+     * @throws IOException    communication error
+     * @throws EbicsException server generated error
+     */
+    @SuppressWarnings("try")
+    public void fetchFile(OrderType orderType,
+                          Date start,
+                          Date end,
+                          WritableByteChannel output)
+            throws IOException, EbicsException {
         HttpRequestSender sender;
         DownloadInitializationRequestElement initializer;
         DownloadInitializationResponseElement response;
@@ -194,54 +636,93 @@ public class FileTransfer {
         TransferState state;
         Joiner joiner;
 
-        sender = new HttpRequestSender(session);
-        initializer = new DownloadInitializationRequestElement(session,
-                orderType,
-                start,
-                end);
-        initializer.build();
-        initializer.validate();
+        try (Metrics.Scope scope = openMetricsScope(orderType)) {
+            Object event = Events.beginTransaction();
+            Throwable failure = null;
+            state = null;
+            sender = new HttpRequestSender(session);
+            try {
+                boolean keysRefreshed = false;
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        initializer = new DownloadInitializationRequestElement(session,
+                                orderType,
+                                start,
+                                end);
+                        long buildStart = Metrics.start();
+                        initializer.build();
+                        Metrics.stop(Phase.BUILD, buildStart);
+                        initializer.validate();
 
-        session.getConfiguration().getTraceManager().trace(initializer);
-        httpCode = sender.send(new ByteArrayContentFactory(initializer.prettyPrint()));
-        Utils.checkHttpCode(httpCode);
-        response = new DownloadInitializationResponseElement(sender.getResponseBody(),
-                orderType,
-                DefaultEbicsRootElement.generateName(orderType));
+                        session.getConfiguration().getTraceManager().trace(initializer);
+                        httpCode = sender.send(new ByteArrayContentFactory(initializer.prettyPrint()));
+                        Utils.checkHttpCode(httpCode);
+                        response = new DownloadInitializationResponseElement(sender.getResponseBody(),
+                                orderType,
+                                DefaultEbicsRootElement.generateName(orderType));
 
-        response.build();
-        session.getConfiguration().getTraceManager().trace(response);
-        response.report();
-        state = new TransferState(response.getSegmentsNumber(), response.getTransactionId());
-        state.setSegmentNumber(response.getSegmentNumber());
-        joiner = new Joiner(session.getUser());
-        joiner.append(response.getOrderData());
-        while (state.hasNext()) {
-            int segmentNumber;
-
-            segmentNumber = state.next();
-            fetchFile(orderType,
-                    segmentNumber,
-                    state.isLastSegment(),
-                    state.getTransactionId(),
-                    joiner);
-        }
+                        response.build();
+                        session.getConfiguration().getTraceManager().trace(response);
+                        response.report();
+                        Metrics.recordSegment();
+                        break;
+                    } catch (EbicsException e) {
+                        if (!keysRefreshed && isBankKeyUpdateRequired(e)) {
+                            refreshBankKeys();
+                            keysRefreshed = true;
+                        } else {
+                            awaitRetry(e, attempt);
+                        }
+                    }
+                }
+                state = new TransferState(response.getSegmentsNumber(), response.getTransactionId());
+                state.setSegmentNumber(response.getSegmentNumber());
+                // every segment but the last one is full
+                joiner = new Joiner(session.getUser(),
+                        (long) (response.getSegmentsNumber() - 1)
+                                * Splitter.getMaxContentSize(session.getUser().getPartner().getBank().getSegmentSize()));
+                try {
+                    joiner.append(response.getOrderData());
+                    while (state.hasNext()) {
+                        int segmentNumber;
 
-        joiner.writeTo(output, response.getTransactionKey());
+                        segmentNumber = state.next();
+                        fetchFile(orderType,
+                                segmentNumber,
+                                state.isLastSegment(),
+                                state.getTransactionId(),
+                                joiner);
+                    }
 
-        receipt = new ReceiptRequestElement(session,
-                state.getTransactionId(),
-                DefaultEbicsRootElement.generateName(orderType));
-        receipt.build();
-        receipt.validate();
-        session.getConfiguration().getTraceManager().trace(receipt);
-        httpCode = sender.send(new ByteArrayContentFactory(receipt.prettyPrint()));
-        Utils.checkHttpCode(httpCode);
-        receiptResponse = new ReceiptResponseElement(sender.getResponseBody(),
-                DefaultEbicsRootElement.generateName(orderType));
-        receiptResponse.build();
-        session.getConfiguration().getTraceManager().trace(receiptResponse);
-        receiptResponse.report();
+                    joiner.writeTo(output, response.getTransactionKey());
+                } finally {
+                    joiner.dispose();
+                }
+
+                receipt = new ReceiptRequestElement(session,
+                        state.getTransactionId(),
+                        DefaultEbicsRootElement.generateName(orderType));
+                long buildStart = Metrics.start();
+                receipt.build();
+                Metrics.stop(Phase.BUILD, buildStart);
+                receipt.validate();
+                session.getConfiguration().getTraceManager().trace(receipt);
+                httpCode = sender.send(new ByteArrayContentFactory(receipt.prettyPrint()), RetryPolicy.Phase.RECEIPT);
+                Utils.checkHttpCode(httpCode);
+                receiptResponse = new ReceiptResponseElement(sender.getResponseBody(),
+                        DefaultEbicsRootElement.generateName(orderType));
+                receiptResponse.build();
+                session.getConfiguration().getTraceManager().trace(receiptResponse);
+                receiptResponse.report();
+            } catch (Throwable e) {
+                failure = e;
+                throw e;
+            } finally {
+                Events.commitTransaction(event, getHostId(), orderType.toString(),
+                        state == null ? null : state.getTransactionId(),
+                        state == null ? 0 : state.getNumSegments(), "download", failure);
+            }
+        }
     }
 
     /**
@@ -265,25 +746,69 @@ public class FileTransfer {
         HttpRequestSender sender;
         DownloadTransferResponseElement response;
         int httpCode;
+        Throwable failure;
+        Object event;
 
+        event = Events.beginSegment();
+        failure = null;
         sender = new HttpRequestSender(session);
-        downloader = new DownloadTransferRequestElement(session,
-                orderType,
-                segmentNumber,
-                lastSegment,
-                transactionId);
-        downloader.build();
-        downloader.validate();
-        session.getConfiguration().getTraceManager().trace(downloader);
-        httpCode = sender.send(new ByteArrayContentFactory(downloader.prettyPrint()));
-        Utils.checkHttpCode(httpCode);
-        response = new DownloadTransferResponseElement(sender.getResponseBody(),
-                orderType,
-                DefaultEbicsRootElement.generateName(orderType));
-        response.build();
-        session.getConfiguration().getTraceManager().trace(response);
-        response.report();
-        joiner.append(response.getOrderData());
+        try {
+            for (int attempt = 1; ; attempt++) {
+                downloader = new DownloadTransferRequestElement(session,
+                        orderType,
+                        segmentNumber,
+                        lastSegment,
+                        transactionId);
+                downloader.setTemplate(getTemplate(orderType, transactionId, false));
+                long start = Metrics.start();
+                downloader.build();
+                Metrics.stop(Phase.BUILD, start);
+                downloader.validate();
+                session.getConfiguration().getTraceManager().trace(downloader);
+                httpCode = sender.send(new ByteArrayContentFactory(downloader.prettyPrint()),
+                        RetryPolicy.Phase.TRANSFER);
+                Utils.checkHttpCode(httpCode);
+                response = new DownloadTransferResponseElement(sender.getResponseBody(),
+                        orderType,
+                        DefaultEbicsRootElement.generateName(orderType));
+                try {
+                    response.build();
+                } catch (EbicsException e) {
+                    awaitRetry(e, attempt);
+                    continue;
+                }
+                session.getConfiguration().getTraceManager().trace(response);
+                break;
+            }
+            response.report();
+            Metrics.recordSegment();
+            joiner.append(response.getOrderData());
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            Events.commitSegment(event, getHostId(), orderType.toString(), transactionId, segmentNumber,
+                    sender.getBytesReceived(), "download", failure);
+        }
+    }
+
+    /**
+     * Returns the segment request template of the given transaction.
+     * The template of the current transaction is kept so that its fixed
+     * parts are built once for all its segments.
+     *
+     * @param orderType     the order type
+     * @param transactionId the transaction ID
+     * @param upload        is it an upload transaction?
+     * @return the transaction request template
+     */
+    private synchronized TransferRequestTemplate getTemplate(OrderType orderType,
+                                                             byte[] transactionId,
+                                                             boolean upload) {
+        if (template == null || !template.matches(orderType, transactionId, upload)) {
+            template = new TransferRequestTemplate(session, orderType, transactionId, upload);
+        }
+        return template;
     }
 
     // --------------------------------------------------------------------
@@ -291,4 +816,12 @@ public class FileTransfer {
     // --------------------------------------------------------------------
 
     private EbicsSession session;
+    private RetryPolicy retryPolicy;
+    private TransferRequestTemplate template;
+    private final long preparedMaxAge;
+
+    /**
+     * Default maximum age of a prepared upload, in seconds.
+     */
+    private static final long DEFAULT_PREPARED_MAX_AGE = 120;
 }
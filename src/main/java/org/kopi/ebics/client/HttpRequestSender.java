@@ -19,8 +19,11 @@
 
 package org.kopi.ebics.client;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
@@ -36,11 +39,18 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.ProxyAuthenticationStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.kopi.ebics.interfaces.Configuration;
 import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.interfaces.EbicsBank;
 import org.kopi.ebics.io.ByteArrayContentFactory;
+import org.kopi.ebics.messages.Messages;
+import org.kopi.ebics.metrics.Events;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
 import org.kopi.ebics.session.EbicsSession;
+import org.kopi.ebics.utils.Constants;
 
 /**
  * A simple HTTP request sender and receiver. The send returns a HTTP code that
@@ -51,6 +61,8 @@ public class HttpRequestSender {
 
     private final EbicsSession session;
     private ContentFactory response;
+    private long bytesSent;
+    private long bytesReceived;
 
     /**
      * Constructs a new <code>HttpRequestSender</code> with a given ebics
@@ -66,17 +78,166 @@ public class HttpRequestSender {
     /**
      * Sends the request contained in the <code>ContentFactory</code>. The
      * <code>ContentFactory</code> will deliver the request as an
-     * <code>InputStream</code>.
+     * <code>InputStream</code>. The request is only sent again when it
+     * surely did not reach the bank.
      *
      * @param request
      *            the ebics request
      * @return the HTTP return code
      */
     public final int send(ContentFactory request) throws IOException {
+        return send(request, RetryPolicy.Phase.INITIALISATION);
+    }
+
+    /**
+     * Sends the request contained in the <code>ContentFactory</code>.
+     * Transient failures are retried with an exponential backoff as allowed
+     * by the retry policy for the transaction phase of the request. Requests
+     * to a bank whose circuit breaker is open fail at once.
+     *
+     * @param request
+     *            the ebics request
+     * @param phase
+     *            the transaction phase of the request
+     * @return the HTTP return code
+     */
+    public final int send(ContentFactory request, RetryPolicy.Phase phase) throws IOException {
+        Configuration conf = session.getConfiguration();
+        EbicsBank bank = session.getUser().getPartner().getBank();
+        CircuitBreaker breaker = getCircuitBreaker(conf, bank);
+        RetryPolicy policy = RetryPolicy.create(conf);
+
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.allowRequest()) {
+                throw new IOException(Messages.getString("http.circuit.open",
+                    Constants.APPLICATION_BUNDLE_NAME, bank.getHostId()));
+            }
+
+            int httpCode;
+            boolean failed = true;
+            try {
+                httpCode = execute(request, bank);
+                failed = httpCode >= 500;
+            } catch (IOException e) {
+                if (!policy.isRetryable(e, phase, attempt)) {
+                    throw e;
+                }
+                conf.getLogger().warn(Messages.getString("http.retry", Constants.APPLICATION_BUNDLE_NAME,
+                    bank.getHostId(), e.toString(), attempt, policy.getMaxAttempts()));
+                policy.await(attempt);
+                continue;
+            } finally {
+                if (failed) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+            }
+
+            if (!policy.isRetryable(httpCode, phase, attempt)) {
+                return httpCode;
+            }
+            conf.getLogger().warn(Messages.getString("http.retry", Constants.APPLICATION_BUNDLE_NAME,
+                bank.getHostId(), "HTTP " + httpCode, attempt, policy.getMaxAttempts()));
+            policy.await(attempt);
+        }
+    }
+
+    /**
+     * Sends a request once.
+     *
+     * @param request
+     *            the ebics request
+     * @param bank
+     *            the bank receiving the request
+     * @return the HTTP return code
+     */
+    private int execute(ContentFactory request, EbicsBank bank) throws IOException {
+        CloseableHttpClient httpClient = getHttpClient(session.getConfiguration());
+
+        CountingInputStream input = new CountingInputStream(request.getContent());
+        HttpPost method = new HttpPost(bank.getURL().toString());
+
+        HttpEntity requestEntity = EntityBuilder.create().setStream(input).build();
+        method.setEntity(requestEntity);
+        method.setHeader(HttpHeaders.CONTENT_TYPE, "text/xml; charset=ISO-8859-1");
+
+        long start = Metrics.start();
+        Object event = Events.beginHttpExchange();
+        int status = 0;
+        bytesReceived = 0;
+        try (CloseableHttpResponse response = httpClient.execute(method)) {
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            this.response = new ByteArrayContentFactory(body);
+            bytesReceived = body.length;
+            Metrics.recordBytes(input.getCount(), body.length);
+            status = response.getStatusLine().getStatusCode();
+            return status;
+        } finally {
+            bytesSent = input.getCount();
+            Metrics.stop(Phase.NETWORK, start);
+            Events.commitHttpExchange(event, bank.getURL().getHost(), status, bytesSent, bytesReceived);
+        }
+    }
+
+    /**
+     * Returns the content factory of the response body
+     *
+     * @return the content factory of the response.
+     */
+    public ContentFactory getResponseBody() {
+        return response;
+    }
+
+    /**
+     * Returns the number of bytes sent with the last request.
+     *
+     * @return the size of the last request
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the number of bytes received with the last response.
+     *
+     * @return the size of the last response
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the HTTP client shared by all the senders using the same proxy
+     * settings. The client keeps the connections to the bank servers alive in
+     * a pool so that consecutive and parallel requests do not pay a new TCP
+     * and TLS handshake each time.
+     *
+     * @param conf
+     *            the client configuration
+     * @return the shared HTTP client
+     */
+    private static CloseableHttpClient getHttpClient(Configuration conf) {
+        String proxyHost = conf.getProperty("http.proxy.host");
+        String key = proxyHost == null ? "" : proxyHost.trim() + ":"
+            + conf.getProperty("http.proxy.port") + ":" + conf.getProperty("http.proxy.user");
+        CloseableHttpClient httpClient = CLIENTS.get(key);
+        if (httpClient == null) {
+            synchronized (CLIENTS) {
+                httpClient = CLIENTS.get(key);
+                if (httpClient == null) {
+                    httpClient = createHttpClient(conf);
+                    CLIENTS.put(key, httpClient);
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    private static CloseableHttpClient createHttpClient(Configuration conf) {
         RequestConfig.Builder configBuilder = RequestConfig.copy(RequestConfig.DEFAULT).setSocketTimeout(
             300_000).setConnectTimeout(300_000);
 
-        Configuration conf = session.getConfiguration();
         String proxyHost = conf.getProperty("http.proxy.host");
         CredentialsProvider credsProvider = null;
 
@@ -94,34 +255,111 @@ public class HttpRequestSender {
                     new UsernamePasswordCredentials(user, pwd));
             }
         }
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(getIntProperty(conf, "http.pool.maxTotal", 100));
+        connectionManager.setDefaultMaxPerRoute(getIntProperty(conf, "http.pool.maxPerRoute", 20));
+
         HttpClientBuilder builder = HttpClientBuilder.create().setDefaultRequestConfig(
-            configBuilder.build());
+            configBuilder.build()).setConnectionManager(connectionManager);
         if (credsProvider != null) {
             builder.setDefaultCredentialsProvider(credsProvider);
             builder.setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
         }
-        CloseableHttpClient httpClient = builder.build();
+        return builder.build();
+    }
 
-        InputStream input = request.getContent();
-        HttpPost method = new HttpPost(session.getUser().getPartner().getBank().getURL().toString());
+    private static int getIntProperty(Configuration conf, String key, int defaultValue) {
+        String value = conf.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.trim());
+    }
 
-        HttpEntity requestEntity = EntityBuilder.create().setStream(input).build();
-        method.setEntity(requestEntity);
-        method.setHeader(HttpHeaders.CONTENT_TYPE, "text/xml; charset=ISO-8859-1");
+    /**
+     * Returns the circuit breaker guarding the requests to a bank. The
+     * breaker opens after <code>http.breaker.failures</code> consecutive
+     * failures for <code>http.breaker.openTime</code> milliseconds.
+     *
+     * @param conf
+     *            the client configuration
+     * @param bank
+     *            the bank
+     * @return the circuit breaker of the bank
+     */
+    private static CircuitBreaker getCircuitBreaker(Configuration conf, EbicsBank bank) {
+        String key = bank.getURL().toString();
+        CircuitBreaker breaker = BREAKERS.get(key);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(getIntProperty(conf, "http.breaker.failures", 5),
+                getIntProperty(conf, "http.breaker.openTime", 30_000));
+            CircuitBreaker previous = BREAKERS.putIfAbsent(key, breaker);
+            if (previous != null) {
+                breaker = previous;
+            }
+        }
+        return breaker;
+    }
 
-        try (CloseableHttpResponse response = httpClient.execute(method)) {
-            this.response = new ByteArrayContentFactory(
-                EntityUtils.toByteArray(response.getEntity()));
-            return response.getStatusLine().getStatusCode();
+    /**
+     * Closes the shared HTTP clients and their pooled connections. The next
+     * request opens new ones.
+     */
+    public static void closeConnections() {
+        synchronized (CLIENTS) {
+            for (CloseableHttpClient httpClient : CLIENTS.values()) {
+                try {
+                    httpClient.close();
+                } catch (IOException e) {
+                    // nothing to do, the connections are dropped anyway
+                }
+            }
+            CLIENTS.clear();
         }
     }
 
     /**
-     * Returns the content factory of the response body
-     *
-     * @return the content factory of the response.
+     * An input stream counting the bytes of the request actually sent.
      */
-    public ContentFactory getResponseBody() {
-        return response;
+    private static class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        private long count;
     }
+
+    private static final Map<String, CloseableHttpClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
 }
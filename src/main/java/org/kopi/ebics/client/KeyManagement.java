@@ -21,7 +21,6 @@ package org.kopi.ebics.client;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
@@ -31,7 +30,10 @@ import org.kopi.ebics.certificate.KeyStoreManager;
 import org.kopi.ebics.certificate.KeyUtil;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.interfaces.EbicsBank;
 import org.kopi.ebics.io.ByteArrayContentFactory;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
 import org.kopi.ebics.session.EbicsSession;
 import org.kopi.ebics.utils.Utils;
 import org.kopi.ebics.xml.HIARequestElement;
@@ -71,17 +73,34 @@ public class KeyManagement {
    * @throws IOException communication error
    */
   public void sendINI(String orderId) throws EbicsException, IOException {
+    Metrics.Scope			scope;
+
+    scope = Metrics.open(session.getBankID(), "INI");
+    try {
+      sendINIRequest(orderId);
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * Sends the INI request within the metrics scope of {@link #sendINI(String)}.
+   */
+  private void sendINIRequest(String orderId) throws EbicsException, IOException {
     INIRequestElement			request;
     KeyManagementResponseElement	response;
     HttpRequestSender			sender;
     int					httpCode;
+    long				start;
 
     sender = new HttpRequestSender(session);
     request = new INIRequestElement(session, orderId);
+    start = Metrics.start();
     request.build();
+    Metrics.stop(Phase.BUILD, start);
     request.validate();
     session.getConfiguration().getTraceManager().trace(request);
-    httpCode = sender.send(new ByteArrayContentFactory(request.prettyPrint()));
+    httpCode = sender.send(new ByteArrayContentFactory(request.prettyPrint()), RetryPolicy.Phase.KEY_MANAGEMENT);
     Utils.checkHttpCode(httpCode);
     response = new KeyManagementResponseElement(sender.getResponseBody(), "INIResponse");
     response.build();
@@ -96,17 +115,34 @@ public class KeyManagement {
    * @throws EbicsException server generated error message
    */
   public void sendHIA(String orderId) throws IOException, EbicsException {
+    Metrics.Scope			scope;
+
+    scope = Metrics.open(session.getBankID(), "HIA");
+    try {
+      sendHIARequest(orderId);
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * Sends the HIA request within the metrics scope of {@link #sendHIA(String)}.
+   */
+  private void sendHIARequest(String orderId) throws IOException, EbicsException {
     HIARequestElement			request;
     KeyManagementResponseElement	response;
     HttpRequestSender			sender;
     int					httpCode;
+    long				start;
 
     sender = new HttpRequestSender(session);
     request = new HIARequestElement(session, orderId);
+    start = Metrics.start();
     request.build();
+    Metrics.stop(Phase.BUILD, start);
     request.validate();
     session.getConfiguration().getTraceManager().trace(request);
-    httpCode = sender.send(new ByteArrayContentFactory(request.prettyPrint()));
+    httpCode = sender.send(new ByteArrayContentFactory(request.prettyPrint()), RetryPolicy.Phase.KEY_MANAGEMENT);
     Utils.checkHttpCode(httpCode);
     response = new KeyManagementResponseElement(sender.getResponseBody(), "HIAResponse");
     response.build();
@@ -123,6 +159,20 @@ public class KeyManagement {
    * @throws EbicsException server generated error message
    */
   public void sendHPB() throws IOException, GeneralSecurityException, EbicsException {
+    Metrics.Scope			scope;
+
+    scope = Metrics.open(session.getBankID(), "HPB");
+    try {
+      sendHPBRequest();
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * Sends the HPB request within the metrics scope of {@link #sendHPB()}.
+   */
+  private void sendHPBRequest() throws IOException, GeneralSecurityException, EbicsException {
     HPBRequestElement			request;
     KeyManagementResponseElement	response;
     HttpRequestSender			sender;
@@ -132,14 +182,18 @@ public class KeyManagement {
     String				path;
     RSAPublicKey			e002PubKey;
     RSAPublicKey			x002PubKey;
+    EbicsBank				bank;
     int					httpCode;
+    long				start;
 
     sender = new HttpRequestSender(session);
     request = new HPBRequestElement(session);
+    start = Metrics.start();
     request.build();
+    Metrics.stop(Phase.BUILD, start);
     request.validate();
     session.getConfiguration().getTraceManager().trace(request);
-    httpCode = sender.send(new ByteArrayContentFactory(request.prettyPrint()));
+    httpCode = sender.send(new ByteArrayContentFactory(request.prettyPrint()), RetryPolicy.Phase.KEY_MANAGEMENT);
     Utils.checkHttpCode(httpCode);
     response = new KeyManagementResponseElement(sender.getResponseBody(), "HBPResponse");
     response.build();
@@ -150,29 +204,48 @@ public class KeyManagement {
     orderData.build();
     session.getConfiguration().getTraceManager().trace(orderData);
     keystoreManager = new KeyStoreManager();
-    path = session.getConfiguration().getKeystoreDirectory(session.getUser().getUserId());
+    path = session.getConfiguration().getKeystoreDirectory(session.getUser().getUserId())
+      + File.separator + session.getBankID() + ".p12";
     keystoreManager.load("" , session.getUser().getPasswordCallback().getPassword());
+    bank = session.getUser().getPartner().getBank();
 
-    if (session.getUser().getPartner().getBank().useCertificate())
+    if (bank.useCertificate())
     {
         e002PubKey = keystoreManager.getPublicKey(new ByteArrayInputStream(orderData.getBankE002Certificate()));
         x002PubKey = keystoreManager.getPublicKey(new ByteArrayInputStream(orderData.getBankX002Certificate()));
-        session.getUser().getPartner().getBank().setBankKeys(e002PubKey, x002PubKey);
-        session.getUser().getPartner().getBank().setDigests(KeyUtil.getKeyDigest(e002PubKey), KeyUtil.getKeyDigest(x002PubKey));
         keystoreManager.setCertificateEntry(session.getBankID() + "-E002", new ByteArrayInputStream(orderData.getBankE002Certificate()));
         keystoreManager.setCertificateEntry(session.getBankID() + "-X002", new ByteArrayInputStream(orderData.getBankX002Certificate()));
-        keystoreManager.save(new FileOutputStream(path + File.separator + session.getBankID() + ".p12"));
     }
     else
     {
         e002PubKey = keystoreManager.getPublicKey(new BigInteger(orderData.getBankE002PublicKeyExponent()), new BigInteger(orderData.getBankE002PublicKeyModulus()));
         x002PubKey = keystoreManager.getPublicKey(new BigInteger(orderData.getBankX002PublicKeyExponent()), new BigInteger(orderData.getBankX002PublicKeyModulus()));
-        session.getUser().getPartner().getBank().setBankKeys(e002PubKey, x002PubKey);
-        session.getUser().getPartner().getBank().setDigests(KeyUtil.getKeyDigest(e002PubKey), KeyUtil.getKeyDigest(x002PubKey));
-        //keystoreManager.setCertificateEntry(session.getBankID() + "-E002", new ByteArrayInputStream(orderData.getBankE002Certificate()));
-        //keystoreManager.setCertificateEntry(session.getBankID() + "-X002", new ByteArrayInputStream(orderData.getBankX002Certificate()));
-        keystoreManager.save(new FileOutputStream(path + File.separator + session.getBankID() + ".p12"));
     }
+
+    if (sameKey(bank.getE002Key(), e002PubKey)
+        && sameKey(bank.getX002Key(), x002PubKey)
+        && new File(path).exists())
+    {
+      // the bank keys did not change since the last HPB
+      return;
+    }
+
+    bank.setBankKeys(e002PubKey, x002PubKey);
+    bank.setDigests(KeyUtil.getKeyDigest(e002PubKey), KeyUtil.getKeyDigest(x002PubKey));
+    keystoreManager.save(path);
+  }
+
+  /**
+   * Tells if two RSA public keys are the same.
+   * @param key the first key, may be null
+   * @param other the second key
+   * @return True if both keys have the same modulus and exponent
+   */
+  private static boolean sameKey(RSAPublicKey key, RSAPublicKey other) {
+    return key != null
+      && other != null
+      && key.getModulus().equals(other.getModulus())
+      && key.getPublicExponent().equals(other.getPublicExponent());
   }
 
   /**
@@ -182,17 +255,34 @@ public class KeyManagement {
    * @throws EbicsException Error message generated by the bank.
    */
   public void lockAccess() throws IOException, EbicsException {
+    Metrics.Scope			scope;
+
+    scope = Metrics.open(session.getBankID(), "SPR");
+    try {
+      sendSPRRequest();
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * Sends the SPR request within the metrics scope of {@link #lockAccess()}.
+   */
+  private void sendSPRRequest() throws IOException, EbicsException {
     HttpRequestSender			sender;
     SPRRequestElement			request;
     SPRResponseElement			response;
     int					httpCode;
+    long				start;
 
     sender = new HttpRequestSender(session);
     request = new SPRRequestElement(session);
+    start = Metrics.start();
     request.build();
+    Metrics.stop(Phase.BUILD, start);
     request.validate();
     session.getConfiguration().getTraceManager().trace(request);
-    httpCode = sender.send(new ByteArrayContentFactory(request.prettyPrint()));
+    httpCode = sender.send(new ByteArrayContentFactory(request.prettyPrint()), RetryPolicy.Phase.KEY_MANAGEMENT);
     Utils.checkHttpCode(httpCode);
     response = new SPRResponseElement(sender.getResponseBody());
     response.build();
@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.exception.NoDownloadDataAvailableException;
+import org.kopi.ebics.io.ManifestReader;
+import org.kopi.ebics.session.OrderType;
+import org.kopi.ebics.session.Product;
+import org.kopi.ebics.utils.NamedThreadFactory;
+
+
+/**
+ * Executes a manifest of uploads and downloads in one process.
+ *
+ * <p>The orders of a batch share the users loaded by the client, their
+ * decrypted keys and the pooled HTTP connections, so that only the first
+ * order of a user pays the loading costs. Orders are executed by a fixed
+ * number of threads and each order gets a result line, failed orders do
+ * not stop the batch.
+ *
+ * <p>Uploads are prepared apart from being sent: their order data is
+ * signed, compressed and encrypted on a fork-join pool using all the
+ * cores, and the prepared uploads are handed over to the order threads
+ * which only do the network exchanges. The number of uploads prepared
+ * ahead of the network is bounded, as each one holds its encrypted order
+ * data in a temporary file.
+ *
+ */
+public class OrderBatch {
+
+  /**
+   * The execution status of an order.
+   */
+  public enum Status {
+    OK,
+    NO_DATA,
+    FAILED
+  }
+
+  /**
+   * An order of the manifest.
+   */
+  public static class Order {
+
+    /**
+     * Constructs a new <code>Order</code>.
+     * @param userId the user ID, null for the default user
+     * @param orderType the order type
+     * @param file the file to upload or the file receiving the download
+     * @param start the download start date, may be null
+     * @param end the download end date, may be null
+     */
+    public Order(String userId, OrderType orderType, File file, Date start, Date end) {
+      this.userId = userId;
+      this.orderType = orderType;
+      this.file = file;
+      this.start = start;
+      this.end = end;
+    }
+
+    public String getUserId() {
+      return userId;
+    }
+
+    public OrderType getOrderType() {
+      return orderType;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    public Date getStart() {
+      return start;
+    }
+
+    public Date getEnd() {
+      return end;
+    }
+
+    /**
+     * Tells if the order uploads a file.
+     * @return True for an upload, false for a download
+     */
+    public boolean isUpload() {
+      return EbicsClient.SEND_FILE_ORDERS.contains(orderType);
+    }
+
+    private final String		userId;
+    private final OrderType		orderType;
+    private final File			file;
+    private final Date			start;
+    private final Date			end;
+  }
+
+  /**
+   * The execution result of an order.
+   */
+  public static class Result {
+
+    Result(Order order, Status status, long duration, String error) {
+      this.order = order;
+      this.status = status;
+      this.duration = duration;
+      this.error = error;
+    }
+
+    public Order getOrder() {
+      return order;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    /**
+     * Returns the order execution time in milliseconds.
+     * @return the execution time
+     */
+    public long getDuration() {
+      return duration;
+    }
+
+    /**
+     * Returns the error message if the order failed.
+     * @return the error message or null
+     */
+    public String getError() {
+      return error;
+    }
+
+    private final Order			order;
+    private final Status		status;
+    private final long			duration;
+    private final String		error;
+  }
+
+  /**
+   * Constructs a new <code>OrderBatch</code>.
+   * @param client the ebics client executing the orders
+   * @param product the application product
+   * @param threads the number of orders executed in parallel
+   */
+  public OrderBatch(EbicsClient client, Product product, int threads) {
+    this(client, product, threads, 0);
+  }
+
+  /**
+   * Constructs a new <code>OrderBatch</code> limiting the number of
+   * transactions open at the same time with each bank.
+   * @param client the ebics client executing the orders
+   * @param product the application product
+   * @param threads the number of orders executed in parallel
+   * @param bankTransactions the maximum number of orders executed in parallel
+   *                         with the same bank, zero for no limit
+   */
+  public OrderBatch(EbicsClient client, Product product, int threads, int bankTransactions) {
+    this.client = client;
+    this.product = product;
+    this.threads = Math.max(1, threads);
+    this.bankTransactions = bankTransactions;
+    bankPermits = new ConcurrentHashMap<String, Semaphore>();
+    prepareParallelism = Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Sets the number of uploads prepared in parallel. Zero prepares each
+   * upload in the order thread that sends it.
+   * @param prepareParallelism the upload preparation parallelism
+   */
+  public void setPrepareParallelism(int prepareParallelism) {
+    this.prepareParallelism = Math.max(0, prepareParallelism);
+  }
+
+  /**
+   * Reads the orders of a CSV manifest. The first line is a header
+   * naming the columns among <code>userId</code>, <code>orderType</code>,
+   * <code>file</code>, <code>start</code> and <code>end</code>. Only the
+   * order type and the file are required, an empty user ID stands for the
+   * default user and the dates use the <code>yyyy-MM-dd</code> format.
+   * Empty lines and lines starting with <code>#</code> are ignored.
+   * @param manifest the manifest file
+   * @return the orders
+   * @throws EbicsException the manifest cannot be read
+   */
+  public static List<Order> readManifest(File manifest) throws EbicsException {
+    List<Order>			orders;
+    SimpleDateFormat		format;
+
+    orders = new ArrayList<Order>();
+    format = new SimpleDateFormat("yyyy-MM-dd");
+    try (ManifestReader reader = new ManifestReader(manifest, "orderType", "file")) {
+      while (reader.next()) {
+        try {
+          OrderType		type;
+          String		start;
+          String		end;
+
+          type = OrderType.valueOf(reader.require("orderType").toUpperCase());
+          if (!EbicsClient.SEND_FILE_ORDERS.contains(type) && !EbicsClient.FETCH_FILE_ORDERS.contains(type)) {
+            throw new IllegalArgumentException("unsupported order type " + type);
+          }
+          start = reader.get("start");
+          end = reader.get("end");
+          if (start == null && end != null) {
+            throw new IllegalArgumentException("start date required if end date is given");
+          }
+          orders.add(new Order(reader.get("userId"),
+                               type,
+                               new File(reader.require("file")),
+                               start == null ? null : format.parse(start),
+                               start == null ? null : end == null ? new Date() : format.parse(end)));
+        } catch (ParseException | IllegalArgumentException e) {
+          throw reader.error(e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      throw new EbicsException(e.getMessage());
+    }
+
+    return orders;
+  }
+
+  /**
+   * Executes the given orders and waits until all of them are done.
+   * @param orders the orders
+   * @return the results in the order of the manifest
+   */
+  public List<Result> run(List<Order> orders) {
+    ExecutorService		executor;
+    ForkJoinPool		preparePool;
+    final Semaphore		prepared;
+    List<Future<Result>>	tasks;
+    List<Result>		results;
+    long			start;
+
+    executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("ebics-batch"));
+    preparePool = prepareParallelism == 0 ? null : new ForkJoinPool(prepareParallelism, pool -> {
+      ForkJoinWorkerThread	thread;
+
+      thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("ebics-batch-prepare-" + thread.getPoolIndex());
+      return thread;
+    }, null, false);
+    // uploads being prepared or waiting for an order thread
+    prepared = new Semaphore(prepareParallelism + threads);
+    tasks = new ArrayList<Future<Result>>();
+    results = new ArrayList<Result>();
+    start = System.currentTimeMillis();
+    try {
+      for (final Order order : orders) {
+        if (preparePool != null && order.isUpload()) {
+          final long		orderStart = System.currentTimeMillis();
+
+          prepared.acquireUninterruptibly();
+          tasks.add(prepare(order, preparePool)
+                    .handleAsync((upload, failure) -> execute(order, upload, failure, orderStart), executor)
+                    .whenComplete((result, failure) -> prepared.release()));
+        } else {
+          tasks.add(executor.submit(() -> execute(order)));
+        }
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+        try {
+          results.add(tasks.get(i).get());
+        } catch (ExecutionException e) {
+          results.add(new Result(orders.get(i), Status.FAILED, 0, String.valueOf(e.getCause())));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          results.add(new Result(orders.get(i), Status.FAILED, 0, "interrupted"));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      if (preparePool != null) {
+        preparePool.shutdownNow();
+      }
+    }
+
+    makespan = System.currentTimeMillis() - start;
+    return results;
+  }
+
+  /**
+   * Returns the time in milliseconds between the start of the last run and
+   * the end of its last order.
+   * @return the makespan of the last run
+   */
+  public long getMakespan() {
+    return makespan;
+  }
+
+  /**
+   * Executes a single order.
+   * @param order the order
+   * @return the order result
+   */
+  Result execute(Order order) {
+    return execute(order, null, null, System.currentTimeMillis());
+  }
+
+  /**
+   * Prepares the upload of an order on the given executor.
+   * @param order the upload order
+   * @param executor the preparation executor
+   * @return the prepared upload, completed exceptionally if the
+   *         preparation failed
+   */
+  private CompletableFuture<FileTransfer.PreparedUpload> prepare(final Order order, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return client.prepareFile(order.getFile(), getUser(order), product, order.getOrderType(), null);
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * Executes a single order, sending the given prepared upload.
+   * @param order the order
+   * @param upload the prepared upload, null if the order is not prepared
+   *               or its preparation failed
+   * @param failure the preparation failure, null if none
+   * @param start the order start time
+   * @return the order result
+   */
+  private Result execute(Order order, FileTransfer.PreparedUpload upload, Throwable failure, long start) {
+    if (failure != null) {
+      return failed(order, start, failure instanceof CompletionException && failure.getCause() != null
+                                  ? failure.getCause()
+                                  : failure);
+    }
+
+    try {
+      User		user;
+
+      user = getUser(order);
+      if (bankTransactions > 0) {
+        Semaphore	permits;
+
+        permits = bankPermits.computeIfAbsent(user.getPartner().getBank().getHostId(),
+                                              hostId -> new Semaphore(bankTransactions, true));
+        permits.acquire();
+        try {
+          transfer(order, user, upload);
+        } finally {
+          permits.release();
+        }
+      } else {
+        transfer(order, user, upload);
+      }
+      return new Result(order, Status.OK, System.currentTimeMillis() - start, null);
+    } catch (NoDownloadDataAvailableException e) {
+      return new Result(order, Status.NO_DATA, System.currentTimeMillis() - start, null);
+    } catch (Exception e) {
+      return failed(order, start, e);
+    } finally {
+      if (upload != null) {
+        upload.dispose();
+      }
+    }
+  }
+
+  /**
+   * Returns the result of a failed order.
+   * @param order the order
+   * @param start the order start time
+   * @param failure the order failure
+   * @return the order result
+   */
+  private static Result failed(Order order, long start, Throwable failure) {
+    return new Result(order,
+                      Status.FAILED,
+                      System.currentTimeMillis() - start,
+                      failure.getMessage() == null ? failure.getClass().getName() : failure.getMessage());
+  }
+
+  /**
+   * Returns the user of an order.
+   * @param order the order
+   * @return the order user
+   */
+  private User getUser(Order order) throws Exception {
+    return order.getUserId() == null ? client.getDefaultUser() : client.getUser(order.getUserId());
+  }
+
+  /**
+   * Uploads or downloads the file of an order.
+   * @param order the order
+   * @param user the user of the order
+   * @param upload the prepared upload, null if the order is not prepared
+   */
+  private void transfer(Order order, User user, FileTransfer.PreparedUpload upload)
+    throws IOException, EbicsException
+  {
+    if (upload != null) {
+      client.sendFile(upload);
+    } else if (order.isUpload()) {
+      client.sendFile(order.getFile(), user, product, order.getOrderType(), null);
+    } else {
+      if (order.getFile().exists()) {
+        throw new IOException("file already exists " + order.getFile());
+      }
+      try (FileChannel output = FileChannel.open(order.getFile().toPath(),
+                                                 StandardOpenOption.CREATE_NEW,
+                                                 StandardOpenOption.WRITE)) {
+        client.fetchFile(output, user, product, order.getOrderType(), false, order.getStart(), order.getEnd());
+      } catch (IOException | EbicsException e) {
+        order.getFile().delete();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Writes the results as CSV, one line per order.
+   * @param results the batch results
+   * @param file the result file
+   * @throws EbicsException the file cannot be written
+   */
+  public static void writeResults(List<Result> results, File file) throws EbicsException {
+    try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+                                                                     StandardCharsets.UTF_8))) {
+      writer.println("userId,orderType,file,status,duration,error");
+      for (Result result : results) {
+        writer.println((result.getOrder().getUserId() == null ? "" : result.getOrder().getUserId()) + ","
+                       + result.getOrder().getOrderType() + ","
+                       + result.getOrder().getFile() + ","
+                       + result.getStatus() + ","
+                       + result.getDuration() + ","
+                       + (result.getError() == null ? "" : result.getError().replace(',', ' ').replace('\n', ' ')));
+      }
+    } catch (IOException e) {
+      throw new EbicsException(e.getMessage());
+    }
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final EbicsClient			client;
+  private final Product				product;
+  private final int				threads;
+  private final int				bankTransactions;
+  private final Map<String, Semaphore>		bankPermits;
+  private int					prepareParallelism;
+  private volatile long				makespan;
+}
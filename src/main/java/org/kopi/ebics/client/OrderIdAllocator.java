@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import org.kopi.ebics.exception.EbicsException;
+
+
+/**
+ * A crash safe order ID allocator shared between processes.
+ *
+ * <p>The allocator keeps a monotonic sequence in a small counter file.
+ * Each process reserves a block of sequence numbers under an exclusive
+ * file lock and hands them out from memory. The counter file is forced
+ * to disk before any ID of the block is used, so an ID is never given
+ * out twice even if the process dies before {@link EbicsClient#quit()}.
+ * IDs of a block that were not used before a crash are simply skipped.
+ *
+ * <p>The sequence is mapped to the order ID range <b>A000</b> to <b>ZZZZ</b>
+ * the same way {@link Partner#nextOrderId()} cycles through it.
+ *
+ */
+public class OrderIdAllocator {
+
+  /**
+   * Constructs a new <code>OrderIdAllocator</code>.
+   * @param counterFile the shared counter file
+   * @param blockSize the number of IDs reserved at once
+   */
+  public OrderIdAllocator(File counterFile, int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("block size must be positive: " + blockSize);
+    }
+
+    this.counterFile = counterFile;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Returns the next order index. A new block is reserved from the
+   * counter file when the current one is exhausted.
+   * @param lastOrderId the last order index known by the caller. It is only
+   *                    used to seed a counter file that does not exist yet.
+   * @return the next order index
+   * @throws EbicsException the counter file cannot be updated
+   */
+  public synchronized int next(int lastOrderId) throws EbicsException {
+    if (nextSequence >= blockEnd) {
+      reserve(toSequence(lastOrderId) + 1);
+    }
+
+    return toOrderId(nextSequence++);
+  }
+
+  /**
+   * Reserves a new block of sequence numbers.
+   * @param seed the first sequence number if the counter file is empty
+   * @throws EbicsException the counter file cannot be updated
+   */
+  @SuppressWarnings("try")
+  private void reserve(long seed) throws EbicsException {
+    try (RandomAccessFile file = new RandomAccessFile(counterFile, "rw");
+         FileChannel channel = file.getChannel();
+         FileLock lock = channel.lock())
+    {
+      ByteBuffer		buffer;
+      long			start;
+
+      buffer = ByteBuffer.allocate(8);
+      if (channel.size() >= 8) {
+        channel.read(buffer, 0);
+        buffer.flip();
+        start = Math.max(buffer.getLong(), seed);
+      } else {
+        start = seed;
+      }
+
+      buffer.clear();
+      buffer.putLong(start + blockSize);
+      buffer.flip();
+      channel.write(buffer, 0);
+      channel.force(true);
+
+      nextSequence = start;
+      blockEnd = start + blockSize;
+    } catch (IOException e) {
+      EbicsException	error;
+
+      error = new EbicsException(e.getMessage());
+      error.initCause(e);
+      throw error;
+    }
+  }
+
+  /**
+   * Converts an order index to its sequence number.
+   * @param orderId the order index
+   * @return the sequence number
+   */
+  private static long toSequence(int orderId) {
+    return Math.max(orderId - MIN_ORDER_ID, 0);
+  }
+
+  /**
+   * Converts a sequence number to an order index in the range
+   * <b>A000</b> to <b>ZZZZ</b>.
+   * @param sequence the sequence number
+   * @return the order index
+   */
+  private static int toOrderId(long sequence) {
+    return (int) (MIN_ORDER_ID + sequence % (MAX_ORDER_ID - MIN_ORDER_ID + 1));
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final File			counterFile;
+  private final int			blockSize;
+  private long				nextSequence;
+  private long				blockEnd;
+
+  private static final int		MIN_ORDER_ID = 10*36*36*36;
+  private static final int		MAX_ORDER_ID = 36*36*36*36 - 1;
+}
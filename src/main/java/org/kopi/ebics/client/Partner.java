@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
+import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.EbicsBank;
 import org.kopi.ebics.interfaces.EbicsPartner;
 import org.kopi.ebics.interfaces.Savable;
@@ -78,6 +79,16 @@ public class Partner implements EbicsPartner, Savable {
     needSave = true;
   }
 
+  /**
+   * Sets the allocator used to reserve order IDs. When an allocator
+   * is set, order IDs are shared safely between all processes using
+   * the same counter file and survive crashes.
+   * @param allocator the order ID allocator, or null for in-memory IDs
+   */
+  public void setOrderIdAllocator(OrderIdAllocator allocator) {
+    this.allocator = allocator;
+  }
+
   @Override
   public void save(ObjectOutputStream oos) throws IOException {
     oos.writeUTF(partnerId);
@@ -115,16 +126,19 @@ public class Partner implements EbicsPartner, Savable {
    *<b>A000</b> to <b>ZZZZ</b>. The sequence cycle is performed infinitely.
    *
    *<p> The order index {@link Partner#orderId} is saved whenever it
-   * changes.
+   * changes. If an {@link OrderIdAllocator} is set, the index is taken
+   * from the allocator instead.
    */
   @Override
-  public String nextOrderId() {
-    char[]      chars = new char[4];
-
-    orderId += 1;
-    if (orderId > 36*36*36*36 - 1) {
-      // ensure that orderId starts with a letter
-      orderId = 10*36*36*36;
+  public synchronized String nextOrderId() throws EbicsException {
+    if (allocator != null) {
+      orderId = allocator.next(orderId);
+    } else {
+      orderId += 1;
+      if (orderId > 36*36*36*36 - 1) {
+        // ensure that orderId starts with a letter
+        orderId = 10*36*36*36;
+      }
     }
     needSave = true;
 
@@ -154,6 +168,14 @@ public class Partner implements EbicsPartner, Savable {
     return "partner-" + partnerId + ".cer";
   }
 
+  /**
+   * Returns the name of the shared order ID counter file.
+   * @return the order ID counter file name
+   */
+  public String getOrderIdCounterName() {
+    return "partner-" + partnerId + ".oid";
+  }
+
   // --------------------------------------------------------------------
   // DATA MEMBERS
   // --------------------------------------------------------------------
@@ -162,6 +184,7 @@ public class Partner implements EbicsPartner, Savable {
   private int				orderId = 10*36*36*36;
   private String			partnerId;
   private transient boolean		needSave;
+  private transient OrderIdAllocator	allocator;
 
   private static final String		ALPHA_NUM_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.interfaces.Configuration;
+import org.kopi.ebics.io.ManifestReader;
+import org.kopi.ebics.messages.Messages;
+import org.kopi.ebics.session.OrderType;
+import org.kopi.ebics.session.Product;
+import org.kopi.ebics.utils.Constants;
+import org.kopi.ebics.utils.NamedThreadFactory;
+
+
+/**
+ * Polls downloads of many subscribers at an adaptive interval.
+ *
+ * <p>The first polls are spread evenly over the base interval so that the
+ * subscribers do not hit the bank at the same time. Every subscriber and
+ * order type then keeps its own interval: it doubles each time the bank
+ * has no data available, up to the maximum interval, and halves each time
+ * data is received, down to the minimum interval. A random jitter is
+ * applied to every delay so that polls that started together drift apart.
+ *
+ * <p>Downloaded files are written to
+ * <code>output/userId/ORDERTYPE-yyyyMMdd-HHmmss-SSS.dat</code>.
+ *
+ */
+public class PollingScheduler {
+
+  /**
+   * A subscriber and order type to poll.
+   */
+  public static class Target {
+
+    /**
+     * Constructs a new <code>Target</code>.
+     * @param userId the user ID, null for the default user
+     * @param orderType the downloaded order type
+     */
+    public Target(String userId, OrderType orderType) {
+      this.userId = userId;
+      this.orderType = orderType;
+    }
+
+    public String getUserId() {
+      return userId;
+    }
+
+    public OrderType getOrderType() {
+      return orderType;
+    }
+
+    /**
+     * Returns the current poll interval in milliseconds.
+     * @return the poll interval
+     */
+    public long getInterval() {
+      return interval;
+    }
+
+    @Override
+    public String toString() {
+      return (userId == null ? "" : userId + "/") + orderType;
+    }
+
+    private final String		userId;
+    private final OrderType		orderType;
+    private volatile long		interval;
+  }
+
+  /**
+   * Constructs a new <code>PollingScheduler</code>.
+   * @param client the ebics client executing the downloads
+   * @param configuration the client configuration
+   * @param product the application product
+   * @param output the directory receiving the downloaded files
+   * @param threads the number of downloads executed in parallel
+   * @param interval the base poll interval in milliseconds
+   * @param minInterval the shortest poll interval in milliseconds
+   * @param maxInterval the longest poll interval in milliseconds
+   * @param jitter the random part of every delay, between 0 and 1
+   */
+  public PollingScheduler(EbicsClient client,
+                          Configuration configuration,
+                          Product product,
+                          File output,
+                          int threads,
+                          long interval,
+                          long minInterval,
+                          long maxInterval,
+                          double jitter)
+  {
+    this.batch = new OrderBatch(client, product, threads);
+    this.configuration = configuration;
+    this.output = output;
+    this.threads = Math.max(1, threads);
+    this.minInterval = Math.max(1, Math.min(minInterval, interval));
+    this.maxInterval = Math.max(maxInterval, interval);
+    this.interval = interval;
+    this.jitter = Math.max(0, Math.min(1, jitter));
+  }
+
+  /**
+   * Reads the targets of a CSV manifest. The first line is a header
+   * naming the <code>userId</code> and <code>orderType</code> columns. An
+   * empty user ID stands for the default user. Empty lines and lines
+   * starting with <code>#</code> are ignored.
+   * @param manifest the manifest file
+   * @return the targets
+   * @throws EbicsException the manifest cannot be read
+   */
+  public static List<Target> readManifest(File manifest) throws EbicsException {
+    List<Target>		targets;
+
+    targets = new ArrayList<Target>();
+    try (ManifestReader reader = new ManifestReader(manifest, "orderType")) {
+      while (reader.next()) {
+        try {
+          OrderType		type;
+
+          type = OrderType.valueOf(reader.require("orderType").toUpperCase());
+          if (!EbicsClient.FETCH_FILE_ORDERS.contains(type)) {
+            throw new IllegalArgumentException("unsupported order type " + type);
+          }
+          targets.add(new Target(reader.get("userId"), type));
+        } catch (IllegalArgumentException e) {
+          throw reader.error(e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      throw new EbicsException(e.getMessage());
+    }
+
+    return targets;
+  }
+
+  /**
+   * Starts polling the given targets. The first polls are spread over
+   * the base interval.
+   * @param targets the targets to poll
+   */
+  public synchronized void start(List<Target> targets) {
+    ScheduledThreadPoolExecutor	executor;
+
+    configuration.getLogger().info(Messages.getString("poll.start",
+                                                      Constants.APPLICATION_BUNDLE_NAME,
+                                                      targets.size()));
+    executor = new ScheduledThreadPoolExecutor(threads, new NamedThreadFactory("ebics-poll"));
+    // the polls not started yet are dropped when polling stops
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    scheduler = executor;
+    for (int i = 0; i < targets.size(); i++) {
+      Target		target = targets.get(i);
+
+      target.interval = interval;
+      schedule(target, interval * i / targets.size());
+    }
+  }
+
+  /**
+   * Stops polling. Running downloads are completed, the pending polls
+   * are cancelled.
+   */
+  public synchronized void stop() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      scheduler = null;
+    }
+  }
+
+  private void schedule(final Target target, long delay) {
+    ScheduledExecutorService	executor;
+
+    executor = scheduler;
+    if (executor != null && !executor.isShutdown()) {
+      executor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          poll(target);
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Polls a target once and schedules its next poll.
+   * @param target the target to poll
+   */
+  private void poll(Target target) {
+    OrderBatch.Result		result;
+    File			file;
+
+    file = new File(new File(output, target.getUserId() == null ? "default" : target.getUserId()),
+                    target.getOrderType() + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ".dat");
+    file.getParentFile().mkdirs();
+    result = batch.execute(new OrderBatch.Order(target.getUserId(), target.getOrderType(), file, null, null));
+    switch (result.getStatus()) {
+    case OK:
+      configuration.getLogger().info(Messages.getString("poll.received",
+                                                        Constants.APPLICATION_BUNDLE_NAME,
+                                                        file.getPath()));
+      target.interval = Math.max(minInterval, target.interval / 2);
+      break;
+    case NO_DATA:
+      target.interval = Math.min(maxInterval, target.interval * 2);
+      break;
+    default:
+      // keep the interval, the failure is reported and the next poll retries
+      configuration.getLogger().warn(Messages.getString("poll.error",
+                                                        Constants.APPLICATION_BUNDLE_NAME,
+                                                        target.toString())
+                                     + ": " + result.getError());
+    }
+
+    schedule(target, jitter(target.interval));
+  }
+
+  /**
+   * Returns the given delay shifted randomly by up to the jitter fraction.
+   * @param delay the delay in milliseconds
+   * @return the delay with jitter
+   */
+  private long jitter(long delay) {
+    double		shift;
+
+    shift = jitter == 0 ? 0 : ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+    return Math.max(0, Math.round(delay * (1 + shift)));
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final OrderBatch			batch;
+  private final Configuration			configuration;
+  private final File				output;
+  private final int				threads;
+  private final long				interval;
+  private final long				minInterval;
+  private final long				maxInterval;
+  private final double				jitter;
+  private ScheduledExecutorService		scheduler;
+}
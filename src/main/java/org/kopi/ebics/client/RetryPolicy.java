@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.kopi.ebics.exception.ReturnCode;
+import org.kopi.ebics.interfaces.Configuration;
+
+
+/**
+ * Tells which failed EBICS requests may be sent again and how long to wait
+ * before each attempt.
+ *
+ * <p>Whether a request may be sent again depends on the phase of the
+ * transaction it belongs to:
+ * <ul>
+ *   <li>the segments of the transfer phase may be sent again as often as
+ *       needed, the bank recovers the transaction on the segment number
+ *   <li>the other requests carry a nonce that the bank refuses to see
+ *       twice, they are only sent again when they surely did not reach the
+ *       bank: the connection could not be opened or the bank answered
+ *       that it is not available.
+ * </ul>
+ *
+ * <p>The delay doubles after each attempt from the base delay up to the
+ * maximum delay, and is spread by a random jitter so that parallel
+ * transfers do not retry all at once.
+ *
+ */
+public class RetryPolicy {
+
+  /**
+   * The phase of an EBICS transaction a request belongs to.
+   */
+  public enum Phase {
+    INITIALISATION(false),
+    TRANSFER(true),
+    RECEIPT(false),
+    /** The INI, HIA, HPB and SPR requests. */
+    KEY_MANAGEMENT(false);
+
+    Phase(boolean idempotent) {
+      this.idempotent = idempotent;
+    }
+
+    /**
+     * Tells if the requests of this phase can be sent again
+     * even when the bank may have processed them.
+     * @return True if the requests can be sent again.
+     */
+    public boolean isIdempotent() {
+      return idempotent;
+    }
+
+    private final boolean			idempotent;
+  }
+
+  /**
+   * Constructs a new <code>RetryPolicy</code>.
+   * @param maxAttempts the maximum number of attempts of a request
+   * @param baseDelay the delay before the second attempt in milliseconds
+   * @param maxDelay the maximum delay between two attempts in milliseconds
+   * @param jitter the random part of a delay, between 0 and 1
+   */
+  public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, double jitter) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+    this.jitter = jitter;
+  }
+
+  /**
+   * Creates the retry policy of a configuration from the
+   * <code>http.retry.*</code> properties.
+   * @param conf the client configuration
+   * @return the retry policy
+   */
+  public static RetryPolicy create(Configuration conf) {
+    return new RetryPolicy(Integer.parseInt(getProperty(conf, "http.retry.attempts", "3")),
+                           Long.parseLong(getProperty(conf, "http.retry.delay", "500")),
+                           Long.parseLong(getProperty(conf, "http.retry.maxDelay", "10000")),
+                           Double.parseDouble(getProperty(conf, "http.retry.jitter", "0.2")));
+  }
+
+  private static String getProperty(Configuration conf, String key, String defaultValue) {
+    String		value;
+
+    value = conf.getProperty(key);
+    return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+  }
+
+  /**
+   * Tells if a request that failed at the transport level may be sent again.
+   * @param e the transport error
+   * @param phase the transaction phase of the request
+   * @param attempt the number of attempts already made
+   * @return True if the request should be sent again.
+   */
+  public boolean isRetryable(IOException e, Phase phase, int attempt) {
+    if (attempt >= maxAttempts
+        || Thread.currentThread().isInterrupted()
+        || e instanceof UnknownHostException
+        || e instanceof SSLException)
+    {
+      return false;
+    }
+
+    if (e instanceof ConnectException
+        || e instanceof ConnectTimeoutException
+        || e instanceof NoRouteToHostException)
+    {
+      // the request did not reach the bank
+      return true;
+    }
+
+    return phase.isIdempotent();
+  }
+
+  /**
+   * Tells if a request answered with a given HTTP status may be sent again.
+   * @param httpCode the HTTP status code
+   * @param phase the transaction phase of the request
+   * @param attempt the number of attempts already made
+   * @return True if the request should be sent again.
+   */
+  public boolean isRetryable(int httpCode, Phase phase, int attempt) {
+    if (attempt >= maxAttempts) {
+      return false;
+    }
+
+    switch (httpCode) {
+    case 503: // the bank is not available
+    case 429: // too many requests
+      return true;
+    case 502:
+    case 504:
+      return phase.isIdempotent();
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Tells if a request answered with a given EBICS return code should be
+   * built and sent again.
+   * @param returnCode the EBICS return code
+   * @param attempt the number of attempts already made
+   * @return True if the request should be sent again.
+   */
+  public boolean isRetryable(ReturnCode returnCode, int attempt) {
+    return attempt < maxAttempts && ReturnCode.EBICS_INTERNAL_ERROR.equals(returnCode);
+  }
+
+  /**
+   * Returns the delay before a given attempt.
+   * @param attempt the number of attempts already made
+   * @return the delay in milliseconds
+   */
+  public long getDelay(int attempt) {
+    double		delay;
+
+    delay = Math.min(maxDelay, baseDelay * Math.pow(2, Math.max(0, attempt - 1)));
+    delay += delay * jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return Math.max(0, Math.round(delay));
+  }
+
+  /**
+   * Waits before a given attempt.
+   * @param attempt the number of attempts already made
+   * @throws InterruptedIOException the thread was interrupted
+   */
+  public void await(int attempt) throws InterruptedIOException {
+    try {
+      Thread.sleep(getDelay(attempt));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the maximum number of attempts of a request.
+   * @return the maximum number of attempts.
+   */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final int				maxAttempts;
+  private final long				baseDelay;
+  private final long				maxDelay;
+  private final double				jitter;
+}
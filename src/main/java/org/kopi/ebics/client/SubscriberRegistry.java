@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.interfaces.Configuration;
+import org.kopi.ebics.messages.Messages;
+import org.kopi.ebics.utils.Constants;
+
+
+/**
+ * A registry of the subscribers known in the serialization directory.
+ *
+ * <p>The registry only lists the serialized users and reads a small index
+ * of their host and partner IDs at startup. User files that are missing
+ * from the index are added to it with the default host and partner IDs,
+ * see {@link #setDefaultSubscriber(String, String)}. Users and their key
+ * stores are loaded on first use, outside the registry lock, and kept
+ * in a least recently used cache. Users that have not been used for the
+ * configured idle time, or that exceed the maximum cache size, are saved
+ * if needed and released together with their cached key store.
+ *
+ */
+public class SubscriberRegistry {
+
+  /**
+   * Loads a subscriber that is not cached yet.
+   */
+  public interface Loader {
+
+    /**
+     * Loads the user of the given subscriber.
+     * @param subscriber the subscriber
+     * @return the loaded user
+     */
+    public User load(Subscriber subscriber)
+      throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException;
+  }
+
+  /**
+   * The IDs identifying a subscriber at its bank.
+   */
+  public static class Subscriber {
+
+    public Subscriber(String hostId, String partnerId, String userId) {
+      this.hostId = hostId;
+      this.partnerId = partnerId;
+      this.userId = userId;
+    }
+
+    public String getHostId() {
+      return hostId;
+    }
+
+    public String getPartnerId() {
+      return partnerId;
+    }
+
+    public String getUserId() {
+      return userId;
+    }
+
+    private final String		hostId;
+    private final String		partnerId;
+    private final String		userId;
+  }
+
+  /**
+   * Constructs a new <code>SubscriberRegistry</code>.
+   * @param configuration the client configuration
+   * @param loader the user loader
+   * @param maxEntries the maximum number of cached users
+   * @param idleTimeout the time in milliseconds after which an unused user is evicted,
+   *                    zero to keep users until the cache is full
+   */
+  public SubscriberRegistry(Configuration configuration,
+                            Loader loader,
+                            int maxEntries,
+                            long idleTimeout)
+  {
+    this.configuration = configuration;
+    this.loader = loader;
+    this.maxEntries = maxEntries;
+    this.idleTimeout = idleTimeout;
+    subscribers = new LinkedHashMap<String, Subscriber>();
+    cache = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    loading = new LinkedHashMap<String, CompletableFuture<User>>();
+  }
+
+  /**
+   * Sets the host and partner IDs of the user files found in the
+   * serialization directory that are not in the index yet.
+   * @param hostId the default bank host ID, may be null
+   * @param partnerId the default partner ID, may be null
+   */
+  public synchronized void setDefaultSubscriber(String hostId, String partnerId) {
+    this.defaultHostId = hostId;
+    this.defaultPartnerId = partnerId;
+  }
+
+  /**
+   * Lists the users of the serialization directory and reads their
+   * host and partner IDs from the subscribers index.
+   * No user, partner, bank or key store is loaded.
+   * @throws EbicsException the index cannot be read or written
+   */
+  public synchronized void scan() throws EbicsException {
+    File		index;
+    File[]		files;
+    boolean		changed;
+
+    index = getIndexFile();
+    subscribers.clear();
+    if (index.exists()) {
+      Properties	properties;
+
+      properties = new Properties();
+      try (InputStream input = new FileInputStream(index)) {
+        properties.load(input);
+      } catch (IOException e) {
+        throw new EbicsException(e.getMessage());
+      }
+
+      for (String userId : properties.stringPropertyNames()) {
+        String[]	ids;
+
+        ids = properties.getProperty(userId).split(",");
+        if (ids.length == 2) {
+          subscribers.put(userId, new Subscriber(ids[0].trim(), ids[1].trim(), userId));
+        }
+      }
+    }
+
+    files = new File(configuration.getSerializationDirectory()).listFiles();
+    if (files == null) {
+      return;
+    }
+
+    changed = false;
+    for (File file : files) {
+      String		userId;
+
+      userId = getUserId(file.getName());
+      if (userId != null && !subscribers.containsKey(userId)) {
+        Subscriber	subscriber;
+
+        subscriber = resolve(userId, files);
+        if (subscriber == null) {
+          configuration.getLogger().warn(Messages.getString("registry.unresolved",
+                                                            Constants.APPLICATION_BUNDLE_NAME,
+                                                            file.getName()));
+        } else {
+          subscribers.put(userId, subscriber);
+          changed = true;
+        }
+      }
+    }
+
+    if (changed) {
+      writeIndex();
+    }
+  }
+
+  /**
+   * Adds a subscriber to the registry and persists the index.
+   * @param hostId the bank host ID
+   * @param partnerId the partner ID
+   * @param userId the user ID
+   * @throws EbicsException the index cannot be written
+   */
+  public synchronized void register(String hostId, String partnerId, String userId)
+    throws EbicsException
+  {
+    Subscriber		previous;
+
+    previous = subscribers.put(userId, new Subscriber(hostId, partnerId, userId));
+    if (previous == null
+        || !previous.getHostId().equals(hostId)
+        || !previous.getPartnerId().equals(partnerId))
+    {
+      writeIndex();
+    }
+  }
+
+  /**
+   * Returns the known subscribers.
+   * @return the known subscribers
+   */
+  public synchronized Collection<Subscriber> getSubscribers() {
+    return Collections.unmodifiableCollection(new ArrayList<Subscriber>(subscribers.values()));
+  }
+
+  /**
+   * Returns the subscriber with the given user ID.
+   * @param userId the user ID
+   * @return the subscriber or null if it is unknown
+   */
+  public synchronized Subscriber getSubscriber(String userId) {
+    return subscribers.get(userId);
+  }
+
+  /**
+   * Returns the user with the given ID, loading it and its keys on first use.
+   * The user is loaded without holding the registry lock; concurrent
+   * callers asking for the same user wait for the same load.
+   * @param userId the user ID
+   * @return the user
+   */
+  public User getUser(String userId)
+    throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException
+  {
+    Subscriber			subscriber;
+    CompletableFuture<User>	future;
+    User			user;
+
+    synchronized (this) {
+      Entry		entry;
+
+      evictIdle();
+      entry = cache.get(userId);
+      if (entry != null) {
+        entry.lastAccess = System.currentTimeMillis();
+        return entry.user;
+      }
+
+      future = loading.get(userId);
+      if (future != null) {
+        subscriber = null;
+      } else {
+        subscriber = subscribers.get(userId);
+        if (subscriber == null) {
+          throw new EbicsException("Unknown subscriber " + userId);
+        }
+        future = new CompletableFuture<User>();
+        loading.put(userId, future);
+      }
+    }
+
+    if (subscriber == null) {
+      return await(future);
+    }
+
+    try {
+      user = loader.load(subscriber);
+    } catch (IOException | GeneralSecurityException | ClassNotFoundException | EbicsException | RuntimeException e) {
+      synchronized (this) {
+        loading.remove(userId);
+      }
+      future.completeExceptionally(e);
+      throw e;
+    }
+
+    synchronized (this) {
+      Entry		entry;
+
+      loading.remove(userId);
+      entry = new Entry(user);
+      entry.lastAccess = System.currentTimeMillis();
+      cache.put(userId, entry);
+      evictOverflow();
+    }
+    future.complete(user);
+    return user;
+  }
+
+  /**
+   * Adds an already loaded user to the cache.
+   * @param user the user
+   */
+  public synchronized void put(User user) {
+    Entry		entry;
+
+    entry = new Entry(user);
+    entry.lastAccess = System.currentTimeMillis();
+    cache.put(user.getUserId(), entry);
+    evictOverflow();
+  }
+
+  /**
+   * Tells if the given user is currently cached.
+   * @param userId the user ID
+   * @return True if the user and its keys are in memory
+   */
+  public synchronized boolean isLoaded(String userId) {
+    return cache.containsKey(userId);
+  }
+
+  /**
+   * Saves all cached users that changed since they were loaded.
+   * @throws EbicsException a user cannot be saved
+   */
+  public synchronized void flush() throws EbicsException {
+    for (Entry entry : cache.values()) {
+      save(entry.user);
+    }
+  }
+
+  /**
+   * Saves and releases all cached users.
+   * @throws EbicsException a user cannot be saved
+   */
+  public synchronized void clear() throws EbicsException {
+    flush();
+    for (Entry entry : cache.values()) {
+      release(entry.user);
+    }
+    cache.clear();
+  }
+
+  /**
+   * Waits for a user loaded by another thread.
+   * @param future the pending load
+   * @return the loaded user
+   */
+  private static User await(CompletableFuture<User> future)
+    throws IOException, GeneralSecurityException, ClassNotFoundException, EbicsException
+  {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new EbicsException(e.getMessage());
+    } catch (ExecutionException e) {
+      Throwable		cause;
+
+      cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof GeneralSecurityException) {
+        throw (GeneralSecurityException) cause;
+      } else if (cause instanceof ClassNotFoundException) {
+        throw (ClassNotFoundException) cause;
+      } else if (cause instanceof EbicsException) {
+        throw (EbicsException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new EbicsException(cause.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the user ID of a serialized user file name.
+   * @param name the file name
+   * @return the user ID or null if the file is not a user file
+   */
+  private static String getUserId(String name) {
+    if (name.startsWith(USER_FILE_PREFIX)
+        && name.endsWith(FILE_SUFFIX)
+        && name.length() > USER_FILE_PREFIX.length() + FILE_SUFFIX.length())
+    {
+      return name.substring(USER_FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length());
+    }
+
+    return null;
+  }
+
+  /**
+   * Finds the host and partner IDs of a user file that is not indexed.
+   * The default IDs are used if they are set. Otherwise the user is
+   * resolved only if the directory holds a single bank and a single partner.
+   * @param userId the user ID
+   * @param files the files of the serialization directory
+   * @return the subscriber or null if it cannot be resolved
+   */
+  private Subscriber resolve(String userId, File[] files) {
+    String		hostId;
+    String		partnerId;
+
+    hostId = defaultHostId;
+    partnerId = defaultPartnerId;
+    for (File file : files) {
+      String		name;
+
+      name = file.getName();
+      if (!name.endsWith(FILE_SUFFIX) || name.startsWith(USER_FILE_PREFIX)) {
+        continue;
+      }
+
+      name = name.substring(0, name.length() - FILE_SUFFIX.length());
+      if (name.startsWith(PARTNER_FILE_PREFIX)) {
+        if (defaultPartnerId == null) {
+          partnerId = partnerId == null ? name.substring(PARTNER_FILE_PREFIX.length()) : "";
+        }
+      } else if (defaultHostId == null) {
+        hostId = hostId == null ? name : "";
+      }
+    }
+
+    if (hostId == null || hostId.isEmpty() || partnerId == null || partnerId.isEmpty()) {
+      return null;
+    }
+
+    return new Subscriber(hostId, partnerId, userId);
+  }
+
+  /**
+   * Evicts the users that were not used during the idle timeout.
+   */
+  private void evictIdle() throws EbicsException {
+    Iterator<Entry>	iter;
+    long		now;
+
+    if (idleTimeout <= 0) {
+      return;
+    }
+
+    now = System.currentTimeMillis();
+    iter = cache.values().iterator();
+    while (iter.hasNext()) {
+      Entry		entry;
+
+      entry = iter.next();
+      if (now - entry.lastAccess > idleTimeout) {
+        save(entry.user);
+        release(entry.user);
+        iter.remove();
+      }
+    }
+  }
+
+  /**
+   * Evicts the least recently used users while the cache is too big.
+   */
+  private void evictOverflow() {
+    Iterator<Entry>	iter;
+
+    iter = cache.values().iterator();
+    while (maxEntries > 0 && cache.size() > maxEntries && iter.hasNext()) {
+      Entry		entry;
+
+      entry = iter.next();
+      try {
+        save(entry.user);
+      } catch (EbicsException e) {
+        configuration.getLogger().error(e.getMessage(), e);
+      }
+      release(entry.user);
+      iter.remove();
+    }
+  }
+
+  /**
+   * Saves the given user if needed.
+   * @param user the user
+   */
+  private void save(User user) throws EbicsException {
+    if (user.needsSave()) {
+      configuration.getSerializationManager().serialize(user);
+    }
+  }
+
+  /**
+   * Drops the cached key store of an evicted user.
+   * @param user the user
+   */
+  private static void release(User user) {
+    if (user != null) {
+      user.release();
+    }
+  }
+
+  /**
+   * Writes the subscribers index.
+   */
+  private void writeIndex() throws EbicsException {
+    Properties		properties;
+
+    properties = new Properties();
+    for (Subscriber subscriber : subscribers.values()) {
+      properties.setProperty(subscriber.getUserId(),
+                             subscriber.getHostId() + "," + subscriber.getPartnerId());
+    }
+
+    try (OutputStream output = new FileOutputStream(getIndexFile())) {
+      properties.store(output, "EBICS subscribers");
+    } catch (IOException e) {
+      throw new EbicsException(e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the subscribers index file.
+   * @return the subscribers index file
+   */
+  private File getIndexFile() {
+    return new File(configuration.getSerializationDirectory(), INDEX_FILE_NAME);
+  }
+
+  /**
+   * A cached user and the time it was last used.
+   */
+  private static class Entry {
+
+    Entry(User user) {
+      this.user = user;
+    }
+
+    final User				user;
+    long				lastAccess;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final Configuration			configuration;
+  private final Loader				loader;
+  private final int				maxEntries;
+  private final long				idleTimeout;
+  private final Map<String, Subscriber>		subscribers;
+  private final LinkedHashMap<String, Entry>	cache;
+  private final Map<String, CompletableFuture<User>> loading;
+  private String				defaultHostId;
+  private String				defaultPartnerId;
+
+  private static final String			INDEX_FILE_NAME = "subscribers.properties";
+  private static final String			USER_FILE_PREFIX = "user-";
+  private static final String			PARTNER_FILE_PREFIX = "partner-";
+  private static final String			FILE_SUFFIX = ".cer";
+}
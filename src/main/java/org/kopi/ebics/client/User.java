@@ -21,6 +21,7 @@ package org.kopi.ebics.client;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.security.GeneralSecurityException;
@@ -177,6 +178,16 @@ public class User implements EbicsUser, Savable {
     manager.load(keyStorePath, passwordCallback);
   }
 
+  /**
+   * Releases the cached key store of the user. It is read and
+   * decrypted again the next time the user is loaded.
+   */
+  public void release() {
+    if (manager != null) {
+      manager.release();
+    }
+  }
+
   @Override
   public void save(ObjectOutputStream oos) throws IOException {
     oos.writeUTF(userId);
@@ -516,6 +527,30 @@ public class User implements EbicsUser, Savable {
     return signature.sign();
   }
 
+  @Override
+  public byte[] sign(InputStream content) throws IOException, GeneralSecurityException {
+    Signature			signature;
+    byte[]			buffer;
+    int				read;
+
+    signature = Signature.getInstance("SHA256WithRSA", BouncyCastleProvider.PROVIDER_NAME);
+    signature.initSign(a005PrivateKey);
+    buffer = new byte[64 * 1024];
+    while ((read = content.read(buffer)) != -1) {
+      int			length;
+
+      // same filtering as removeOSSpecificChars, in place
+      length = 0;
+      for (int i = 0; i < read; i++) {
+        if (buffer[i] != '\r' && buffer[i] != '\n' && buffer[i] != 0x1A) {
+          buffer[length++] = buffer[i];
+        }
+      }
+      signature.update(buffer, 0, length);
+    }
+    return signature.sign();
+  }
+
   /**
    * EBICS IG CFONB VF 2.1.4 2012 02 24 - 2.1.3.2 Calcul de la signature:
    *
@@ -532,6 +567,13 @@ public class User implements EbicsUser, Savable {
   @Override
   public byte[] decrypt(byte[] encryptedData, byte[] transactionKey)
     throws EbicsException, GeneralSecurityException, IOException
+  {
+    return decryptData(encryptedData, decryptTransactionKey(transactionKey));
+  }
+
+  @Override
+  public byte[] decryptTransactionKey(byte[] transactionKey)
+    throws GeneralSecurityException, IOException
   {
     Cipher			cipher;
     int				blockSize;
@@ -545,7 +587,7 @@ public class User implements EbicsUser, Savable {
       outputStream.write(cipher.doFinal(transactionKey, j * blockSize, blockSize));
     }
 
-    return decryptData(encryptedData, outputStream.toByteArray());
+    return outputStream.toByteArray();
   }
 
   /**
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.client;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.schema.h003.EbicsRequestDocument;
+import org.kopi.ebics.schema.h003.EbicsRequestDocument.EbicsRequest;
+import org.kopi.ebics.utils.NamedThreadFactory;
+import org.kopi.ebics.utils.Utils;
+import org.kopi.ebics.xml.DefaultEbicsRootElement;
+import org.kopi.ebics.xml.EbicsXmlFactory;
+import org.kopi.ebics.xml.Schemas;
+import org.kopi.ebics.xml.SignedInfo;
+
+
+/**
+ * Startup warm-up of the client subsystems.
+ *
+ * <p>The first request of a client process pays for the initialization of
+ * the XML security library, the registration of the BouncyCastle provider,
+ * the loading of the XmlBeans type systems of the EBICS schemas and of the
+ * JDOM, Xalan and XPath classes. The warm-up touches all of them once by
+ * building, canonizing, signing and printing a throwaway transfer request.
+ *
+ * <p>Run as a program, the warm-up is the training run of the class data
+ * sharing archive built by the <code>cds</code> profile: the classes it
+ * loads are dumped in the archive and mapped by the next processes instead
+ * of being loaded and verified again.
+ *
+ */
+public final class WarmUp {
+
+  private WarmUp() {}
+
+  /**
+   * Initializes the XML security library and registers the BouncyCastle
+   * provider, unless already done.
+   */
+  public static void initSecurity() {
+    if (!org.apache.xml.security.Init.isInitialized()) {
+      org.apache.xml.security.Init.init();
+    }
+    if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+  }
+
+  /**
+   * Loads the XmlBeans type systems of the EBICS schemas.
+   * @return the number of schema types loaded
+   */
+  public static int loadSchemas() {
+    return Schemas.warmUp();
+  }
+
+  /**
+   * Builds, canonizes, signs, validates and prints a transfer request with
+   * a throwaway key, the way the first request of a session is.
+   * @return the printed request
+   * @throws EbicsException
+   */
+  public static byte[] buildRequest() throws EbicsException {
+    DefaultEbicsRootElement	request;
+    SignedInfo			signedInfo;
+    EbicsRequest		ebicsRequest;
+    KeyPair			keyPair;
+    MessageDigest		digest;
+    Signature			signature;
+
+    try {
+      keyPair = generateKeyPair();
+      request = new WarmUpRequestElement();
+      request.build();
+      request.addNamespaceDecl("ds", "http://www.w3.org/2000/09/xmldsig#");
+      digest = MessageDigest.getInstance("SHA-256", BouncyCastleProvider.PROVIDER_NAME);
+      signedInfo = new SignedInfo(null, digest.digest(Utils.canonize(request.toByteArray())));
+      signedInfo.build();
+      ebicsRequest = ((WarmUpRequestElement)request).getEbicsRequest();
+      ebicsRequest.setAuthSignature(signedInfo.getSignatureType());
+      signature = Signature.getInstance("SHA256WithRSA", BouncyCastleProvider.PROVIDER_NAME);
+      signature.initSign(keyPair.getPrivate());
+      signature.update(signedInfo.canonize(request.toByteArray()));
+      ebicsRequest.getAuthSignature().setSignatureValue(EbicsXmlFactory.createSignatureValueType(signature.sign()));
+      request.validate();
+      encrypt(keyPair);
+
+      return request.prettyPrint();
+    } catch (GeneralSecurityException e) {
+      throw new EbicsException(e.getMessage());
+    }
+  }
+
+  /**
+   * Loads the HTTP client classes and the default SSL context.
+   * @throws IOException
+   */
+  public static void initHttpClient() throws IOException {
+    CloseableHttpClient		client;
+
+    // nothing to send, creating the client is enough
+    client = HttpClients.createSystem();
+    client.close();
+  }
+
+  /**
+   * Runs all warm-up steps.
+   * @throws EbicsException
+   * @throws IOException
+   */
+  public static void run() throws EbicsException, IOException {
+    initSecurity();
+    loadSchemas();
+    buildRequest();
+    initHttpClient();
+  }
+
+  /**
+   * Runs the warm-up in a background daemon thread, so that it overlaps
+   * with the loading of the configuration and of the user key stores.
+   * A failed warm-up is ignored: the request then pays for the
+   * initialization itself.
+   * @return the warm-up thread
+   */
+  public static Thread start() {
+    Thread			thread;
+
+    thread = new NamedThreadFactory("ebics-warmup").newThread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          WarmUp.run();
+        } catch (Exception e) {
+          // the first request initializes what is missing
+        }
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Generates the throwaway key pair. The key size does not matter for
+   * the classes being loaded, the smallest one is the fastest to generate.
+   * @return the key pair
+   * @throws GeneralSecurityException
+   */
+  private static KeyPair generateKeyPair() throws GeneralSecurityException {
+    KeyPairGenerator		generator;
+
+    generator = KeyPairGenerator.getInstance("RSA", BouncyCastleProvider.PROVIDER_NAME);
+    generator.initialize(512);
+    return generator.generateKeyPair();
+  }
+
+  /**
+   * Runs the order data encryption and compression with the given key.
+   * @param keyPair the throwaway key pair
+   * @throws GeneralSecurityException
+   * @throws EbicsException
+   */
+  private static void encrypt(KeyPair keyPair) throws GeneralSecurityException, EbicsException {
+    SecretKeySpec		keySpec;
+    Cipher			cipher;
+
+    keySpec = new SecretKeySpec(new byte[16], "EAS");
+    Utils.unzip(Utils.decrypt(Utils.encrypt(Utils.zip(new byte[16]), keySpec), keySpec));
+    cipher = Cipher.getInstance("RSA/NONE/PKCS1Padding", BouncyCastleProvider.PROVIDER_NAME);
+    cipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+    cipher.doFinal(keySpec.getEncoded());
+  }
+
+  /**
+   * Runs the warm-up, as the training run of the class data sharing
+   * archive.
+   * @param args not used
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    run();
+  }
+
+  /**
+   * A download transfer request of a fictitious bank.
+   */
+  private static class WarmUpRequestElement extends DefaultEbicsRootElement {
+
+    @Override
+    public void build() throws EbicsException {
+      EbicsRequest		request;
+
+      request = EbicsXmlFactory.createEbicsRequest(1,
+                                                   "H003",
+                                                   EbicsXmlFactory.createEbicsRequestHeader(true,
+                                                     EbicsXmlFactory.createMutableHeaderType("Transfer",
+                                                       EbicsXmlFactory.createSegmentNumber(2, false)),
+                                                     EbicsXmlFactory.createStaticHeaderType("WARMUP", new byte[16])),
+                                                   EbicsXmlFactory.createEbicsRequestBody());
+      document = EbicsXmlFactory.createEbicsRequestDocument(request);
+    }
+
+    /**
+     * Returns the built request.
+     * @return the request
+     */
+    EbicsRequest getEbicsRequest() {
+      return ((EbicsRequestDocument)document).getEbicsRequest();
+    }
+
+    @Override
+    public byte[] toByteArray() {
+      setSaveSuggestedPrefixes("http://www.ebics.org/H003", "");
+
+      return super.toByteArray();
+    }
+
+    @Override
+    public String getName() {
+      return "WarmUp.xml";
+    }
+
+    private static final long 		serialVersionUID = 2981651306283374902L;
+  }
+}
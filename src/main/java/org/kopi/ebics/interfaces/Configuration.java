@@ -203,4 +203,23 @@ public interface Configuration {
    * @return the version of the EBICS protocol.
    */
   public String getVersion();
+
+  /**
+   * Returns the number of order IDs a process reserves at once
+   * from the shared order ID counter of a partner.
+   * @return the order ID block size.
+   */
+  public default int getOrderIdBlockSize() {
+    return 16;
+  }
+
+  /**
+   * Tells if the bank public keys should be fetched again automatically
+   * with a HPB request when the bank answers that they changed. The
+   * rejected order is then retried once with the new keys.
+   * @return True if the bank keys are refreshed automatically.
+   */
+  public default boolean isBankKeyRefreshEnabled() {
+    return true;
+  }
 }
@@ -23,6 +23,8 @@ import java.io.Serializable;
 import java.net.URL;
 import java.security.interfaces.RSAPublicKey;
 
+import org.kopi.ebics.exception.EbicsException;
+
 /**
  * Details about EBICS communication with a given bank.
  *
@@ -61,6 +63,22 @@ public interface EbicsBank extends Serializable {
    */
   public byte[] getX002Digest();
 
+  /**
+   * Returns the decoded value of the encryption key digest, as it
+   * is sent in the requests. The value is computed once per digest.
+   * @return the decoded encryption key digest, or null if no HPB was performed.
+   * @throws EbicsException the digest is not a valid hexadecimal value.
+   */
+  public byte[] getE002DigestValue() throws EbicsException;
+
+  /**
+   * Returns the decoded value of the authentication key digest, as it
+   * is sent in the requests. The value is computed once per digest.
+   * @return the decoded authentication key digest, or null if no HPB was performed.
+   * @throws EbicsException the digest is not a valid hexadecimal value.
+   */
+  public byte[] getX002DigestValue() throws EbicsException;
+
   /**
    * Returns the banks encryption key.
    * @return the banks encryption key.
@@ -101,4 +119,18 @@ public interface EbicsBank extends Serializable {
    * @param x002Digest authentication digest
    */
   public void setDigests(byte[] e002Digest, byte[] x002Digest);
+
+  /**
+   * Returns the maximum base64 coded size of an order data segment
+   * agreed with the bank. This is 1 MB = 1,048,576 bytes unless the
+   * bank accepts larger segments.
+   * @return the maximum segment size.
+   */
+  public int getSegmentSize();
+
+  /**
+   * Sets the maximum base64 coded size of an order data segment.
+   * @param segmentSize the maximum segment size, 0 for the default one.
+   */
+  public void setSegmentSize(int segmentSize);
 }
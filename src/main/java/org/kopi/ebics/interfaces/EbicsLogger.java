@@ -19,6 +19,8 @@
 
 package org.kopi.ebics.interfaces;
 
+import java.util.function.Supplier;
+
 import org.kopi.ebics.exception.ReturnCode;
 
 /**
@@ -42,12 +44,38 @@ public interface EbicsLogger {
    */
   public void info(String message);
 
+  /**
+   * Informs a message built only if the info level is enabled.
+   * @param message the message supplier.
+   */
+  public default void info(Supplier<String> message) {
+    if (isInfoEnabled()) {
+      info(message.get());
+    }
+  }
+
+  /**
+   * Tells if the informative messages are logged.
+   * @return True if the info level is enabled.
+   */
+  public default boolean isInfoEnabled() {
+    return true;
+  }
+
   /**
    * Warns a given message to the client application user.
    * @param message the given message.
    */
   public void warn(String message);
 
+  /**
+   * Warns a message built only if the warn level is enabled.
+   * @param message the message supplier.
+   */
+  public default void warn(Supplier<String> message) {
+    warn(message.get());
+  }
+
   /**
    * Warns a given message and its causes to the client application user.
    * @param message the given message.
@@ -19,6 +19,8 @@
 
 package org.kopi.ebics.interfaces;
 
+import org.kopi.ebics.exception.EbicsException;
+
 /**
  * Information about an EBICS customer.
  *
@@ -42,8 +44,9 @@ public interface EbicsPartner {
   /**
    * Creates the next order number.
    * @return the next order number.
+   * @throws EbicsException the order number cannot be reserved
    */
-  public String nextOrderId();
+  public String nextOrderId() throws EbicsException;
 
   /**
    * Returns the last order number.
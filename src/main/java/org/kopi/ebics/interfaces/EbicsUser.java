@@ -20,6 +20,7 @@
 package org.kopi.ebics.interfaces;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
@@ -164,6 +165,26 @@ public interface EbicsUser {
    */
   public byte[] sign(byte[] digest) throws IOException, GeneralSecurityException;
 
+  /**
+   * Signs the content of the given stream with the private A005 key.
+   * The content is read piece by piece and never held in memory.
+   * @param content the content to sign
+   * @return the signature
+   * @throws IOException
+   * @throws GeneralSecurityException
+   */
+  public byte[] sign(InputStream content) throws IOException, GeneralSecurityException;
+
+  /**
+   * Uses the E002 key to decrypt the secret key of a transaction.
+   * @param transactionKey the encrypted transaction key
+   * @return the decrypted secret key
+   * @throws GeneralSecurityException
+   * @throws IOException
+   */
+  public byte[] decryptTransactionKey(byte[] transactionKey)
+    throws GeneralSecurityException, IOException;
+
   /**
    * Uses the E001 key to decrypt the given secret key.
    * @param encryptedKey the given secret key
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.kopi.ebics.interfaces.ContentFactory;
+
+
+/**
+ * Content factory that delivers a read-only view of a byte buffer, such as
+ * a segment of the encrypted order data, without copying it. Each stream
+ * reads its own duplicate of the view so that the content can be read as
+ * often as needed.
+ *
+ */
+public class ByteBufferContentFactory implements ContentFactory {
+
+  /**
+   * Constructs a new <code>ByteBufferContentFactory</code> over
+   * the remaining bytes of a given buffer.
+   * @param buffer the buffer content
+   */
+  public ByteBufferContentFactory(ByteBuffer buffer) {
+    this.buffer = buffer.asReadOnlyBuffer();
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    return new ByteBufferInputStream(getBuffer());
+  }
+
+  /**
+   * Returns a read-only view of the content.
+   * @return the content view.
+   */
+  public ByteBuffer getBuffer() {
+    return buffer.duplicate();
+  }
+
+  /**
+   * Returns the content length
+   * @return the content length.
+   */
+  public int getLength() {
+    return buffer.remaining();
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    byte[]			content;
+
+    content = new byte[buffer.remaining()];
+    buffer.duplicate().get(content);
+    out.writeInt(content.length);
+    out.write(content);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException {
+    byte[]			content;
+
+    content = new byte[in.readInt()];
+    in.readFully(content);
+    buffer = ByteBuffer.wrap(content).asReadOnlyBuffer();
+  }
+
+  /**
+   * An input stream reading the remaining bytes of a buffer.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+
+    private final ByteBuffer			buffer;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private transient ByteBuffer			buffer;
+  private static final long 			serialVersionUID = -2516489370165021846L;
+}
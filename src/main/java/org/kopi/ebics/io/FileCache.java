@@ -41,33 +41,38 @@ public class FileCache {
   }
 
   /**
-   * Cache a new <code>java.io.File</code> in the cache buffer
+   * Cache a new <code>java.io.File</code> in the cache buffer.
+   * Files are identified by their absolute path, so that files of the
+   * same name in different directories are all cached.
    * @param file the file to cache
    * @return True if the file is cached
    */
   public boolean add(File file) {
-    if (cache.containsKey(file.getName())) {
+    if (cache.containsKey(file.getAbsolutePath())) {
       return false;
     }
 
-    cache.put(file.getName(), file);
+    cache.put(file.getAbsolutePath(), file);
 
     return true;
   }
 
   /**
    * Removes the given <code>java.io.file</code> from the cache.
-   * @param filename the file to remove
+   * @param filename the path of the file to remove
    * @return True if the file is removed
    */
   public boolean remove(String filename) {
-    if (!cache.containsKey(filename)) {
-      return false;
-    }
-
-    cache.remove(filename);
+    return remove(new File(filename));
+  }
 
-    return true;
+  /**
+   * Removes the given <code>java.io.file</code> from the cache.
+   * @param file the file to remove
+   * @return True if the file is removed
+   */
+  public boolean remove(File file) {
+    return cache.remove(file.getAbsolutePath()) != null;
   }
 
   /**
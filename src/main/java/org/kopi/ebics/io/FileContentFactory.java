@@ -20,7 +20,6 @@
 package org.kopi.ebics.io;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -29,7 +28,7 @@ import org.kopi.ebics.interfaces.ContentFactory;
 
 /**
  * File content factory that delivers the file content
- * as a <code>FileInputStream</code>. This object is
+ * through a memory mapped <code>MappedFileInputStream</code>. This object is
  * serializable in a way to recover interrupted file transfers.
  *
  * @author hachani
@@ -48,7 +47,7 @@ public class FileContentFactory implements ContentFactory {
 
   @Override
   public InputStream getContent() throws IOException {
-    return new FileInputStream(input);
+    return new MappedFileInputStream(input);
   }
 
   // --------------------------------------------------------------------
@@ -19,9 +19,22 @@
 
 package org.kopi.ebics.io;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.EbicsUser;
@@ -32,6 +45,11 @@ import org.kopi.ebics.utils.Utils;
  * A simple mean to join downloaded segments from the
  * bank ebics server.
  *
+ * <p>Small downloads are joined in memory. Once the joined segments
+ * exceed a few megabytes they are moved to a temporary file, and are then
+ * decrypted and uncompressed as a stream when written, so that large
+ * downloads are never loaded in memory as a whole.
+ *
  * @author Hachani
  *
  */
@@ -46,15 +64,61 @@ public class Joiner {
     buffer = new ByteArrayOutputStream();
   }
 
+  /**
+   * Constructs a new <code>Joiner</code> object for a download of a known
+   * number of segments. Downloads expected to exceed the memory threshold
+   * are joined in a temporary file from the first segment on, smaller ones
+   * in a buffer sized for the expected size.
+   * @param user the ebics user.
+   * @param expectedSize the expected size of the joined segments, at least
+   * @throws EbicsException
+   */
+  public Joiner(EbicsUser user, long expectedSize) throws EbicsException {
+    this.user = user;
+    if (expectedSize > SPILL_THRESHOLD) {
+      buffer = new ByteArrayOutputStream();
+      try {
+        spill();
+      } catch (IOException e) {
+        throw new EbicsException(e.getMessage());
+      }
+    } else {
+      buffer = new ByteArrayOutputStream((int) Math.max(expectedSize, 32));
+    }
+  }
+
   public void append(byte[] data) throws EbicsException {
     try {
-      buffer.write(data);
-      buffer.flush();
+      if (channel == null && buffer.size() + data.length > SPILL_THRESHOLD) {
+        spill();
+      }
+      if (channel != null) {
+        ByteBuffer	source;
+
+        source = ByteBuffer.wrap(data);
+        while (source.hasRemaining()) {
+          channel.write(source);
+        }
+      } else {
+        buffer.write(data);
+        buffer.flush();
+      }
     } catch (IOException e) {
       throw new EbicsException(e.getMessage());
     }
   }
 
+  /**
+   * Moves the segments joined in memory to a temporary file.
+   * @throws IOException
+   */
+  private void spill() throws IOException {
+    file = File.createTempFile("ebics-download-", ".tmp");
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    channel.write(ByteBuffer.wrap(buffer.toByteArray()));
+    buffer = null;
+  }
+
   /**
    * Writes the joined part to an output stream.
    * @param output the output stream.
@@ -63,13 +127,49 @@ public class Joiner {
    */
   public void writeTo(OutputStream output, byte[] transactionKey)
     throws EbicsException
+  {
+    writeTo(Channels.newChannel(output), transactionKey);
+  }
+
+  /**
+   * Writes the joined part to a channel.
+   * @param output the output channel.
+   * @param transactionKey the transaction key
+   * @throws EbicsException
+   */
+  public void writeTo(WritableByteChannel output, byte[] transactionKey)
+    throws EbicsException
   {
     try {
-      byte[]		decrypted;
+      if (channel == null) {
+        byte[]		decrypted;
+
+        buffer.close();
+        decrypted = user.decrypt(buffer.toByteArray(), transactionKey);
+        write(output, ByteBuffer.wrap(Utils.unzip(decrypted)));
+      } else {
+        Cipher		cipher;
+        ByteBuffer	direct;
+        byte[]		chunk;
+        int		read;
 
-      buffer.close();
-      decrypted = user.decrypt(buffer.toByteArray(), transactionKey);
-      output.write(Utils.unzip(decrypted));
+        cipher = Utils.createCipher(Cipher.DECRYPT_MODE,
+                                    new SecretKeySpec(user.decryptTransactionKey(transactionKey), "EAS"));
+        direct = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        chunk = new byte[BUFFER_SIZE];
+        channel.position(0);
+        try (InputStream input = new InflaterInputStream(new CipherInputStream(Channels.newInputStream(channel),
+                                                                               cipher),
+                                                         new Inflater(),
+                                                         BUFFER_SIZE)) {
+          while ((read = input.read(chunk)) != -1) {
+            direct.clear();
+            direct.put(chunk, 0, read);
+            direct.flip();
+            write(output, direct);
+          }
+        }
+      }
     } catch (GeneralSecurityException e) {
       throw new EbicsException(e.getMessage());
     } catch (IOException e) {
@@ -77,10 +177,39 @@ public class Joiner {
     }
   }
 
+  private static void write(WritableByteChannel output, ByteBuffer data) throws IOException {
+    while (data.hasRemaining()) {
+      output.write(data);
+    }
+  }
+
+  /**
+   * Removes the temporary file of a large download.
+   */
+  public void dispose() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // the file is removed anyway
+      }
+      channel = null;
+    }
+    if (file != null) {
+      file.delete();
+      file = null;
+    }
+  }
+
   // --------------------------------------------------------------------
   // DATA MEMBERS
   // --------------------------------------------------------------------
 
   private EbicsUser			user;
   private ByteArrayOutputStream		buffer;
+  private File				file;
+  private FileChannel			channel;
+
+  private static final int		SPILL_THRESHOLD = 4 * 1024 * 1024;
+  private static final int		BUFFER_SIZE = 64 * 1024;
 }
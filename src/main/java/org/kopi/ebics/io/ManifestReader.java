@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.kopi.ebics.exception.EbicsException;
+
+
+/**
+ * Reads the lines of a simple CSV manifest.
+ *
+ * <p>The first line is a header naming the columns. Values are separated
+ * by commas and are not quoted. Empty lines and lines starting with
+ * <code>#</code> are ignored.
+ *
+ */
+public class ManifestReader implements Closeable {
+
+  /**
+   * Opens a manifest file and reads its header.
+   * @param manifest the manifest file
+   * @param required the columns that the header must name
+   * @throws IOException the manifest cannot be read
+   * @throws EbicsException a required column is missing
+   */
+  public ManifestReader(File manifest, String... required) throws IOException, EbicsException {
+    this(manifest.getPath(),
+         new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8),
+         required);
+  }
+
+  /**
+   * Reads the header of a manifest.
+   * @param name the manifest name used in the error messages
+   * @param input the manifest content
+   * @param required the columns that the header must name
+   * @throws IOException the manifest cannot be read
+   * @throws EbicsException a required column is missing
+   */
+  public ManifestReader(String name, Reader input, String... required) throws IOException, EbicsException {
+    this.name = name;
+    reader = new BufferedReader(input);
+    columns = new HashMap<String, Integer>();
+    try {
+      if (next()) {
+        for (int i = 0; i < values.length; i++) {
+          columns.put(values[i].trim(), i);
+        }
+      }
+      for (String column : required) {
+        if (!columns.containsKey(column)) {
+          throw new EbicsException(name + ": missing column " + column);
+        }
+      }
+    } catch (IOException | EbicsException e) {
+      reader.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Moves to the next line of the manifest.
+   * @return False if the end of the manifest is reached
+   * @throws IOException the manifest cannot be read
+   */
+  public boolean next() throws IOException {
+    String		line;
+
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (!line.trim().isEmpty() && !line.startsWith("#")) {
+        values = line.split(",", -1);
+        return true;
+      }
+    }
+
+    values = null;
+    return false;
+  }
+
+  /**
+   * Returns the value of a column in the current line.
+   * @param column the column name
+   * @return the trimmed value, or null if the column or the value is missing
+   */
+  public String get(String column) {
+    Integer		index;
+
+    index = columns.get(column);
+    if (index == null || index >= values.length || values[index].trim().isEmpty()) {
+      return null;
+    }
+
+    return values[index].trim();
+  }
+
+  /**
+   * Returns the value of a column that must be set in the current line.
+   * @param column the column name
+   * @return the trimmed value
+   * @throws IllegalArgumentException the value is missing
+   */
+  public String require(String column) {
+    String		value;
+
+    value = get(column);
+    if (value == null) {
+      throw new IllegalArgumentException("missing value for " + column);
+    }
+
+    return value;
+  }
+
+  /**
+   * Tells if the header names the given column.
+   * @param column the column name
+   * @return True if the column exists
+   */
+  public boolean hasColumn(String column) {
+    return columns.containsKey(column);
+  }
+
+  /**
+   * Returns the number of the current line, starting at 1.
+   * @return the line number
+   */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Creates an error about the current line.
+   * @param message the error message
+   * @return the error
+   */
+  public EbicsException error(String message) {
+    return new EbicsException(name + ":" + lineNumber + ": " + message);
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final String				name;
+  private final BufferedReader			reader;
+  private final Map<String, Integer>		columns;
+  private String[]				values;
+  private int					lineNumber;
+}
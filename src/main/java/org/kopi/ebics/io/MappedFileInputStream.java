@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Reads a file through read-only memory mapped windows.
+ *
+ * <p>The file content is paged in by the operating system and copied
+ * only into the buffers of the reader, so that files of several gigabytes
+ * can be read without loading them in the heap. The file is mapped
+ * window by window because a single mapping cannot exceed 2 GB.
+ *
+ */
+public class MappedFileInputStream extends InputStream {
+
+  /**
+   * Constructs a new <code>MappedFileInputStream</code>.
+   * @param file the file to read
+   * @throws IOException the file cannot be opened
+   */
+  public MappedFileInputStream(File file) throws IOException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    size = channel.size();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureWindow()) {
+      return -1;
+    }
+
+    return window.get() & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int			count;
+
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureWindow()) {
+      return -1;
+    }
+
+    count = Math.min(len, window.remaining());
+    window.get(b, off, count);
+    return count;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int) Math.min(Integer.MAX_VALUE, size - position + (window == null ? 0 : window.remaining()));
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+
+  /**
+   * Returns the size of the file.
+   * @return the file size
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Maps the next window of the file if the current one is consumed.
+   * @return false at the end of the file
+   * @throws IOException the file cannot be mapped
+   */
+  private boolean ensureWindow() throws IOException {
+    if (window != null && window.hasRemaining()) {
+      return true;
+    }
+    if (position >= size) {
+      return false;
+    }
+
+    long		length;
+
+    length = Math.min(WINDOW_SIZE, size - position);
+    window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    position += length;
+    return true;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final FileChannel			channel;
+  private final long				size;
+  private long					position;
+  private MappedByteBuffer			window;
+
+  private static final long			WINDOW_SIZE = 64L * 1024 * 1024;
+}
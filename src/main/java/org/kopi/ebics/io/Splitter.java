@@ -19,6 +19,19 @@
 
 package org.kopi.ebics.io;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.kopi.ebics.exception.EbicsException;
@@ -44,6 +57,18 @@ public class Splitter {
     this.input = input;
   }
 
+  /**
+   * Constructs a new <code>FileSplitter</code> with a given file. The file
+   * is read through memory mapped windows and the compressed and encrypted
+   * content is written to a temporary file, so that the content is never
+   * loaded in memory as a whole. The temporary file is removed by
+   * {@link #dispose()}.
+   * @param inputFile the input file
+   */
+  public Splitter(File inputFile) {
+    this.inputFile = inputFile;
+  }
+
   /**
    * Reads the input stream and splits it to segments of 1MB size.
    * 
@@ -71,16 +96,88 @@ public class Splitter {
     throws EbicsException
   {
     try {
-      if (isCompressionEnabled) {
-	input = Utils.zip(input);
+      if (inputFile != null) {
+        readInputFile(isCompressionEnabled, keySpec);
+      } else {
+        if (isCompressionEnabled) {
+          input = Utils.zip(input);
+        }
+        content = Utils.encrypt(input, keySpec);
+        contentLength = content.length;
       }
-      content = Utils.encrypt(input, keySpec);
       segmentation();
     } catch (Exception e) {
       throw new EbicsException(e.getMessage());
     }
   }
 
+  /**
+   * Compresses and encrypts the input file into a temporary file. The
+   * temporary file is removed if the input cannot be read.
+   * @param isCompressionEnabled enable compression?
+   * @param keySpec the secret key spec
+   * @throws IOException
+   * @throws EbicsException
+   */
+  private void readInputFile(boolean isCompressionEnabled, SecretKeySpec keySpec)
+    throws IOException, EbicsException
+  {
+    Deflater			deflater;
+    byte[]			buffer;
+    int				read;
+
+    encryptedFile = File.createTempFile("ebics-upload-", ".tmp");
+    deflater = isCompressionEnabled ? new Deflater(Deflater.BEST_COMPRESSION) : null;
+    buffer = new byte[BUFFER_SIZE];
+    try {
+      try (InputStream in = new MappedFileInputStream(inputFile);
+           OutputStream out = openOutput(keySpec, deflater))
+      {
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      }
+
+      encrypted = FileChannel.open(encryptedFile.toPath(), StandardOpenOption.READ);
+      contentLength = encrypted.size();
+    } catch (IOException | EbicsException | RuntimeException e) {
+      dispose();
+      throw e;
+    } finally {
+      // a deflater given to a stream is not released when it is closed
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * Opens the stream encrypting, and compressing if a deflater is given,
+   * the content written to the temporary file.
+   * @param keySpec the secret key spec
+   * @param deflater the deflater, null if compression is disabled
+   * @return the output stream
+   * @throws IOException
+   * @throws EbicsException
+   */
+  private OutputStream openOutput(SecretKeySpec keySpec, Deflater deflater)
+    throws IOException, EbicsException
+  {
+    FileChannel			channel;
+    OutputStream		output;
+
+    channel = FileChannel.open(encryptedFile.toPath(), StandardOpenOption.WRITE);
+    try {
+      output = new CipherOutputStream(Channels.newOutputStream(channel),
+                                      Utils.createCipher(Cipher.ENCRYPT_MODE, keySpec));
+    } catch (EbicsException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+
+    return deflater == null ? output : new DeflaterOutputStream(output, deflater, BUFFER_SIZE);
+  }
+
   /**
    * Slits the input into 1MB portions.
    * 
@@ -90,16 +187,59 @@ public class Splitter {
    * space in compressed, encrypted and base64-coded form MUST be segmented before
    * transmission, irrespective of the transfer direction (upload/download).
    * 
+   * <p>Base64 codes every 3 bytes as 4 characters. Splitting the encrypted
+   * content at multiples of 3 bytes is then the same as splitting its
+   * base64 coding at multiples of 4 characters, which keeps each segment
+   * base64-conformant. Every segment but the last one is packed with the
+   * largest multiple of 3 bytes whose base64 coding fits in the maximum
+   * segment size, so that the fewest segments are sent.
    */
   private void segmentation() {
+    segmentSize = getMaxContentSize(maxSegmentSize);
+    numSegments = (int) ((contentLength + segmentSize - 1) / segmentSize);
+
+    if (numSegments == 0) {
+      numSegments = 1;
+    }
+  }
+
+  /**
+   * Returns the largest number of bytes that can be sent in a segment
+   * of a given base64 coded size.
+   * @param encodedSize the maximum base64 coded segment size
+   * @return the maximum number of bytes of a segment
+   */
+  public static int getMaxContentSize(int encodedSize) {
+    return encodedSize / 4 * 3;
+  }
+
+  /**
+   * Returns the base64 coded size of a given number of bytes.
+   * @param length the number of bytes
+   * @return the base64 coded size
+   */
+  public static long getEncodedSize(long length) {
+    return (length + 2) / 3 * 4;
+  }
 
-    numSegments = content.length / 1048576; //(1024 * 1024)
-    
-    if (content.length % 1048576 != 0) {
-      numSegments ++;
+  /**
+   * Sets the maximum base64 coded size of a segment. It should be set before
+   * the input is read, the default is 1 MB = 1,048,576 bytes.
+   * @param maxSegmentSize the maximum segment size
+   */
+  public void setMaxSegmentSize(int maxSegmentSize) {
+    if (maxSegmentSize < 4) {
+      throw new IllegalArgumentException("segment size too small: " + maxSegmentSize);
     }
+    this.maxSegmentSize = maxSegmentSize;
+  }
 
-    segmentSize = content.length / numSegments;
+  /**
+   * Returns the maximum base64 coded size of a segment.
+   * @return the maximum segment size
+   */
+  public int getMaxSegmentSize() {
+    return maxSegmentSize;
   }
 
   /**
@@ -109,23 +249,59 @@ public class Splitter {
    * @param segmentNumber the segment number
    * @return
    */
-  public ContentFactory getContent(int segmentNumber) {
-    byte[]		segment;
-    int			offset;
+  public ContentFactory getContent(int segmentNumber) throws EbicsException {
+    return new ByteBufferContentFactory(getSegment(segmentNumber));
+  }
+
+  /**
+   * Returns a read-only view of a data segment according to a given
+   * segment number. The view shares the encrypted content, or maps the
+   * segment region of the temporary file, so that no segment is copied.
+   *
+   * @param segmentNumber the segment number
+   * @return the segment view
+   * @throws EbicsException
+   */
+  public ByteBuffer getSegment(int segmentNumber) throws EbicsException {
+    long		offset;
+    int			length;
 
-    offset = segmentSize * (segmentNumber - 1);
-    if (content.length < segmentSize + offset) {
-      segment = new byte[content.length - offset];
+    offset = (long) segmentSize * (segmentNumber - 1);
+    length = (int) Math.min(segmentSize, contentLength - offset);
+
+    if (encrypted != null) {
+      try {
+        return encrypted.map(FileChannel.MapMode.READ_ONLY, offset, length);
+      } catch (IOException e) {
+        throw new EbicsException(e.getMessage());
+      }
     } else {
-      segment = new byte[segmentSize];
+      return ByteBuffer.wrap(content, (int) offset, length).slice().asReadOnlyBuffer();
     }
+  }
 
-    System.arraycopy(content, offset, segment, 0, segment.length);
-    return new ByteArrayContentFactory(segment);
+  /**
+   * Releases the temporary file holding the encrypted content of an
+   * input file.
+   */
+  public void dispose() {
+    if (encrypted != null) {
+      try {
+        encrypted.close();
+      } catch (IOException e) {
+        // the file is removed anyway
+      }
+      encrypted = null;
+    }
+    if (encryptedFile != null) {
+      encryptedFile.delete();
+      encryptedFile = null;
+    }
   }
 
   /**
-   * Returns the hole content.
+   * Returns the hole content. The content of an input file is not held
+   * in memory, null is then returned.
    * @return the input content.
    */
   public byte[] getContent() {
@@ -145,7 +321,19 @@ public class Splitter {
   // --------------------------------------------------------------------
 
   private byte[]				input;
+  private File					inputFile;
   private byte[]				content;
+  private File					encryptedFile;
+  private FileChannel				encrypted;
+  private long					contentLength;
   private int					segmentSize;
+  private int					maxSegmentSize = DEFAULT_SEGMENT_SIZE;
   private int					numSegments;
+
+  private static final int			BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The maximum base64 coded segment size defined by the specification.
+   */
+  public static final int			DEFAULT_SEGMENT_SIZE = 1048576; //(1024 * 1024)
 }
@@ -23,9 +23,14 @@ import java.text.MessageFormat;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A mean to manage application messages.
+ * The messages are kept in a catalogue keyed by bundle, locale and key
+ * so that the bundle lookup and the pattern parsing are done once per
+ * message and not on every call.
  *
  * @author Hachani
  *
@@ -41,10 +46,7 @@ public class Messages {
    */
   public static String getString(String key, String bundleName, String param) {
     try {
-      ResourceBundle		resourceBundle;
-
-      resourceBundle = ResourceBundle.getBundle(bundleName, locale);
-      return MessageFormat.format(resourceBundle.getString(key), param);
+      return getMessage(key, bundleName, locale).format(param);
     } catch (MissingResourceException e) {
       return "!!" + key + "!!";
     } catch (NullPointerException npe) {
@@ -64,10 +66,24 @@ public class Messages {
    */
   public static String getString(String key, String bundleName, int param) {
     try {
-      ResourceBundle		resourceBundle;
+      return getMessage(key, bundleName, locale).format(param);
+    } catch (MissingResourceException e) {
+      return "!!" + key + "!!";
+    } catch (NullPointerException npe) {
+      return "!!" + key + "!!";
+    }
+  }
 
-      resourceBundle = ResourceBundle.getBundle(bundleName, locale);
-      return MessageFormat.format(resourceBundle.getString(key), param);
+  /**
+   * Return the corresponding value of a given key and several parameters.
+   * @param key the given key
+   * @param bundleName the bundle name
+   * @param params the parameters
+   * @return the corresponding key value
+   */
+  public static String getString(String key, String bundleName, Object... params) {
+    try {
+      return getMessage(key, bundleName, locale).format(params);
     } catch (MissingResourceException e) {
       return "!!" + key + "!!";
     } catch (NullPointerException npe) {
@@ -83,10 +99,7 @@ public class Messages {
    */
   public static String getString(String key, String bundleName) {
     try {
-      ResourceBundle		resourceBundle;
-
-      resourceBundle = ResourceBundle.getBundle(bundleName, locale);
-      return resourceBundle.getString(key);
+      return getMessage(key, bundleName, locale).getPattern();
     } catch (MissingResourceException e) {
       return "!!" + key + "!!";
     } catch (NullPointerException npe) {
@@ -104,10 +117,7 @@ public class Messages {
    */
   public static String getString(String key, String bundleName, Locale locale, String param) {
     try {
-      ResourceBundle		resourceBundle;
-
-      resourceBundle = ResourceBundle.getBundle(bundleName, locale);
-      return MessageFormat.format(resourceBundle.getString(key), param);
+      return getMessage(key, bundleName, locale).format(param);
     } catch (MissingResourceException e) {
       return "!!" + key + "!!";
     } catch (NullPointerException npe) {
@@ -128,10 +138,7 @@ public class Messages {
    */
   public static String getString(String key, String bundleName, Locale locale, int param) {
     try {
-      ResourceBundle		resourceBundle;
-
-      resourceBundle = ResourceBundle.getBundle(bundleName, locale);
-      return MessageFormat.format(resourceBundle.getString(key), param);
+      return getMessage(key, bundleName, locale).format(param);
     } catch (MissingResourceException e) {
       return "!!" + key + "!!";
     } catch (NullPointerException npe) {
@@ -148,10 +155,7 @@ public class Messages {
    */
   public static String getString(String key, String bundleName, Locale locale) {
     try {
-      ResourceBundle		resourceBundle;
-
-      resourceBundle = ResourceBundle.getBundle(bundleName, locale);
-      return resourceBundle.getString(key);
+      return getMessage(key, bundleName, locale).getPattern();
     } catch (MissingResourceException e) {
       return "!!" + key + "!!";
     } catch (NullPointerException npe) {
@@ -159,6 +163,37 @@ public class Messages {
     }
   }
 
+  /**
+   * Returns the catalogue entry of a given key, loading it from
+   * the resource bundle the first time it is requested.
+   * @param key the given key
+   * @param bundleName the bundle name
+   * @param locale the bundle locale
+   * @return the catalogue entry
+   * @throws MissingResourceException the key or the bundle does not exist
+   */
+  private static CatalogueEntry getMessage(String key, String bundleName, Locale locale) {
+    String			id;
+    CatalogueEntry		entry;
+
+    id = bundleName + '|' + locale + '|' + key;
+    entry = CATALOGUE.get(id);
+    if (entry == null) {
+      try {
+        entry = new CatalogueEntry(ResourceBundle.getBundle(bundleName, locale).getString(key));
+      } catch (MissingResourceException e) {
+        entry = MISSING;
+      }
+      CATALOGUE.putIfAbsent(id, entry);
+    }
+
+    if (entry == MISSING) {
+      throw new MissingResourceException(key, bundleName, key);
+    }
+
+    return entry;
+  }
+
   /**
    * Sets the default locale.
    * @param locale the locale
@@ -172,4 +207,50 @@ public class Messages {
   // --------------------------------------------------------------------
 
   private static Locale					locale;
+
+  private static final ConcurrentMap<String, CatalogueEntry> CATALOGUE = new ConcurrentHashMap<String, CatalogueEntry>();
+  private static final CatalogueEntry			MISSING = new CatalogueEntry(null);
+
+  /**
+   * A message of the catalogue with its compiled format.
+   * The format is compiled on the first formatting request since
+   * most messages are only ever read as plain strings.
+   */
+  private static class CatalogueEntry {
+
+    CatalogueEntry(String pattern) {
+      this.pattern = pattern;
+    }
+
+    /**
+     * Returns the raw message pattern.
+     * @return the message pattern
+     */
+    String getPattern() {
+      return pattern;
+    }
+
+    /**
+     * Formats the message with the given arguments.
+     * @param arguments the message arguments
+     * @return the formatted message
+     */
+    String format(Object... arguments) {
+      // MessageFormat instances are not thread safe.
+      synchronized (this) {
+        if (format == null) {
+          format = new MessageFormat(pattern);
+        }
+
+        return format.format(arguments, new StringBuffer(), null).toString();
+      }
+    }
+
+    // ------------------------------------------------------------------
+    // DATA MEMBERS
+    // ------------------------------------------------------------------
+
+    private final String				pattern;
+    private MessageFormat				format;
+  }
 }
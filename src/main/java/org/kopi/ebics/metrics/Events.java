@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import org.kopi.ebics.exception.EbicsException;
+
+/**
+ * The flight recorder events of the EBICS client.
+ *
+ * <p>The events are only emitted on JVMs providing the <code>jdk.jfr</code>
+ * API and while a recording is running, the calls cost next to nothing
+ * otherwise. The event classes are never loaded on older JVMs: the begin
+ * methods return opaque handles, null when nothing is recorded, that are
+ * given back to the matching commit methods.
+ *
+ */
+public final class Events {
+
+  private Events() {}
+
+  /**
+   * Starts the event of a segment transfer.
+   * @return the event handle, null when the event is not recorded
+   */
+  public static Object beginSegment() {
+    return AVAILABLE ? FlightRecorderEvents.beginSegment() : null;
+  }
+
+  /**
+   * Ends and commits the event of a segment transfer.
+   * @param event the event handle
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @param transactionId the transaction ID
+   * @param segmentNumber the segment number
+   * @param bytes the size of the exchanged segment request or response
+   * @param phase upload or download
+   * @param failure the error that ended the transfer, null if it succeeded
+   */
+  public static void commitSegment(Object event,
+                                   String hostId,
+                                   String orderType,
+                                   byte[] transactionId,
+                                   int segmentNumber,
+                                   long bytes,
+                                   String phase,
+                                   Throwable failure)
+  {
+    if (event != null) {
+      FlightRecorderEvents.commitSegment(event,
+                                         hostId,
+                                         orderType,
+                                         transactionId,
+                                         segmentNumber,
+                                         bytes,
+                                         phase,
+                                         getOutcome(failure));
+    }
+  }
+
+  /**
+   * Starts the event of a transaction.
+   * @return the event handle, null when the event is not recorded
+   */
+  public static Object beginTransaction() {
+    return AVAILABLE ? FlightRecorderEvents.beginTransaction() : null;
+  }
+
+  /**
+   * Ends and commits the event of a transaction.
+   * @param event the event handle
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @param transactionId the transaction ID, null if the bank did not assign one
+   * @param segments the number of segments, 0 if the order was not built
+   * @param phase upload or download
+   * @param failure the error that ended the transaction, null if it succeeded
+   */
+  public static void commitTransaction(Object event,
+                                       String hostId,
+                                       String orderType,
+                                       byte[] transactionId,
+                                       int segments,
+                                       String phase,
+                                       Throwable failure)
+  {
+    if (event != null) {
+      FlightRecorderEvents.commitTransaction(event,
+                                             hostId,
+                                             orderType,
+                                             transactionId,
+                                             segments,
+                                             phase,
+                                             getOutcome(failure));
+    }
+  }
+
+  /**
+   * Starts the event of an HTTP exchange.
+   * @return the event handle, null when the event is not recorded
+   */
+  public static Object beginHttpExchange() {
+    return AVAILABLE ? FlightRecorderEvents.beginHttpExchange() : null;
+  }
+
+  /**
+   * Ends and commits the event of an HTTP exchange.
+   * @param event the event handle
+   * @param host the bank server host
+   * @param status the HTTP status, 0 when no response was received
+   * @param bytesSent the number of bytes sent
+   * @param bytesReceived the number of bytes received
+   */
+  public static void commitHttpExchange(Object event, String host, int status, long bytesSent, long bytesReceived) {
+    if (event != null) {
+      FlightRecorderEvents.commitHttpExchange(event, host, status, bytesSent, bytesReceived);
+    }
+  }
+
+  /**
+   * Returns the outcome recorded in the transfer events.
+   * @param failure the error that ended the transfer, null if it succeeded
+   * @return success, the symbolic name of the EBICS return code of the
+   *         error, or the class name of the error
+   */
+  private static String getOutcome(Throwable failure) {
+    if (failure == null) {
+      return "success";
+    } else if (failure instanceof EbicsException && ((EbicsException) failure).getReturnCode() != null) {
+      return ((EbicsException) failure).getReturnCode().getSymbolicName();
+    } else {
+      return failure.getClass().getSimpleName();
+    }
+  }
+
+  /**
+   * Tells if the running JVM provides the flight recorder API.
+   * @return True if the events can be emitted
+   */
+  private static boolean isAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private static final boolean			AVAILABLE = isAvailable();
+}
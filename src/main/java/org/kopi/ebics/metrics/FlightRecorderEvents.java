@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * The flight recorder calls behind {@link Events}. This class is only
+ * loaded on JVMs providing the <code>jdk.jfr</code> API.
+ *
+ */
+final class FlightRecorderEvents {
+
+  private FlightRecorderEvents() {}
+
+  static Object beginSegment() {
+    SegmentEvent		event;
+
+    event = new SegmentEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  static void commitSegment(Object handle,
+                            String hostId,
+                            String orderType,
+                            byte[] transactionId,
+                            int segmentNumber,
+                            long bytes,
+                            String phase,
+                            String outcome)
+  {
+    SegmentEvent		event;
+
+    event = (SegmentEvent) handle;
+    event.end();
+    if (event.shouldCommit()) {
+      event.hostId = hostId;
+      event.orderType = orderType;
+      event.transactionId = toHex(transactionId);
+      event.segmentNumber = segmentNumber;
+      event.bytes = bytes;
+      event.phase = phase;
+      event.outcome = outcome;
+      event.commit();
+    }
+  }
+
+  static Object beginTransaction() {
+    TransactionEvent		event;
+
+    event = new TransactionEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  static void commitTransaction(Object handle,
+                                String hostId,
+                                String orderType,
+                                byte[] transactionId,
+                                int segments,
+                                String phase,
+                                String outcome)
+  {
+    TransactionEvent		event;
+
+    event = (TransactionEvent) handle;
+    event.end();
+    if (event.shouldCommit()) {
+      event.hostId = hostId;
+      event.orderType = orderType;
+      event.transactionId = toHex(transactionId);
+      event.segments = segments;
+      event.phase = phase;
+      event.outcome = outcome;
+      event.commit();
+    }
+  }
+
+  static Object beginHttpExchange() {
+    HttpExchangeEvent		event;
+
+    event = new HttpExchangeEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  static void commitHttpExchange(Object handle, String host, int status, long bytesSent, long bytesReceived) {
+    HttpExchangeEvent		event;
+
+    event = (HttpExchangeEvent) handle;
+    event.end();
+    if (event.shouldCommit()) {
+      event.host = host;
+      event.status = status;
+      event.bytesSent = bytesSent;
+      event.bytesReceived = bytesReceived;
+      event.commit();
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    return bytes == null ? null : Hex.encodeHexString(bytes);
+  }
+}
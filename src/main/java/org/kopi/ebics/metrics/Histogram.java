@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of positive long values with a fixed relative
+ * precision, in the manner of the HDR histograms.
+ *
+ * <p>The values below 128 are counted exactly. Above, each power of two
+ * is divided into 64 linear buckets so that any recorded value is known
+ * within 1.6% whatever its magnitude, from nanoseconds to hours or from
+ * bytes to gigabytes, with a fixed footprint of about 30 KB.
+ *
+ */
+public class Histogram {
+
+  /**
+   * Constructs a new empty <code>Histogram</code>.
+   */
+  public Histogram() {
+    counts = new AtomicLongArray(BUCKET_COUNT);
+    count = new AtomicLong();
+    total = new AtomicLong();
+    min = new AtomicLong(Long.MAX_VALUE);
+    max = new AtomicLong();
+  }
+
+  /**
+   * Records a value. Negative values are recorded as zero.
+   * @param value the value to record
+   */
+  public void record(long value) {
+    long			current;
+
+    value = Math.max(0, value);
+    counts.incrementAndGet(getIndex(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+
+    current = min.get();
+    while (value < current && !min.compareAndSet(current, value)) {
+      current = min.get();
+    }
+    current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Returns the number of recorded values.
+   * @return the number of recorded values
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Returns the sum of the recorded values.
+   * @return the sum of the recorded values
+   */
+  public long getTotal() {
+    return total.get();
+  }
+
+  /**
+   * Returns the smallest recorded value.
+   * @return the smallest recorded value, 0 if the histogram is empty
+   */
+  public long getMin() {
+    return count.get() == 0 ? 0 : min.get();
+  }
+
+  /**
+   * Returns the greatest recorded value.
+   * @return the greatest recorded value
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the mean of the recorded values.
+   * @return the mean of the recorded values, 0 if the histogram is empty
+   */
+  public double getMean() {
+    long			values;
+
+    values = count.get();
+    return values == 0 ? 0 : (double) total.get() / values;
+  }
+
+  /**
+   * Returns the value below which the given percentage of the recorded
+   * values fall. The result is the highest value of its bucket.
+   * @param percentile the percentile between 0 and 100
+   * @return the value at the percentile, 0 if the histogram is empty
+   */
+  public long getValueAtPercentile(double percentile) {
+    long			values;
+    long			rank;
+    long			seen;
+
+    values = count.get();
+    if (values == 0) {
+      return 0;
+    }
+
+    rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * values));
+    seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(getLowestValue(i + 1) - 1, getMax());
+      }
+    }
+
+    return getMax();
+  }
+
+  /**
+   * Clears the recorded values. The values recorded concurrently
+   * may be partially kept.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    total.set(0);
+    min.set(Long.MAX_VALUE);
+    max.set(0);
+  }
+
+  /**
+   * Returns the bucket of a value.
+   * @param value the value
+   * @return the bucket index
+   */
+  private static int getIndex(long value) {
+    int				exponent;
+
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+
+    exponent = 63 - Long.numberOfLeadingZeros(value);
+    return LINEAR_LIMIT
+      + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT
+      + (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+  }
+
+  /**
+   * Returns the lowest value counted in a bucket.
+   * @param index the bucket index
+   * @return the lowest value of the bucket
+   */
+  private static long getLowestValue(int index) {
+    int				exponent;
+    int				subBucket;
+
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    if (index >= BUCKET_COUNT) {
+      return Long.MAX_VALUE;
+    }
+
+    exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS + 1;
+    subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+    return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final AtomicLongArray			counts;
+  private final AtomicLong			count;
+  private final AtomicLong			total;
+  private final AtomicLong			min;
+  private final AtomicLong			max;
+
+  private static final int			SUB_BUCKET_BITS = 6;
+  private static final int			SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int			LINEAR_LIMIT = 2 * SUB_BUCKET_COUNT;
+  private static final int			BUCKET_COUNT = LINEAR_LIMIT + (62 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A metrics recorder keeping histograms in memory, by bank, order type
+ * and phase. The histograms may be published on the platform MBean
+ * server under the <code>org.kopi.ebics</code> domain as soon as they
+ * are created.
+ *
+ */
+public class HistogramRecorder implements MetricsRecorder {
+
+  /**
+   * Constructs a new <code>HistogramRecorder</code>.
+   * @param jmxEnabled publish the histograms through JMX?
+   */
+  public HistogramRecorder(boolean jmxEnabled) {
+    this.jmxEnabled = jmxEnabled;
+    latencies = new ConcurrentHashMap<String, Latency>();
+    statistics = new ConcurrentHashMap<String, TransferStatistics>();
+  }
+
+  /**
+   * Returns the recorder shared by the client applications of the JVM.
+   * It publishes its histograms through JMX.
+   * @return the shared recorder
+   */
+  public static synchronized HistogramRecorder getInstance() {
+    if (instance == null) {
+      instance = new HistogramRecorder(true);
+    }
+    return instance;
+  }
+
+  /**
+   * Returns the durations of a phase.
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @param phase the transaction phase
+   * @return the durations of the phase
+   */
+  public Latency getLatency(String hostId, String orderType, Phase phase) {
+    String			key;
+    Latency			latency;
+    Latency			previous;
+
+    key = hostId + '|' + orderType + '|' + phase;
+    latency = latencies.get(key);
+    if (latency == null) {
+      latency = new Latency();
+      previous = latencies.putIfAbsent(key, latency);
+      if (previous != null) {
+        return previous;
+      }
+      register("Latency", hostId, orderType, phase.name(), latency);
+    }
+
+    return latency;
+  }
+
+  /**
+   * Returns the exchange statistics of a bank and an order type.
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @return the exchange statistics
+   */
+  public TransferStatistics getStatistics(String hostId, String orderType) {
+    String			key;
+    TransferStatistics		stats;
+    TransferStatistics		previous;
+
+    key = hostId + '|' + orderType;
+    stats = statistics.get(key);
+    if (stats == null) {
+      stats = new TransferStatistics();
+      previous = statistics.putIfAbsent(key, stats);
+      if (previous != null) {
+        return previous;
+      }
+      register("Transfer", hostId, orderType, null, stats);
+    }
+
+    return stats;
+  }
+
+  @Override
+  public void recordTime(String hostId, String orderType, Phase phase, long nanos) {
+    getLatency(hostId, orderType, phase).record(nanos);
+  }
+
+  @Override
+  public void recordBytes(String hostId, String orderType, long sent, long received) {
+    getStatistics(hostId, orderType).recordBytes(sent, received);
+  }
+
+  @Override
+  public void recordSegment(String hostId, String orderType) {
+    getStatistics(hostId, orderType).recordSegment();
+  }
+
+  @Override
+  public void recordReturnCode(String hostId, String orderType, String returnCode) {
+    getStatistics(hostId, orderType).recordReturnCode(returnCode);
+  }
+
+  /**
+   * Publishes an MBean on the platform MBean server.
+   * @param type the MBean type
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @param phase the transaction phase, null for the transfer statistics
+   * @param mbean the MBean
+   */
+  private void register(String type, String hostId, String orderType, String phase, Object mbean) {
+    String			name;
+
+    if (!jmxEnabled) {
+      return;
+    }
+
+    name = DOMAIN + ":type=" + type
+      + ",host=" + ObjectName.quote(hostId)
+      + ",orderType=" + ObjectName.quote(orderType)
+      + (phase == null ? "" : ",phase=" + phase);
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+    } catch (JMException e) {
+      // already published by another recorder, the in memory histogram is still updated
+    }
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final boolean					jmxEnabled;
+  private final ConcurrentMap<String, Latency>		latencies;
+  private final ConcurrentMap<String, TransferStatistics> statistics;
+
+  private static HistogramRecorder			instance;
+  private static final String				DOMAIN = "org.kopi.ebics";
+}
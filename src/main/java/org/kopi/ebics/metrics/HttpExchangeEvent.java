@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The flight recorder event of a single HTTP exchange with a bank server.
+ *
+ */
+@Name("org.kopi.ebics.HttpExchange")
+@Label("EBICS HTTP Exchange")
+@Category("EBICS")
+@Description("HTTP request sent to a bank server and its response")
+class HttpExchangeEvent extends Event {
+
+  @Label("Host")
+  String			host;
+
+  @Label("Status")
+  @Description("HTTP status code, 0 when no response was received")
+  int				status;
+
+  @Label("Bytes Sent")
+  @DataAmount
+  long				bytesSent;
+
+  @Label("Bytes Received")
+  @DataAmount
+  long				bytesReceived;
+}
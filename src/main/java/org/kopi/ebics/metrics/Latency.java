@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+/**
+ * The durations of a transaction phase for a bank and an order type.
+ *
+ */
+public class Latency implements LatencyMBean {
+
+  /**
+   * Constructs a new empty <code>Latency</code>.
+   */
+  public Latency() {
+    histogram = new Histogram();
+  }
+
+  /**
+   * Records a duration.
+   * @param nanos the duration in nanoseconds
+   */
+  public void record(long nanos) {
+    histogram.record(nanos);
+  }
+
+  /**
+   * Returns the histogram of the durations in nanoseconds.
+   * @return the histogram of the durations
+   */
+  public Histogram getHistogram() {
+    return histogram;
+  }
+
+  @Override
+  public long getCount() {
+    return histogram.getCount();
+  }
+
+  @Override
+  public double getMean() {
+    return histogram.getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMin() {
+    return toMillis(histogram.getMin());
+  }
+
+  @Override
+  public double getMax() {
+    return toMillis(histogram.getMax());
+  }
+
+  @Override
+  public double get50thPercentile() {
+    return toMillis(histogram.getValueAtPercentile(50));
+  }
+
+  @Override
+  public double get95thPercentile() {
+    return toMillis(histogram.getValueAtPercentile(95));
+  }
+
+  @Override
+  public double get99thPercentile() {
+    return toMillis(histogram.getValueAtPercentile(99));
+  }
+
+  @Override
+  public double get999thPercentile() {
+    return toMillis(histogram.getValueAtPercentile(99.9));
+  }
+
+  @Override
+  public void reset() {
+    histogram.reset();
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / NANOS_PER_MILLI;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final Histogram			histogram;
+
+  private static final double			NANOS_PER_MILLI = 1000000.0;
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+/**
+ * The JMX view of the durations of a transaction phase.
+ * The durations are given in milliseconds.
+ *
+ */
+public interface LatencyMBean {
+
+  /**
+   * Returns the number of measures.
+   * @return the number of measures
+   */
+  public long getCount();
+
+  /**
+   * Returns the mean duration.
+   * @return the mean duration
+   */
+  public double getMean();
+
+  /**
+   * Returns the shortest duration.
+   * @return the shortest duration
+   */
+  public double getMin();
+
+  /**
+   * Returns the longest duration.
+   * @return the longest duration
+   */
+  public double getMax();
+
+  /**
+   * Returns the median duration.
+   * @return the median duration
+   */
+  public double get50thPercentile();
+
+  /**
+   * Returns the 95th percentile of the durations.
+   * @return the 95th percentile
+   */
+  public double get95thPercentile();
+
+  /**
+   * Returns the 99th percentile of the durations.
+   * @return the 99th percentile
+   */
+  public double get99thPercentile();
+
+  /**
+   * Returns the 99.9th percentile of the durations.
+   * @return the 99.9th percentile
+   */
+  public double get999thPercentile();
+
+  /**
+   * Clears the measures.
+   */
+  public void reset();
+}
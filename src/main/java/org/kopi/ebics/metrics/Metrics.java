@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.kopi.ebics.exception.ReturnCode;
+
+/**
+ * The entry point of the EBICS client instrumentation.
+ *
+ * <p>The transfer and key management code opens a {@link Scope} naming
+ * the bank and the order type of the current transaction. The measures
+ * taken further down on the same thread, in the XML elements or in the
+ * HTTP sender, are then tagged with them and forwarded to the registered
+ * {@link MetricsRecorder recorders}. Nothing is measured while no
+ * recorder is registered.
+ *
+ */
+public final class Metrics {
+
+  private Metrics() {}
+
+  /**
+   * Registers a metrics recorder. A recorder already registered is ignored.
+   * @param recorder the recorder
+   */
+  public static synchronized void addRecorder(MetricsRecorder recorder) {
+    if (!RECORDERS.contains(recorder)) {
+      RECORDERS.add(recorder);
+    }
+  }
+
+  /**
+   * Unregisters a metrics recorder.
+   * @param recorder the recorder
+   */
+  public static synchronized void removeRecorder(MetricsRecorder recorder) {
+    RECORDERS.remove(recorder);
+  }
+
+  /**
+   * Tells if some recorder is registered.
+   * @return True if the measures are recorded
+   */
+  public static boolean isEnabled() {
+    return !RECORDERS.isEmpty();
+  }
+
+  /**
+   * Opens the scope of a transaction on the current thread.
+   * The scope must be closed on the same thread.
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @return the opened scope
+   */
+  public static Scope open(String hostId, String orderType) {
+    Scope			scope;
+
+    scope = new Scope(hostId, orderType, CURRENT.get());
+    CURRENT.set(scope);
+    return scope;
+  }
+
+  /**
+   * Starts a measure.
+   * @return the start time to give to {@link #stop(Phase, long)}
+   */
+  public static long start() {
+    return RECORDERS.isEmpty() ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Ends a measure and records the duration of the phase.
+   * @param phase the measured phase
+   * @param start the start time returned by {@link #start()}
+   */
+  public static void stop(Phase phase, long start) {
+    long			nanos;
+    Scope			scope;
+
+    if (start == 0) {
+      return;
+    }
+
+    nanos = System.nanoTime() - start;
+    scope = getScope();
+    for (MetricsRecorder recorder : RECORDERS) {
+      recorder.recordTime(scope.hostId, scope.orderType, phase, nanos);
+    }
+  }
+
+  /**
+   * Records the sizes of a request and of its response.
+   * @param sent the number of bytes sent
+   * @param received the number of bytes received
+   */
+  public static void recordBytes(long sent, long received) {
+    Scope			scope;
+
+    if (RECORDERS.isEmpty()) {
+      return;
+    }
+
+    scope = getScope();
+    for (MetricsRecorder recorder : RECORDERS) {
+      recorder.recordBytes(scope.hostId, scope.orderType, sent, received);
+    }
+  }
+
+  /**
+   * Records a transferred segment.
+   */
+  public static void recordSegment() {
+    Scope			scope;
+
+    if (RECORDERS.isEmpty()) {
+      return;
+    }
+
+    scope = getScope();
+    for (MetricsRecorder recorder : RECORDERS) {
+      recorder.recordSegment(scope.hostId, scope.orderType);
+    }
+  }
+
+  /**
+   * Records a return code received from the bank.
+   * @param returnCode the return code
+   */
+  public static void recordReturnCode(ReturnCode returnCode) {
+    Scope			scope;
+
+    if (RECORDERS.isEmpty() || returnCode == null) {
+      return;
+    }
+
+    scope = getScope();
+    for (MetricsRecorder recorder : RECORDERS) {
+      recorder.recordReturnCode(scope.hostId, scope.orderType, returnCode.getSymbolicName());
+    }
+  }
+
+  /**
+   * Returns the scope of the current thread.
+   * @return the current scope
+   */
+  private static Scope getScope() {
+    Scope			scope;
+
+    scope = CURRENT.get();
+    return scope == null ? NO_SCOPE : scope;
+  }
+
+  /**
+   * The transaction the measures taken on a thread belong to.
+   * Scopes may be nested, closing a scope restores the enclosing one.
+   */
+  public static final class Scope implements AutoCloseable {
+
+    private Scope(String hostId, String orderType, Scope parent) {
+      this.hostId = hostId == null ? UNKNOWN : hostId;
+      this.orderType = orderType == null ? UNKNOWN : orderType;
+      this.parent = parent;
+    }
+
+    @Override
+    public void close() {
+      if (parent == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(parent);
+      }
+    }
+
+    // ------------------------------------------------------------------
+    // DATA MEMBERS
+    // ------------------------------------------------------------------
+
+    private final String			hostId;
+    private final String			orderType;
+    private final Scope				parent;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private static final String			UNKNOWN = "-";
+  private static final Scope			NO_SCOPE = new Scope(null, null, null);
+  private static final ThreadLocal<Scope>	CURRENT = new ThreadLocal<Scope>();
+  private static final List<MetricsRecorder>	RECORDERS = new CopyOnWriteArrayList<MetricsRecorder>();
+
+  static {
+    try {
+      for (MetricsRecorder recorder : ServiceLoader.load(MetricsRecorder.class)) {
+        RECORDERS.add(recorder);
+      }
+    } catch (ServiceConfigurationError e) {
+      // a broken provider must not prevent the client from working
+    }
+  }
+}
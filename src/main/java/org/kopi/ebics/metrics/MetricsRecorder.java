@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+/**
+ * The service provider interface of the EBICS client metrics.
+ * Implementations registered with {@link Metrics#addRecorder(MetricsRecorder)}
+ * or declared in <code>META-INF/services/org.kopi.ebics.metrics.MetricsRecorder</code>
+ * receive the measures of every transaction, tagged with the host ID
+ * of the bank and the order type. The methods are called on the
+ * transfer threads and should return quickly.
+ *
+ */
+public interface MetricsRecorder {
+
+  /**
+   * Records the duration of a transaction phase.
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @param phase the transaction phase
+   * @param nanos the duration in nanoseconds
+   */
+  public void recordTime(String hostId, String orderType, Phase phase, long nanos);
+
+  /**
+   * Records the sizes of a request and of its response.
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @param sent the number of bytes sent
+   * @param received the number of bytes received
+   */
+  public void recordBytes(String hostId, String orderType, long sent, long received);
+
+  /**
+   * Records a transferred segment.
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   */
+  public void recordSegment(String hostId, String orderType);
+
+  /**
+   * Records a return code received from the bank.
+   * @param hostId the bank host ID
+   * @param orderType the order type
+   * @param returnCode the symbolic name of the return code
+   */
+  public void recordReturnCode(String hostId, String orderType, String returnCode);
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+/**
+ * The phases of an EBICS transaction whose durations are measured.
+ * The phases may be nested: the build of a request includes the
+ * canonicalization and the signature of its authenticated parts.
+ *
+ */
+public enum Phase {
+
+  /** Generation of the user key pairs and certificates */
+  KEY_GENERATION,
+  /** Build of a request element, signatures included */
+  BUILD,
+  /** Schema validation of a request element */
+  VALIDATION,
+  /** Canonicalization of the authenticated XML parts */
+  CANONICALIZATION,
+  /** RSA signature of a request or of the order data */
+  SIGNATURE,
+  /** HTTP exchange with the bank server */
+  NETWORK,
+  /** Parse of a bank response */
+  PARSE
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The flight recorder event of a whole upload or download transaction.
+ *
+ */
+@Name("org.kopi.ebics.Transaction")
+@Label("EBICS Transaction")
+@Category("EBICS")
+@Description("Upload or download transaction, initialisation and receipt included")
+class TransactionEvent extends Event {
+
+  @Label("Host ID")
+  String			hostId;
+
+  @Label("Order Type")
+  String			orderType;
+
+  @Label("Transaction ID")
+  String			transactionId;
+
+  @Label("Segments")
+  int				segments;
+
+  @Label("Phase")
+  @Description("upload or download")
+  String			phase;
+
+  @Label("Outcome")
+  @Description("success, the EBICS return code or the error class")
+  String			outcome;
+}
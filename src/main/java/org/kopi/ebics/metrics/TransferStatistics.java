@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The sizes, segment counts and return codes of the exchanges
+ * with a bank for an order type.
+ *
+ */
+public class TransferStatistics implements TransferStatisticsMBean {
+
+  /**
+   * Constructs new empty <code>TransferStatistics</code>.
+   */
+  public TransferStatistics() {
+    requestSizes = new Histogram();
+    responseSizes = new Histogram();
+    segments = new AtomicLong();
+    returnCodes = new ConcurrentHashMap<String, AtomicLong>();
+  }
+
+  /**
+   * Records the sizes of a request and of its response.
+   * @param sent the number of bytes sent
+   * @param received the number of bytes received
+   */
+  public void recordBytes(long sent, long received) {
+    requestSizes.record(sent);
+    responseSizes.record(received);
+  }
+
+  /**
+   * Records a transferred segment.
+   */
+  public void recordSegment() {
+    segments.incrementAndGet();
+  }
+
+  /**
+   * Records a return code.
+   * @param returnCode the symbolic name of the return code
+   */
+  public void recordReturnCode(String returnCode) {
+    AtomicLong			counter;
+
+    counter = returnCodes.get(returnCode);
+    if (counter == null) {
+      returnCodes.putIfAbsent(returnCode, new AtomicLong());
+      counter = returnCodes.get(returnCode);
+    }
+    counter.incrementAndGet();
+  }
+
+  /**
+   * Returns the histogram of the request sizes in bytes.
+   * @return the request sizes
+   */
+  public Histogram getRequestSizes() {
+    return requestSizes;
+  }
+
+  /**
+   * Returns the histogram of the response sizes in bytes.
+   * @return the response sizes
+   */
+  public Histogram getResponseSizes() {
+    return responseSizes;
+  }
+
+  @Override
+  public long getRequests() {
+    return requestSizes.getCount();
+  }
+
+  @Override
+  public long getBytesSent() {
+    return requestSizes.getTotal();
+  }
+
+  @Override
+  public long getBytesReceived() {
+    return responseSizes.getTotal();
+  }
+
+  @Override
+  public long getRequestSize99thPercentile() {
+    return requestSizes.getValueAtPercentile(99);
+  }
+
+  @Override
+  public long getResponseSize99thPercentile() {
+    return responseSizes.getValueAtPercentile(99);
+  }
+
+  @Override
+  public long getSegments() {
+    return segments.get();
+  }
+
+  @Override
+  public Map<String, Long> getReturnCodes() {
+    Map<String, Long>		counts;
+
+    counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, AtomicLong> entry : returnCodes.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    return counts;
+  }
+
+  @Override
+  public void reset() {
+    requestSizes.reset();
+    responseSizes.reset();
+    segments.set(0);
+    returnCodes.clear();
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final Histogram			requestSizes;
+  private final Histogram			responseSizes;
+  private final AtomicLong			segments;
+  private final Map<String, AtomicLong>		returnCodes;
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the exchanges with a bank for an order type.
+ *
+ */
+public interface TransferStatisticsMBean {
+
+  /**
+   * Returns the number of requests sent.
+   * @return the number of requests
+   */
+  public long getRequests();
+
+  /**
+   * Returns the number of bytes sent.
+   * @return the number of bytes sent
+   */
+  public long getBytesSent();
+
+  /**
+   * Returns the number of bytes received.
+   * @return the number of bytes received
+   */
+  public long getBytesReceived();
+
+  /**
+   * Returns the 99th percentile of the request sizes in bytes.
+   * @return the 99th percentile of the request sizes
+   */
+  public long getRequestSize99thPercentile();
+
+  /**
+   * Returns the 99th percentile of the response sizes in bytes.
+   * @return the 99th percentile of the response sizes
+   */
+  public long getResponseSize99thPercentile();
+
+  /**
+   * Returns the number of transferred segments.
+   * @return the number of segments
+   */
+  public long getSegments();
+
+  /**
+   * Returns how many times each return code was received.
+   * @return the return code counts by symbolic name
+   */
+  public Map<String, Long> getReturnCodes();
+
+  /**
+   * Clears the statistics.
+   */
+  public void reset();
+}
@@ -27,6 +27,7 @@ import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.ResourceBundle;
 
+import org.apache.log4j.AsyncAppender;
 import org.apache.log4j.Level;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.Configuration;
@@ -122,6 +123,7 @@ public class DefaultConfiguration implements Configuration {
     IOUtils.createDirectories(getUsersDirectory());
 
     logger.setLogFile(getLogDirectory() + File.separator + getLogFileName());
+    ((DefaultEbicsLogger)logger).setAsyncEnabled(isLogAsyncEnabled(), getLogBufferSize());
     ((DefaultEbicsLogger)logger).setFileLoggingEnabled(isLogFileEnabled());
     ((DefaultEbicsLogger)logger).setLevel(getLogLevel());
 
@@ -153,6 +155,23 @@ public class DefaultConfiguration implements Configuration {
     return Level.ALL;
   }
 
+  /**
+   * Tells if the log events are written by a background thread.
+   * @return True if the asynchronous logging is enabled
+   */
+  public boolean isLogAsyncEnabled() {
+    return false;
+  }
+
+  /**
+   * Returns the maximum number of log events waiting to be written
+   * when the asynchronous logging is enabled.
+   * @return the log buffer size
+   */
+  public int getLogBufferSize() {
+    return AsyncAppender.DEFAULT_BUFFER_SIZE;
+  }
+
   @Override
   public String getConfigurationFile() {
     return rootDir + File.separator + getString("conf.file.name");
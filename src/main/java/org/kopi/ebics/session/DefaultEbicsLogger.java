@@ -20,7 +20,10 @@
 package org.kopi.ebics.session;
 
 import java.io.File;
+import java.util.function.Supplier;
 
+import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -32,6 +35,9 @@ import org.kopi.ebics.interfaces.EbicsLogger;
 
 /**
  * A simple EBICS transfers logger base on log4j framework.
+ * In asynchronous mode the console and file appenders are fed by a
+ * bounded queue drained on a background thread, so that the transfer
+ * threads do not wait for the disk.
  *
  * @author hacheni
  *
@@ -56,13 +62,104 @@ public class DefaultEbicsLogger implements EbicsLogger {
     fileAppender = new RollingFileAppender();
   }
 
+  /**
+   * Enables or disables the asynchronous mode. The events are then
+   * queued in a buffer of the given size and written by a background
+   * thread. The file is no longer flushed after each event, the
+   * pending events are written when the logger is closed.
+   * @param enabled the asynchronous mode state
+   * @param bufferSize the maximum number of pending events
+   */
+  public void setAsyncEnabled(boolean enabled, int bufferSize) {
+    boolean			console;
+    boolean			file;
+
+    console = isAttached(consoleAppender);
+    file = isAttached(fileAppender);
+    detach(consoleAppender);
+    detach(fileAppender);
+    if (asyncAppender != null) {
+      logger.removeAppender(asyncAppender);
+      asyncAppender.close();
+      asyncAppender = null;
+    }
+
+    if (enabled) {
+      asyncAppender = new AsyncAppender();
+      asyncAppender.setName("ebics-async");
+      asyncAppender.setBufferSize(bufferSize);
+      logger.addAppender(asyncAppender);
+    }
+    fileAppender.setImmediateFlush(!enabled);
+
+    if (console) {
+      attach(consoleAppender);
+    }
+    if (file) {
+      attach(fileAppender);
+    }
+  }
+
+  /**
+   * Writes the pending events and releases the appenders.
+   * The logger should not be used after being closed.
+   */
+  public void close() {
+    if (asyncAppender != null) {
+      logger.removeAppender(asyncAppender);
+      asyncAppender.close();
+      asyncAppender = null;
+    } else {
+      removeConsoleAppender();
+      removeFileAppender();
+      fileAppender.close();
+    }
+  }
+
+  /**
+   * Tells if an appender is attached to the current logger
+   * directly or through the asynchronous appender.
+   * @param appender the appender
+   * @return True if the appender is attached
+   */
+  private boolean isAttached(Appender appender) {
+    return asyncAppender == null ? logger.isAttached(appender) : asyncAppender.isAttached(appender);
+  }
+
+  /**
+   * Attaches an appender to the current logger or to the
+   * asynchronous appender when the asynchronous mode is enabled.
+   * @param appender the appender
+   */
+  private void attach(Appender appender) {
+    if (asyncAppender == null) {
+      logger.addAppender(appender);
+    } else {
+      asyncAppender.addAppender(appender);
+    }
+  }
+
+  /**
+   * Detaches an appender without closing it.
+   * @param appender the appender
+   */
+  private void detach(Appender appender) {
+    if (isAttached(appender)) {
+      if (asyncAppender == null) {
+        logger.removeAppender(appender);
+      } else {
+        asyncAppender.removeAppender(appender);
+      }
+    }
+  }
+
   /**
    * Enables or disable the console log
    * @param enabled the console log state
    */
   public void setConsoleLoggingEnabled(boolean enabled) {
     if (enabled) {
-      if (!logger.isAttached(consoleAppender)) {
+      if (!isAttached(consoleAppender)) {
 	addConsoleAppender();
       }
     } else {
@@ -76,7 +173,7 @@ public class DefaultEbicsLogger implements EbicsLogger {
    */
   public void setFileLoggingEnabled(boolean enabled) {
     if (enabled) {
-      if (!logger.isAttached(fileAppender)) {
+      if (!isAttached(fileAppender)) {
 	if (logFile != null) {
 	  addFileAppender();
 	}
@@ -97,16 +194,14 @@ public class DefaultEbicsLogger implements EbicsLogger {
     consoleAppender.setLayout(layout);
     consoleAppender.setTarget("System.out");
     consoleAppender.activateOptions();
-    logger.addAppender(consoleAppender);
+    attach(consoleAppender);
   }
 
   /**
    * Removes the console appender from the current logger.
    */
   private void removeConsoleAppender() {
-    if (logger.isAttached(consoleAppender)) {
-      logger.removeAppender(consoleAppender);
-    }
+    detach(consoleAppender);
   }
 
   /**
@@ -120,20 +215,18 @@ public class DefaultEbicsLogger implements EbicsLogger {
     fileAppender.setLayout(layout);
     fileAppender.setAppend(true);
     fileAppender.setFile(logFile.getAbsolutePath());
-    fileAppender.setImmediateFlush(true);
+    fileAppender.setImmediateFlush(asyncAppender == null);
     fileAppender.setMaxFileSize("5MB");
     fileAppender.setMaxBackupIndex(1);
     fileAppender.activateOptions();
-    logger.addAppender(fileAppender);
+    attach(fileAppender);
   }
 
   /**
    * Removes the file appender from the current logger.
    */
   private void removeFileAppender() {
-    if (logger.isAttached(fileAppender)) {
-      logger.removeAppender(fileAppender);
-    }
+    detach(fileAppender);
   }
 
   /**
@@ -157,11 +250,30 @@ public class DefaultEbicsLogger implements EbicsLogger {
     logger.info(message);
   }
 
+  @Override
+  public void info(Supplier<String> message) {
+    if (logger.isInfoEnabled()) {
+      logger.info(message.get());
+    }
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return logger.isInfoEnabled();
+  }
+
   @Override
   public void warn(String message) {
     logger.warn(message);
   }
 
+  @Override
+  public void warn(Supplier<String> message) {
+    if (logger.isEnabledFor(Level.WARN)) {
+      logger.warn(message.get());
+    }
+  }
+
   @Override
   public void warn(String message, Throwable throwable) {
     logger.warn(message, throwable);
@@ -198,5 +310,6 @@ public class DefaultEbicsLogger implements EbicsLogger {
   private Logger 				logger;
   private ConsoleAppender			consoleAppender;
   private RollingFileAppender			fileAppender;
+  private AsyncAppender				asyncAppender;
   private File					logFile;
 }
@@ -51,6 +51,7 @@ public class DefaultTraceManager implements TraceManager {
    */
   public DefaultTraceManager(File traceDir, boolean isTraceEnabled) {
     this.traceDir = traceDir;
+    threadTraceDir = new ThreadLocal<File>();
     cache = new FileCache(isTraceEnabled);
   }
 
@@ -75,7 +76,7 @@ public class DefaultTraceManager implements TraceManager {
       FileOutputStream		out;
       File			file;
 
-      file = IOUtils.createFile(traceDir, element.getName());
+      file = IOUtils.createFile(getTraceDirectory(), element.getName());
       out = new FileOutputStream(file);
       element.save(out);
       cache.add(file);
@@ -86,7 +87,7 @@ public class DefaultTraceManager implements TraceManager {
 
   @Override
   public void remove(EbicsRootElement element) {
-    cache.remove(element.getName());
+    cache.remove(new File(getTraceDirectory(), element.getName()));
   }
 
   @Override
@@ -94,9 +95,27 @@ public class DefaultTraceManager implements TraceManager {
     cache.clear();
   }
 
+  /**
+   * Sets the trace directory. The directory applies to the calling
+   * thread, so that sessions of different users running in parallel
+   * trace into their own directories. Threads that never set a
+   * directory use the last one set.
+   */
   @Override
   public void setTraceDirectory(String traceDir) {
     this.traceDir = new File(traceDir);
+    threadTraceDir.set(this.traceDir);
+  }
+
+  /**
+   * Returns the trace directory of the calling thread.
+   * @return the trace directory
+   */
+  private File getTraceDirectory() {
+    File		dir;
+
+    dir = threadTraceDir.get();
+    return dir != null ? dir : traceDir;
   }
 
   @Override
@@ -108,6 +127,7 @@ public class DefaultTraceManager implements TraceManager {
   // DATA MEMBERS
   // --------------------------------------------------------------------
 
-  private File				traceDir;
+  private volatile File			traceDir;
+  private final ThreadLocal<File>	threadTraceDir;
   private FileCache			cache;
 }
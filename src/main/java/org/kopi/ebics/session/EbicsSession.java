@@ -27,6 +27,7 @@ import java.util.Map;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.Configuration;
 import org.kopi.ebics.interfaces.EbicsUser;
+import org.kopi.ebics.xml.ValidationPolicy;
 
 
 /**
@@ -46,6 +47,7 @@ public class EbicsSession {
     this.user = user;
     this.configuration = configuration;
     parameters = new HashMap<String, String>();
+    validationPolicy = ValidationPolicy.getDefault();
   }
 
   /**
@@ -110,6 +112,21 @@ public class EbicsSession {
     return product;
   }
 
+  /**
+   * Sets the policy telling how the requests of the session are validated.
+   * @param validationPolicy the validation policy
+   */
+  public void setValidationPolicy(ValidationPolicy validationPolicy) {
+    this.validationPolicy = validationPolicy;
+  }
+
+  /**
+   * @return the validation policy of the session requests
+   */
+  public ValidationPolicy getValidationPolicy() {
+    return validationPolicy;
+  }
+
   /**
    * Adds a session parameter to use it in the transfer process.
    * @param key the parameter key
@@ -140,4 +157,5 @@ public class EbicsSession {
   private Configuration 			configuration;
   private Product				product;
   private Map<String, String>			parameters;
+  private ValidationPolicy			validationPolicy;
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads sharing a name prefix, so that the
+ * client worker threads are easy to spot in thread dumps and never keep
+ * the JVM alive.
+ *
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+  /**
+   * Constructs a new <code>NamedThreadFactory</code>.
+   * @param prefix the thread name prefix
+   */
+  public NamedThreadFactory(String prefix) {
+    this.prefix = prefix;
+    count = new AtomicInteger();
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread		thread;
+
+    thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final String			prefix;
+  private final AtomicInteger		count;
+}
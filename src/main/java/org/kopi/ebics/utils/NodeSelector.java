@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+
+/**
+ * Selects the elements of a DOM tree matching a fixed condition.
+ *
+ * <p>The selectors used for signing are built once and select by walking
+ * the tree in document order, instead of compiling an XPath expression and
+ * setting up an XPath context on each call. They hold no state and may be
+ * shared by any number of threads.
+ *
+ */
+public abstract class NodeSelector {
+
+  /**
+   * Selects the elements to authenticate, as <code>//*[@authenticate='true']</code>.
+   */
+  public static final NodeSelector		AUTHENTICATED = new NodeSelector() {
+    @Override
+    protected boolean matches(Element element) {
+      return "true".equals(element.getAttributeNS(null, "authenticate"));
+    }
+  };
+
+  /**
+   * Selects the signed info elements, as <code>//ds:SignedInfo</code>.
+   */
+  public static final NodeSelector		SIGNED_INFO = new NodeSelector() {
+    @Override
+    protected boolean matches(Element element) {
+      return "SignedInfo".equals(element.getLocalName())
+        && "http://www.w3.org/2000/09/xmldsig#".equals(element.getNamespaceURI());
+    }
+  };
+
+  /**
+   * Tells if an element is selected.
+   * @param element the element
+   * @return True if the element is selected.
+   */
+  protected abstract boolean matches(Element element);
+
+  /**
+   * Returns the selected elements below a given node, in document order.
+   * @param root the node to search
+   * @return the selected elements
+   */
+  public List<Element> selectAll(Node root) {
+    List<Element>		selected;
+
+    selected = new ArrayList<Element>();
+    select(root, selected, false);
+    return selected;
+  }
+
+  /**
+   * Returns the first selected element below a given node, in document order.
+   * @param root the node to search
+   * @return the first selected element, null if none.
+   */
+  public Element selectFirst(Node root) {
+    List<Element>		selected;
+
+    selected = new ArrayList<Element>(1);
+    select(root, selected, true);
+    return selected.isEmpty() ? null : selected.get(0);
+  }
+
+  /**
+   * Walks the tree below a given node in document order without recursion.
+   * @param root the node to search
+   * @param selected the selected elements
+   * @param first stop at the first selected element?
+   */
+  private void select(Node root, List<Element> selected, boolean first) {
+    Node			node;
+
+    node = root.getFirstChild();
+    while (node != null) {
+      if (node.getNodeType() == Node.ELEMENT_NODE && matches((Element) node)) {
+        selected.add((Element) node);
+        if (first) {
+          return;
+        }
+      }
+
+      if (node.getFirstChild() != null) {
+        node = node.getFirstChild();
+      } else {
+        while (node != root && node.getNextSibling() == null) {
+          node = node.getParentNode();
+        }
+        node = node == root ? null : node.getNextSibling();
+      }
+    }
+  }
+}
@@ -21,13 +21,13 @@ package org.kopi.ebics.utils;
 
 import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.utils.IgnoreAllErrorHandler;
-import org.apache.xpath.XPathAPI;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.exception.HttpStatusException;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.traversal.NodeIterator;
+import org.w3c.dom.Element;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -179,7 +179,7 @@ public class Utils {
    * 
    * <p>Thus, All the Elements with the attribute authenticate = true and their 
    * sub elements are considered for the canonization process. This is performed 
-   * via the {@link XPathAPI#selectNodeIterator(Node, String) selectNodeIterator(Node, String)}.
+   * via the {@link NodeSelector#AUTHENTICATED AUTHENTICATED} selector.
    * 
    * @param input the byte array XML input.
    * @return the canonized form of the given XML
@@ -189,10 +189,10 @@ public class Utils {
     DocumentBuilderFactory 		factory;
     DocumentBuilder			builder;
     Document				document;
-    NodeIterator			iter;
     ByteArrayOutputStream		output;
-    Node 				node;
+    long				start;
 
+    start = Metrics.start();
     try {
       factory = DocumentBuilderFactory.newInstance();
       factory.setNamespaceAware(true);
@@ -200,9 +200,8 @@ public class Utils {
       builder = factory.newDocumentBuilder();
       builder.setErrorHandler(new IgnoreAllErrorHandler());
       document = builder.parse(new ByteArrayInputStream(input));
-      iter = XPathAPI.selectNodeIterator(document, "//*[@authenticate='true']");
       output = new ByteArrayOutputStream();
-      while ((node = iter.nextNode()) != null) {
+      for (Element node : NodeSelector.AUTHENTICATED.selectAll(document)) {
         Canonicalizer 		canonicalizer;
 
         canonicalizer = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
@@ -212,6 +211,8 @@ public class Utils {
       return output.toByteArray();
     } catch (Exception e) {
       throw new EbicsException(e.getMessage());
+    } finally {
+      Metrics.stop(Phase.CANONICALIZATION, start);
     }
   }
 
@@ -275,6 +276,23 @@ public class Utils {
   private static byte[] encryptOrDecrypt(int mode, byte[] input, SecretKeySpec keySpec)
     throws EbicsException
   {
+    try {
+      return createCipher(mode, keySpec).doFinal(input);
+    } catch (GeneralSecurityException e) {
+      throw new EbicsException(e.getMessage());
+    }
+  }
+
+  /**
+   * Creates the cipher encrypting or decrypting order data with a given
+   * key spec. The cipher can be used to process data that does not fit
+   * in memory piece by piece.
+   * @param mode the encryption-decryption mode.
+   * @param keySpec the key spec.
+   * @return the initialized cipher.
+   * @throws EbicsException
+   */
+  public static Cipher createCipher(int mode, SecretKeySpec keySpec) throws EbicsException {
     IvParameterSpec		iv;
     Cipher 			cipher;
 
@@ -282,7 +300,7 @@ public class Utils {
     try {
       cipher = Cipher.getInstance("AES/CBC/ISO10126Padding", BouncyCastleProvider.PROVIDER_NAME);
       cipher.init(mode, keySpec, iv);
-      return cipher.doFinal(input);
+      return cipher;
     } catch (GeneralSecurityException e) {
       throw new EbicsException(e.getMessage());
     }
@@ -28,12 +28,13 @@ import java.io.PrintStream;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 
+import org.apache.xmlbeans.XmlBase64Binary;
 import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlError;
 import org.apache.xmlbeans.XmlObject;
@@ -45,6 +46,8 @@ import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.EbicsRootElement;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
 import org.kopi.ebics.session.EbicsSession;
 import org.kopi.ebics.session.OrderType;
 
@@ -57,7 +60,6 @@ public abstract class DefaultEbicsRootElement implements EbicsRootElement {
    */
   public DefaultEbicsRootElement(EbicsSession session) {
     this.session = session;
-    suggestedPrefixes = new HashMap<String, String>();
   }
 
   /**
@@ -179,28 +181,93 @@ public abstract class DefaultEbicsRootElement implements EbicsRootElement {
     }
   }
 
+  /**
+   * Validates the element against its schema as allowed by the
+   * {@link ValidationPolicy validation policy} of the session.
+   */
   @Override
   public void validate() throws EbicsException {
+    ValidationPolicy		policy;
     ArrayList<XmlError>		validationMessages;
     boolean     		isValid;
+    long			start;
+
+    policy = session == null ? ValidationPolicy.getDefault() : session.getValidationPolicy();
+    if (!policy.shouldValidate(getClass())) {
+      return;
+    }
 
     validationMessages = new ArrayList<XmlError>();
-    isValid = document.validate(new XmlOptions().setErrorListener(validationMessages));
+    start = Metrics.start();
+    if (policy.isStructuralOnly()) {
+      isValid = validateStructure(validationMessages);
+    } else {
+      isValid = document.validate(new XmlOptions().setErrorListener(validationMessages));
+    }
+    Metrics.stop(Phase.VALIDATION, start);
 
     if (!isValid) {
-      String			message;
-      Iterator<XmlError>    	iter;
-
-      iter = validationMessages.iterator();
-      message = "";
-      while (iter.hasNext()) {
-	if (!message.equals("")) {
-	  message += ";";
+      StringBuilder		message;
+
+      message = new StringBuilder();
+      for (XmlError error : validationMessages) {
+	if (message.length() > 0) {
+	  message.append(';');
 	}
-	message += iter.next().getMessage();
+	message.append(error.getMessage());
       }
 
-      throw new EbicsException(message);
+      throw new EbicsException(message.toString());
+    }
+  }
+
+  /**
+   * Validates a copy of the document with the content of its large base64
+   * elements replaced by a short value, so that the order data are not
+   * decoded only to be checked. The document itself is left untouched.
+   * @param validationMessages the list receiving the validation errors
+   * @return True if the document is valid
+   */
+  private boolean validateStructure(List<XmlError> validationMessages) {
+    XmlObject			copy;
+    List<XmlObject>		elements;
+    XmlCursor			cursor;
+
+    copy = document.copy();
+    elements = new ArrayList<XmlObject>();
+    cursor = copy.newCursor();
+    try {
+      while (!cursor.toNextToken().isNone()) {
+	if (cursor.isStart()
+	    && cursor.getObject() instanceof XmlBase64Binary
+	    && cursor.getTextValue().length() > LARGE_CONTENT_LENGTH)
+	{
+	  elements.add(cursor.getObject());
+	}
+      }
+    } finally {
+      cursor.dispose();
+    }
+
+    for (XmlObject element : elements) {
+      setContent(element, CONTENT_PLACEHOLDER);
+    }
+    return copy.validate(new XmlOptions().setErrorListener(validationMessages));
+  }
+
+  /**
+   * Replaces the text of an element without decoding it.
+   * @param element the element
+   * @param content the new text
+   */
+  private static void setContent(XmlObject element, String content) {
+    XmlCursor			cursor;
+
+    cursor = element.newCursor();
+    try {
+      cursor.setTextValue(content);
+    } finally {
+      cursor.dispose();
     }
   }
 
@@ -229,6 +296,22 @@ public abstract class DefaultEbicsRootElement implements EbicsRootElement {
 
   protected XmlObject			document;
   protected EbicsSession 		session;
-  private static Map<String, String> 	suggestedPrefixes;
+
+  /**
+   * The length above which the content of a base64 element is skipped
+   * by the structural validation, and its short valid replacement.
+   */
+  private static final int		LARGE_CONTENT_LENGTH = 1024;
+  private static final String		CONTENT_PLACEHOLDER = "AAAA";
+  private static final Map<String, String> suggestedPrefixes = new ConcurrentHashMap<String, String>();
+
+  static {
+    // the prefixes never change, register them once so that elements
+    // built in parallel always print with the same prefixes
+    suggestedPrefixes.put("http://www.ebics.org/H000", "");
+    suggestedPrefixes.put("http://www.ebics.org/H003", "");
+    suggestedPrefixes.put("http://www.ebics.org/S001", "");
+    suggestedPrefixes.put("http://www.w3.org/2000/09/xmldsig#", "ds");
+  }
   private static final long 		serialVersionUID = -3928957097145095177L;
 }
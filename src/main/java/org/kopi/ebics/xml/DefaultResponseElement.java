@@ -26,6 +26,8 @@ import org.apache.xmlbeans.XmlObject;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.exception.ReturnCode;
 import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
 
 
 /**
@@ -53,12 +55,17 @@ public abstract class DefaultResponseElement extends DefaultEbicsRootElement {
    * @throws EbicsException parse error
    */
   protected void parse(ContentFactory factory) throws EbicsException {
+    long			start;
+
+    start = Metrics.start();
     try {
       document = XmlObject.Factory.parse(factory.getContent());
     } catch (XmlException e) {
       throw new EbicsException(e.getMessage());
     } catch (IOException e) {
       throw new EbicsException(e.getMessage());
+    } finally {
+      Metrics.stop(Phase.PARSE, start);
     }
   }
 
@@ -71,6 +78,7 @@ public abstract class DefaultResponseElement extends DefaultEbicsRootElement {
   }
 
   protected void checkReturnCode(ReturnCode returnCode) throws EbicsException {
+    Metrics.recordReturnCode(returnCode);
     if (!returnCode.isOk()) {
       returnCode.throwException();
     }
@@ -83,10 +83,10 @@ public class DownloadInitializationRequestElement extends InitializationRequestE
         product = EbicsXmlFactory.createProduct(session.getProduct().getLanguage(), session.getProduct().getName());
         authentication = EbicsXmlFactory.createAuthentication(session.getConfiguration().getAuthenticationVersion(),
                 "http://www.w3.org/2001/04/xmlenc#sha256",
-                decodeHex(session.getUser().getPartner().getBank().getX002Digest()));
+                getBankX002Digest());
         encryption = EbicsXmlFactory.createEncryption(session.getConfiguration().getEncryptionVersion(),
                 "http://www.w3.org/2001/04/xmlenc#sha256",
-                decodeHex(session.getUser().getPartner().getBank().getE002Digest()));
+                getBankE002Digest());
         bankPubKeyDigests = EbicsXmlFactory.createBankPubKeyDigests(authentication, encryption);
         orderType = EbicsXmlFactory.createOrderType(type.toString());
         if (type.equals(org.kopi.ebics.session.OrderType.FDL)) {
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.xml;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.schema.h000.EbicsHEVRequestDocument;
+import org.kopi.ebics.schema.h000.HEVRequestDataType;
+import org.kopi.ebics.session.EbicsSession;
+
+/**
+ * The <code>HEVRequestElement</code> asks the bank server which EBICS
+ * versions it supports. The request is neither signed nor encrypted.
+ *
+ */
+public class HEVRequestElement extends DefaultEbicsRootElement {
+
+  /**
+   * Constructs a new HEV request element.
+   * @param session the ebics session.
+   */
+  public HEVRequestElement(EbicsSession session) {
+    super(session);
+  }
+
+  @Override
+  public void build() throws EbicsException {
+    EbicsHEVRequestDocument		request;
+    HEVRequestDataType			data;
+
+    request = EbicsHEVRequestDocument.Factory.newInstance();
+    data = request.addNewEbicsHEVRequest();
+    data.setHostID(session.getBankID());
+    document = request;
+  }
+
+  @Override
+  public String getName() {
+    return "HEVRequest.xml";
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private static final long 		serialVersionUID = 6372840551937211093L;
+}
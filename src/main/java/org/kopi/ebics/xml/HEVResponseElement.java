@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.xml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.exception.ReturnCode;
+import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.schema.h000.EbicsHEVResponseDocument;
+import org.kopi.ebics.schema.h000.HEVResponseDataType;
+import org.kopi.ebics.schema.h000.HEVResponseDataType.VersionNumber;
+
+/**
+ * The <code>HEVResponseElement</code> contains the EBICS versions
+ * supported by the bank server.
+ *
+ */
+public class HEVResponseElement extends DefaultResponseElement {
+
+  /**
+   * Creates a new <code>HEVResponseElement</code> from a given content factory.
+   * @param factory the content factory enclosing the bank response
+   */
+  public HEVResponseElement(ContentFactory factory) {
+    super(factory, "HEVResponse");
+  }
+
+  /**
+   * Returns the supported EBICS versions by schema version,
+   * for example 02.40 for H003.
+   * @return the supported versions.
+   */
+  public Map<String, String> getVersions() {
+    Map<String, String>		versions;
+
+    versions = new LinkedHashMap<String, String>();
+    for (VersionNumber version : response.getVersionNumberArray()) {
+      versions.put(version.getProtocolVersion(), version.getStringValue());
+    }
+
+    return versions;
+  }
+
+  @Override
+  public void build() throws EbicsException {
+    parse(factory);
+    response = ((EbicsHEVResponseDocument)document).getEbicsHEVResponse();
+    returnCode = ReturnCode.toReturnCode(response.getSystemReturnCode().getReturnCode(),
+                                         response.getSystemReturnCode().getReportText());
+    report();
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private HEVResponseDataType		response;
+  private static final long 		serialVersionUID = -2730594681957311207L;
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.schema.h003.HPDProtocolParamsType;
+import org.kopi.ebics.schema.h003.HPDResponseOrderDataDocument;
+import org.kopi.ebics.schema.h003.HPDResponseOrderDataType;
+
+/**
+ * The <code>HPDResponseOrderDataElement</code> contains the bank
+ * parameters: the supported protocol versions and features.
+ *
+ */
+public class HPDResponseOrderDataElement extends DefaultResponseElement {
+
+  /**
+   * Creates a new <code>HPDResponseOrderDataElement</code> from a given
+   * content factory.
+   * @param factory the content factory.
+   */
+  public HPDResponseOrderDataElement(ContentFactory factory) {
+    super(factory, "HPDData");
+  }
+
+  /**
+   * Returns the supported EBICS schema versions, for example H003.
+   * @return the supported protocol versions.
+   */
+  public List<String> getProtocolVersions() {
+    List<String>		versions;
+
+    versions = new ArrayList<String>();
+    if (params.getVersion() != null) {
+      for (Object version : params.getVersion().getProtocol()) {
+        versions.add(version.toString());
+      }
+    }
+
+    return versions;
+  }
+
+  /**
+   * Tells if the bank supports the recovery of interrupted transactions.
+   * @return True if the recovery is supported.
+   */
+  public boolean isRecoverySupported() {
+    return params.getRecovery() == null || params.getRecovery().getSupported();
+  }
+
+  /**
+   * Tells if the bank supports the download of the customer data (HKD, HTD).
+   * @return True if the customer data download is supported.
+   */
+  public boolean isClientDataDownloadSupported() {
+    return params.getClientDataDownload() != null && params.getClientDataDownload().getSupported();
+  }
+
+  @Override
+  public void build() throws EbicsException {
+    parse(factory);
+    response = ((HPDResponseOrderDataDocument)document).getHPDResponseOrderData();
+    params = response.getProtocolParams();
+  }
+
+  @Override
+  public String getName() {
+    return "HPDData.xml";
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private HPDResponseOrderDataType	response;
+  private HPDProtocolParamsType		params;
+  private static final long 		serialVersionUID = -6471201530857924123L;
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.xml;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.schema.h003.AuthOrderInfoType;
+import org.kopi.ebics.schema.h003.HTDReponseOrderDataType;
+import org.kopi.ebics.schema.h003.HTDResponseOrderDataDocument;
+import org.kopi.ebics.schema.h003.UserPermissionType;
+
+/**
+ * The <code>HTDResponseOrderDataElement</code> contains the customer and
+ * subscriber data the bank holds, among them the order types available
+ * to the partner and the subscriber.
+ *
+ */
+public class HTDResponseOrderDataElement extends DefaultResponseElement {
+
+  /**
+   * Creates a new <code>HTDResponseOrderDataElement</code> from a given
+   * content factory.
+   * @param factory the content factory.
+   */
+  public HTDResponseOrderDataElement(ContentFactory factory) {
+    super(factory, "HTDData");
+  }
+
+  /**
+   * Returns the order types the bank offers to the partner.
+   * @return the partner order types.
+   */
+  public Set<String> getPartnerOrderTypes() {
+    Set<String>			orderTypes;
+
+    orderTypes = new LinkedHashSet<String>();
+    if (response.getPartnerInfo() != null) {
+      for (AuthOrderInfoType orderInfo : response.getPartnerInfo().getOrderInfoArray()) {
+        orderTypes.add(orderInfo.getOrderType());
+      }
+    }
+
+    return orderTypes;
+  }
+
+  /**
+   * Returns the order types the subscriber is allowed to use.
+   * @return the subscriber order types.
+   */
+  public Set<String> getUserOrderTypes() {
+    Set<String>			orderTypes;
+
+    orderTypes = new LinkedHashSet<String>();
+    if (response.getUserInfo() != null) {
+      for (UserPermissionType permission : response.getUserInfo().getPermissionArray()) {
+        if (permission.getOrderTypes() != null) {
+          for (Object orderType : permission.getOrderTypes()) {
+            orderTypes.add(orderType.toString());
+          }
+        }
+      }
+    }
+
+    return orderTypes;
+  }
+
+  @Override
+  public void build() throws EbicsException {
+    parse(factory);
+    response = ((HTDResponseOrderDataDocument)document).getHTDResponseOrderData();
+  }
+
+  @Override
+  public String getName() {
+    return "HTDData.xml";
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private HTDReponseOrderDataType	response;
+  private static final long 		serialVersionUID = 2915476043780816428L;
+}
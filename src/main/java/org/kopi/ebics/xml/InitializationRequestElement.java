@@ -129,6 +129,32 @@ public abstract class InitializationRequestElement extends DefaultEbicsRootEleme
     }
   }
 
+  /**
+   * Returns the decoded digest of the bank encryption key.
+   * @return the decoded digest
+   * @throws EbicsException no HPB request was performed before
+   */
+  protected byte[] getBankE002Digest() throws EbicsException {
+    return checkDigest(session.getUser().getPartner().getBank().getE002DigestValue());
+  }
+
+  /**
+   * Returns the decoded digest of the bank authentication key.
+   * @return the decoded digest
+   * @throws EbicsException no HPB request was performed before
+   */
+  protected byte[] getBankX002Digest() throws EbicsException {
+    return checkDigest(session.getUser().getPartner().getBank().getX002DigestValue());
+  }
+
+  private static byte[] checkDigest(byte[] digest) throws EbicsException {
+    if (digest == null) {
+      throw new EbicsException("Bank digest is empty, HPB request must be performed before");
+    }
+
+    return digest;
+  }
+
   /**
    * Generates the upload transaction key
    * @return the transaction key
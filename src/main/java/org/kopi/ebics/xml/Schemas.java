@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.xml;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.SchemaTypeSystem;
+import org.apache.xmlbeans.XmlBeans;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.kopi.ebics.schema.h000.EbicsHEVRequestDocument;
+import org.kopi.ebics.schema.h003.EbicsRequestDocument;
+import org.kopi.ebics.schema.s001.UserSignatureDataDocument;
+import org.kopi.ebics.schema.xmldsig.SignatureDocument;
+
+
+/**
+ * Access to the XmlBeans type systems of the EBICS schemas.
+ *
+ * <p>XmlBeans loads the compiled schema types and their implementation
+ * classes lazily, the first request of each kind pays for it. The type
+ * systems may be warmed up once at startup instead.
+ *
+ */
+public final class Schemas {
+
+  private Schemas() {}
+
+  /**
+   * Resolves the EBICS type systems, loads the implementation classes of
+   * all their types and runs the validator once on each document type.
+   * Calling it again does nothing more.
+   * @return the number of schema types loaded
+   */
+  public static synchronized int warmUp() {
+    Set<SchemaTypeSystem>	systems;
+
+    if (warmedUp > 0) {
+      return warmedUp;
+    }
+
+    systems = new LinkedHashSet<SchemaTypeSystem>();
+    systems.add(EbicsRequestDocument.type.getTypeSystem());
+    systems.add(EbicsHEVRequestDocument.type.getTypeSystem());
+    systems.add(UserSignatureDataDocument.type.getTypeSystem());
+    systems.add(SignatureDocument.type.getTypeSystem());
+
+    for (SchemaTypeSystem system : systems) {
+      system.resolve();
+      for (SchemaType type : system.globalTypes()) {
+        warmedUp += load(type);
+      }
+      for (SchemaType type : system.documentTypes()) {
+        warmedUp += load(type);
+        validate(type);
+      }
+    }
+
+    return warmedUp;
+  }
+
+  /**
+   * Loads the implementation class of a type and of its anonymous types.
+   * @param type the schema type
+   * @return the number of types loaded
+   */
+  private static int load(SchemaType type) {
+    int				count;
+
+    count = 1;
+    if (type.getFullJavaImplName() != null) {
+      try {
+        Class.forName(type.getFullJavaImplName(), true, Schemas.class.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        // the type is still loaded lazily on first use
+      }
+    }
+    for (SchemaType anonymous : type.getAnonymousTypes()) {
+      count += load(anonymous);
+    }
+
+    return count;
+  }
+
+  /**
+   * Validates an empty root element of a document type, the result does
+   * not matter.
+   * @param type the document type
+   */
+  private static void validate(SchemaType type) {
+    XmlObject			document;
+    XmlCursor			cursor;
+
+    document = XmlBeans.getContextTypeLoader().newInstance(type, null);
+    cursor = document.newCursor();
+    try {
+      cursor.toNextToken();
+      cursor.beginElement(type.getDocumentElementName());
+    } finally {
+      cursor.dispose();
+    }
+    document.validate();
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private static int				warmedUp;
+}
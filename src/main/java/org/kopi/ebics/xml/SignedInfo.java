@@ -27,9 +27,11 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.utils.IgnoreAllErrorHandler;
-import org.apache.xpath.XPathAPI;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.EbicsUser;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
+import org.kopi.ebics.utils.NodeSelector;
 import org.kopi.ebics.schema.xmldsig.CanonicalizationMethodType;
 import org.kopi.ebics.schema.xmldsig.DigestMethodType;
 import org.kopi.ebics.schema.xmldsig.ReferenceType;
@@ -129,22 +131,50 @@ public class SignedInfo extends DefaultEbicsRootElement {
    * @throws EbicsException signature fails.
    */
   public byte[] sign(byte[] toSign) throws EbicsException {
+    byte[]				canonized;
+    long				start;
+
+    canonized = canonize(toSign);
+    start = Metrics.start();
+    try {
+      return user.authenticate(canonized);
+    } catch(Exception e) {
+      throw new EbicsException(e.getMessage());
+    } finally {
+      Metrics.stop(Phase.SIGNATURE, start);
+    }
+  }
+
+  /**
+   * Returns the canonical form of the SignedInfo element contained
+   * in a given request. This is the input signed by {@link #sign(byte[]) sign}.
+   * @param toSign the request containing the SignedInfo element
+   * @return the canonized SignedInfo element
+   * @throws EbicsException canonicalization fails.
+   */
+  public byte[] canonize(byte[] toSign) throws EbicsException {
     try {
       DocumentBuilderFactory 		factory;
       DocumentBuilder			builder;
       Document				document;
       Node 				node;
       Canonicalizer 			canonicalizer;
+      long				start;
 
+      start = Metrics.start();
       factory = DocumentBuilderFactory.newInstance();
       factory.setNamespaceAware(true);
       factory.setValidating(true);
       builder = factory.newDocumentBuilder();
       builder.setErrorHandler(new IgnoreAllErrorHandler());
       document = builder.parse(new ByteArrayInputStream(toSign));
-      node = XPathAPI.selectSingleNode(document, "//ds:SignedInfo");
+      node = NodeSelector.SIGNED_INFO.selectFirst(document);
       canonicalizer = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
-      return user.authenticate(canonicalizer.canonicalizeSubtree(node));
+      try {
+        return canonicalizer.canonicalizeSubtree(node);
+      } finally {
+        Metrics.stop(Phase.CANONICALIZATION, start);
+      }
     } catch(Exception e) {
       throw new EbicsException(e.getMessage());
     }
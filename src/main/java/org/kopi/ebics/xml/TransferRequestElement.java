@@ -63,10 +63,27 @@ public abstract class TransferRequestElement extends DefaultEbicsRootElement {
     this.transactionId = transactionId;
   }
 
+  /**
+   * Sets the template this request is printed from. The request is
+   * then spliced from the fixed parts of the template instead of being
+   * built, canonized and printed again for each segment.
+   * @param template the transfer request template
+   */
+  public void setTemplate(TransferRequestTemplate template) {
+    this.template = template;
+  }
+
   @Override
   public void build() throws EbicsException {
     SignedInfo			signedInfo;
 
+    if (template != null) {
+      request = template.print(segmentNumber, lastSegment);
+      if (request != null) {
+        return;
+      }
+    }
+
     buildTransfer();
     signedInfo = new SignedInfo(session.getUser(), getDigest());
     signedInfo.build();
@@ -85,10 +102,29 @@ public abstract class TransferRequestElement extends DefaultEbicsRootElement {
    * @throws EbicsException Failed to retrieve the digest value.
    */
   public byte[] getDigest() throws EbicsException {
+    return digest(getAuthenticatedContent());
+  }
+
+  /**
+   * Returns the canonical form of the authenticated XML portions.
+   * @return the canonized authenticated portions.
+   * @throws EbicsException Failed to canonize the request.
+   */
+  public byte[] getAuthenticatedContent() throws EbicsException {
     addNamespaceDecl("ds", "http://www.w3.org/2000/09/xmldsig#");
 
+    return Utils.canonize(toByteArray());
+  }
+
+  /**
+   * Returns the SHA-256 digest of the given authenticated portions.
+   * @param content the canonized authenticated portions
+   * @return the digest value.
+   * @throws EbicsException Failed to compute the digest value.
+   */
+  static byte[] digest(byte[] content) throws EbicsException {
     try {
-      return MessageDigest.getInstance("SHA-256", "BC").digest(Utils.canonize(toByteArray()));
+      return MessageDigest.getInstance("SHA-256", "BC").digest(content);
     } catch (NoSuchAlgorithmException e) {
       throw new EbicsException(e.getMessage());
     } catch (NoSuchProviderException e) {
@@ -104,8 +140,29 @@ public abstract class TransferRequestElement extends DefaultEbicsRootElement {
     return type.toString();
   }
 
+  @Override
+  public byte[] prettyPrint() throws EbicsException {
+    if (request != null) {
+      return request;
+    }
+
+    return super.prettyPrint();
+  }
+
+  @Override
+  public void validate() throws EbicsException {
+    // the template was validated once when it was built
+    if (request == null) {
+      super.validate();
+    }
+  }
+
   @Override
   public byte[] toByteArray() {
+    if (request != null) {
+      return request;
+    }
+
     setSaveSuggestedPrefixes("http://www.ebics.org/H003", "");
 
     return super.toByteArray();
@@ -124,6 +181,8 @@ public abstract class TransferRequestElement extends DefaultEbicsRootElement {
   protected int				segmentNumber;
   protected boolean			lastSegment;
   protected byte[]			transactionId;
+  private TransferRequestTemplate	template;
+  private byte[]			request;
   private OrderType			type;
   private String 			name;
   private static final long 		serialVersionUID = -4212072825371398259L;
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.apache.commons.codec.binary.Base64;
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
+import org.kopi.ebics.schema.h003.EbicsRequestDocument;
+import org.kopi.ebics.schema.h003.EbicsRequestDocument.EbicsRequest;
+import org.kopi.ebics.session.EbicsSession;
+import org.kopi.ebics.session.OrderType;
+
+
+/**
+ * Template of the segment requests of one transfer transaction.
+ *
+ * <p>The segment requests of a transaction only differ by the segment
+ * number, the last segment flag, the authentication signature and, for
+ * uploads, the order data which is streamed anyway. The template builds,
+ * canonizes and prints one request with markers in place of these values,
+ * once for the intermediate segments and once for the last one, and keeps
+ * the fixed parts around them. A segment request is then spliced from
+ * these parts: only the digest of its authenticated header and the
+ * signature are computed again.
+ *
+ */
+public class TransferRequestTemplate {
+
+  /**
+   * Constructs a new <code>TransferRequestTemplate</code>.
+   * @param session the current ebics session
+   * @param type the order type
+   * @param transactionId the transaction ID
+   * @param upload is it an upload transaction?
+   */
+  public TransferRequestTemplate(EbicsSession session,
+                                 OrderType type,
+                                 byte[] transactionId,
+                                 boolean upload)
+  {
+    this.session = session;
+    this.type = type;
+    this.transactionId = transactionId;
+    this.upload = upload;
+  }
+
+  /**
+   * Tells if the template prints the requests of the given transaction.
+   * @param type the order type
+   * @param transactionId the transaction ID
+   * @param upload is it an upload transaction?
+   * @return True if the template belongs to the transaction.
+   */
+  public boolean matches(OrderType type, byte[] transactionId, boolean upload) {
+    return this.type == type
+      && this.upload == upload
+      && Arrays.equals(this.transactionId, transactionId);
+  }
+
+  /**
+   * Prints the signed request of a given segment.
+   * @param segmentNumber the segment number
+   * @param lastSegment is it the last segment?
+   * @return the printed request, null if the request cannot be
+   *         spliced and should be built as usual.
+   * @throws EbicsException
+   */
+  public byte[] print(int segmentNumber, boolean lastSegment) throws EbicsException {
+    Parts			parts;
+    byte[]			number;
+    byte[]			digest;
+    byte[]			signature;
+    long			start;
+
+    parts = getParts(lastSegment);
+    if (parts == null) {
+      return null;
+    }
+
+    number = Integer.toString(segmentNumber).getBytes();
+    digest = Base64.encodeBase64(TransferRequestElement.digest(parts.authenticated.fill(number)));
+    start = Metrics.start();
+    try {
+      signature = session.getUser().authenticate(parts.signedInfo.fill(digest));
+    } catch (GeneralSecurityException e) {
+      throw new EbicsException(e.getMessage());
+    } finally {
+      Metrics.stop(Phase.SIGNATURE, start);
+    }
+
+    return parts.request.fill(number, digest, Base64.encodeBase64(signature));
+  }
+
+  /**
+   * Returns the fixed parts of the intermediate or of the last segment
+   * requests, building them on first use.
+   * @param lastSegment is it the last segment?
+   * @return the fixed parts, null if the markers cannot be located.
+   * @throws EbicsException
+   */
+  private synchronized Parts getParts(boolean lastSegment) throws EbicsException {
+    int				index;
+
+    index = lastSegment ? 1 : 0;
+    if (parts[index] == null) {
+      parts[index] = createParts(lastSegment);
+    }
+
+    return parts[index] == NO_PARTS ? null : parts[index];
+  }
+
+  /**
+   * Builds a request with markers in place of the segment number and
+   * of the signature and splits it around them.
+   * @param lastSegment is it the last segment?
+   * @return the fixed parts, NO_PARTS if the markers cannot be located.
+   * @throws EbicsException
+   */
+  private Parts createParts(boolean lastSegment) throws EbicsException {
+    TransferRequestElement	element;
+    EbicsRequest		request;
+    SignedInfo			signedInfo;
+    byte[]			authenticated;
+    byte[]			digest;
+    byte[]			number;
+
+    if (upload) {
+      element = new UploadTransferRequestElement(session, type, MARKER_SEGMENT_NUMBER, lastSegment, transactionId, null);
+    } else {
+      element = new DownloadTransferRequestElement(session, type, MARKER_SEGMENT_NUMBER, lastSegment, transactionId);
+    }
+
+    element.buildTransfer();
+    authenticated = element.getAuthenticatedContent();
+    digest = TransferRequestElement.digest(authenticated);
+    signedInfo = new SignedInfo(session.getUser(), digest);
+    signedInfo.build();
+    request = ((EbicsRequestDocument)element.document).getEbicsRequest();
+    request.setAuthSignature(signedInfo.getSignatureType());
+    number = Integer.toString(MARKER_SEGMENT_NUMBER).getBytes();
+    digest = Base64.encodeBase64(digest);
+
+    try {
+      Parts			parts;
+
+      parts = new Parts();
+      parts.authenticated = new Splice(authenticated, number);
+      parts.signedInfo = new Splice(signedInfo.canonize(element.toByteArray()), digest);
+      request.getAuthSignature().setSignatureValue(EbicsXmlFactory.createSignatureValueType(MARKER_SIGNATURE));
+      element.validate();
+      parts.request = new Splice(element.prettyPrint(), number, digest, Base64.encodeBase64(MARKER_SIGNATURE));
+      return parts;
+    } catch (IllegalArgumentException e) {
+      return NO_PARTS;
+    }
+  }
+
+  /**
+   * The fixed parts of the requests of the intermediate or of the last
+   * segments.
+   */
+  private static class Parts {
+
+    /**
+     * The canonized authenticated header around the segment number.
+     */
+    Splice			authenticated;
+
+    /**
+     * The canonized SignedInfo element around the digest value.
+     */
+    Splice			signedInfo;
+
+    /**
+     * The printed request around the segment number, the digest value
+     * and the signature value.
+     */
+    Splice			request;
+  }
+
+  /**
+   * A content split around markers that each occur exactly once in it.
+   */
+  private static class Splice {
+
+    /**
+     * Splits a content around the given markers.
+     * @param content the content
+     * @param markers the markers
+     * @throws IllegalArgumentException a marker is missing or is not unique.
+     */
+    Splice(byte[] content, byte[]... markers) {
+      int[]			positions;
+      int			offset;
+
+      positions = new int[markers.length];
+      order = new int[markers.length];
+      for (int i = 0; i < markers.length; i++) {
+        positions[i] = indexOf(content, markers[i], 0);
+        if (positions[i] == -1 || indexOf(content, markers[i], positions[i] + 1) != -1) {
+          throw new IllegalArgumentException("Template marker not found or not unique");
+        }
+        order[i] = i;
+      }
+
+      // markers in order of appearance
+      for (int i = 1; i < order.length; i++) {
+        for (int j = i; j > 0 && positions[order[j]] < positions[order[j - 1]]; j--) {
+          int		swap = order[j];
+
+          order[j] = order[j - 1];
+          order[j - 1] = swap;
+        }
+      }
+
+      chunks = new byte[markers.length + 1][];
+      offset = 0;
+      for (int i = 0; i < order.length; i++) {
+        chunks[i] = Arrays.copyOfRange(content, offset, positions[order[i]]);
+        offset = positions[order[i]] + markers[order[i]].length;
+      }
+      chunks[order.length] = Arrays.copyOfRange(content, offset, content.length);
+    }
+
+    /**
+     * Returns the content with the given values in place of the markers.
+     * @param values the values, in the order of the markers
+     * @return the spliced content
+     */
+    byte[] fill(byte[]... values) {
+      ByteArrayOutputStream	output;
+
+      output = new ByteArrayOutputStream(chunks[0].length + chunks[chunks.length - 1].length + 1024);
+      try {
+        output.write(chunks[0]);
+        for (int i = 0; i < order.length; i++) {
+          output.write(values[order[i]]);
+          output.write(chunks[i + 1]);
+        }
+      } catch (IOException e) {
+        // not thrown by a byte array output stream
+      }
+
+      return output.toByteArray();
+    }
+
+    private static int indexOf(byte[] array, byte[] pattern, int from) {
+      search:
+      for (int i = from; i <= array.length - pattern.length; i++) {
+        for (int j = 0; j < pattern.length; j++) {
+          if (array[i + j] != pattern[j]) {
+            continue search;
+          }
+        }
+        return i;
+      }
+
+      return -1;
+    }
+
+    private final byte[][]		chunks;
+    private final int[]			order;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final EbicsSession		session;
+  private final OrderType		type;
+  private final byte[]			transactionId;
+  private final boolean			upload;
+  private final Parts[]			parts = new Parts[2];
+
+  private static final Parts		NO_PARTS = new Parts();
+
+  /**
+   * Segment number of the template requests, printed in place of the
+   * real one.
+   */
+  private static final int		MARKER_SEGMENT_NUMBER = 987654321;
+
+  /**
+   * Signature value of the template requests, printed in place of the
+   * real one.
+   */
+  private static final byte[]		MARKER_SIGNATURE = "AuthSignatureValue".getBytes();
+}
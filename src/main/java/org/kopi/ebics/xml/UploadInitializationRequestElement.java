@@ -22,6 +22,7 @@ package org.kopi.ebics.xml;
 import org.kopi.ebics.client.Partner;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.io.FileContentFactory;
 import org.kopi.ebics.io.Splitter;
 import org.kopi.ebics.schema.h003.DataEncryptionInfoType.EncryptionPubKeyDigest;
 import org.kopi.ebics.schema.h003.*;
@@ -41,6 +42,7 @@ import org.kopi.ebics.session.EbicsSession;
 import org.kopi.ebics.utils.Utils;
 
 import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
@@ -77,6 +79,30 @@ public class UploadInitializationRequestElement extends InitializationRequestEle
         this.orderId = orderId;
     }
 
+    /**
+     * Constructs a new <code>UInitializationRequestElement</code> for uploads initializations
+     * of a file. The file is signed, compressed and encrypted as a stream and is never
+     * loaded in memory as a whole.
+     *
+     * @param session   the current ebics session.
+     * @param orderType the upload order type
+     * @param userFile  the file to be uploaded
+     * @throws EbicsException
+     */
+    public UploadInitializationRequestElement(EbicsSession session,
+                                              org.kopi.ebics.session.OrderType orderType,
+                                              OrderAttributeType.Enum orderAttribute,
+                                              Integer orderId,
+                                              File userFile)
+            throws EbicsException {
+        super(session, orderType, generateName(orderType));
+        this.userFile = userFile;
+        keySpec = new SecretKeySpec(nonce, "EAS");
+        splitter = new Splitter(userFile);
+        this.orderAttribute = orderAttribute;
+        this.orderId = orderId;
+    }
+
     @Override
     public void buildInitialization() throws EbicsException {
         EbicsRequest request;
@@ -95,23 +121,31 @@ public class UploadInitializationRequestElement extends InitializationRequestEle
         OrderType orderType;
         FileFormatType fileFormat;
 
-        userSignature = new UserSignature(session.getUser(),
-                generateName("UserSignature"),
-                session.getConfiguration().getSignatureVersion(),
-                userData);
+        if (userFile != null) {
+            userSignature = new UserSignature(session.getUser(),
+                    generateName("UserSignature"),
+                    session.getConfiguration().getSignatureVersion(),
+                    new FileContentFactory(userFile));
+        } else {
+            userSignature = new UserSignature(session.getUser(),
+                    generateName("UserSignature"),
+                    session.getConfiguration().getSignatureVersion(),
+                    userData);
+        }
         userSignature.build();
         userSignature.validate();
 
+        splitter.setMaxSegmentSize(session.getUser().getPartner().getBank().getSegmentSize());
         splitter.readInput(session.getConfiguration().isCompressionEnabled(), keySpec);
 
         mutable = EbicsXmlFactory.createMutableHeaderType("Initialisation", null);
         product = EbicsXmlFactory.createProduct(session.getProduct().getLanguage(), session.getProduct().getName());
         authentication = EbicsXmlFactory.createAuthentication(session.getConfiguration().getAuthenticationVersion(),
                 "http://www.w3.org/2001/04/xmlenc#sha256",
-                decodeHex(session.getUser().getPartner().getBank().getX002Digest()));
+                getBankX002Digest());
         encryption = EbicsXmlFactory.createEncryption(session.getConfiguration().getEncryptionVersion(),
                 "http://www.w3.org/2001/04/xmlenc#sha256",
-                decodeHex(session.getUser().getPartner().getBank().getE002Digest()));
+                getBankE002Digest());
         bankPubKeyDigests = EbicsXmlFactory.createBankPubKeyDigests(authentication, encryption);
         orderType = EbicsXmlFactory.createOrderType(type.toString());
         fileFormat = EbicsXmlFactory.createFileFormatType(session.getConfiguration().getLocale().getCountry().toUpperCase(),
@@ -166,7 +200,7 @@ public class UploadInitializationRequestElement extends InitializationRequestEle
         header = EbicsXmlFactory.createEbicsRequestHeader(true, mutable, xstatic);
         encryptionPubKeyDigest = EbicsXmlFactory.createEncryptionPubKeyDigest(session.getConfiguration().getEncryptionVersion(),
                 "http://www.w3.org/2001/04/xmlenc#sha256",
-                decodeHex(session.getUser().getPartner().getBank().getE002Digest()));
+                getBankE002Digest());
         signatureData = EbicsXmlFactory.createSignatureData(true, Utils.encrypt(Utils.zip(userSignature.prettyPrint()), keySpec));
         dataEncryptionInfo = EbicsXmlFactory.createDataEncryptionInfo(true,
                 encryptionPubKeyDigest,
@@ -201,11 +235,19 @@ public class UploadInitializationRequestElement extends InitializationRequestEle
      *
      * @param segment the segment number
      * @return the content of the given segment
+     * @throws EbicsException
      */
-    public ContentFactory getContent(int segment) {
+    public ContentFactory getContent(int segment) throws EbicsException {
         return splitter.getContent(segment);
     }
 
+    /**
+     * Releases the temporary files holding the encrypted content.
+     */
+    public void dispose() {
+        splitter.dispose();
+    }
+
     /**
      * Returns the total segment number.
      *
@@ -221,6 +263,7 @@ public class UploadInitializationRequestElement extends InitializationRequestEle
 
     private final OrderAttributeType.Enum orderAttribute;
     private byte[] userData;
+    private File userFile;
     private Integer orderId;
     private UserSignature userSignature;
     private SecretKeySpec keySpec;
@@ -19,9 +19,18 @@
 
 package org.kopi.ebics.xml;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
 import org.kopi.ebics.exception.EbicsException;
 import org.kopi.ebics.interfaces.ContentFactory;
-import org.kopi.ebics.io.IOUtils;
 import org.kopi.ebics.schema.h003.DataTransferRequestType;
 import org.kopi.ebics.schema.h003.DataTransferRequestType.OrderData;
 import org.kopi.ebics.schema.h003.EbicsRequestDocument.EbicsRequest;
@@ -77,7 +86,7 @@ public class UploadTransferRequestElement extends TransferRequestElement {
     mutable = EbicsXmlFactory.createMutableHeaderType("Transfer", segmentNumber);
     xstatic = EbicsXmlFactory.createStaticHeaderType(session.getBankID(), transactionId);
     header = EbicsXmlFactory.createEbicsRequestHeader(true, mutable, xstatic);
-    orderData = EbicsXmlFactory.createEbicsRequestOrderData(IOUtils.getFactoryContent(content));
+    orderData = EbicsXmlFactory.createEbicsRequestOrderData(SEGMENT_MARKER);
     dataTransfer = EbicsXmlFactory.createDataTransferRequestType(orderData);
     body = EbicsXmlFactory.createEbicsRequestBody(dataTransfer);
     request = EbicsXmlFactory.createEbicsRequest(session.getConfiguration().getRevision(),
@@ -87,10 +96,105 @@ public class UploadTransferRequestElement extends TransferRequestElement {
     document = EbicsXmlFactory.createEbicsRequestDocument(request);
   }
 
+  /**
+   * Returns the request to be sent. The order data is not authenticated,
+   * the request is then built and signed with a small placeholder as order
+   * data. The returned content streams the printed request around the
+   * placeholder and base64-encodes the segment straight from its content
+   * in place of it, so that the segment is never copied into the XML
+   * document.
+   * @return the request content.
+   * @throws EbicsException
+   */
+  public ContentFactory getRequestContent() throws EbicsException {
+    byte[]			request;
+    byte[]			marker;
+    int				index;
+
+    request = prettyPrint();
+    marker = Base64.encodeBase64(SEGMENT_MARKER);
+    index = indexOf(request, marker);
+    if (index == -1) {
+      throw new EbicsException("Order data placeholder not found");
+    }
+
+    return new SegmentRequestContentFactory(Arrays.copyOfRange(request, 0, index),
+                                            content,
+                                            Arrays.copyOfRange(request, index + marker.length, request.length));
+  }
+
+  @Override
+  public void save(OutputStream out) throws EbicsException {
+    byte[]			buffer;
+    int				read;
+
+    buffer = new byte[8192];
+    try (InputStream in = getRequestContent().getContent()) {
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      out.flush();
+      out.close();
+    } catch (IOException e) {
+      throw new EbicsException(e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the index of the first occurrence of a pattern in an array.
+   * @param array the array
+   * @param pattern the pattern to find
+   * @return the pattern index, -1 if not found
+   */
+  private static int indexOf(byte[] array, byte[] pattern) {
+    search:
+    for (int i = 0; i <= array.length - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (array[i + j] != pattern[j]) {
+          continue search;
+        }
+      }
+      return i;
+    }
+
+    return -1;
+  }
+
+  /**
+   * The printed request with the segment base64-encoded on the fly
+   * between its head and its tail.
+   */
+  private static class SegmentRequestContentFactory implements ContentFactory {
+
+    SegmentRequestContentFactory(byte[] head, ContentFactory segment, byte[] tail) {
+      this.head = head;
+      this.segment = segment;
+      this.tail = tail;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                                       new ByteArrayInputStream(head),
+                                       new Base64InputStream(segment.getContent(), true, 0, null),
+                                       new ByteArrayInputStream(tail))));
+    }
+
+    private final byte[]			head;
+    private final ContentFactory		segment;
+    private final byte[]			tail;
+    private static final long 			serialVersionUID = 3158442036925517386L;
+  }
+
   // --------------------------------------------------------------------
   // DATA MEMBERS
   // --------------------------------------------------------------------
 
   private ContentFactory		content;
+
+  /**
+   * Placeholder order data, printed as <code>T3JkZXJEYXRhU2VnbWVudA==</code>.
+   */
+  private static final byte[]		SEGMENT_MARKER = "OrderDataSegment".getBytes();
   private static final long 		serialVersionUID = 8465397978597444978L;
 }
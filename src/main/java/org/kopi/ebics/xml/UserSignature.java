@@ -20,12 +20,16 @@
 package org.kopi.ebics.xml;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 
 import org.apache.commons.codec.binary.Hex;
 import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.interfaces.ContentFactory;
 import org.kopi.ebics.interfaces.EbicsUser;
+import org.kopi.ebics.metrics.Metrics;
+import org.kopi.ebics.metrics.Phase;
 import org.kopi.ebics.schema.s001.OrderSignatureDataType;
 import org.kopi.ebics.schema.s001.UserSignatureDataSigBookType;
 
@@ -58,18 +62,46 @@ public class UserSignature extends DefaultEbicsRootElement {
     this.signatureVersion = signatureVersion;
   }
 
+  /**
+   * Constructs a new <code>UserSignature</code> element for
+   * an Ebics user and a data to sign that is read as a stream.
+   * @param user the ebics user
+   * @param signatureVersion the signature version
+   * @param content the data to be signed
+   */
+  public UserSignature(EbicsUser user,
+                       String name,
+                       String signatureVersion,
+                       ContentFactory content)
+  {
+    this.user = user;
+    this.content = content;
+    this.name = name;
+    this.signatureVersion = signatureVersion;
+  }
+
   @Override
   public void build() throws EbicsException {
     UserSignatureDataSigBookType 	userSignatureData;
     OrderSignatureDataType		orderSignatureData;
     byte[]				signature;
+    long				start;
 
+    start = Metrics.start();
     try {
-      signature = user.sign(toSign);
+      if (toSign != null) {
+        signature = user.sign(toSign);
+      } else {
+        try (InputStream input = content.getContent()) {
+          signature = user.sign(input);
+        }
+      }
     } catch (IOException e) {
       throw new EbicsException(e.getMessage());
     } catch (GeneralSecurityException e) {
       throw new EbicsException(e.getMessage());
+    } finally {
+      Metrics.stop(Phase.SIGNATURE, start);
     }
 
     orderSignatureData = EbicsXmlFactory.createOrderSignatureDataType(signatureVersion,
@@ -99,6 +131,7 @@ public class UserSignature extends DefaultEbicsRootElement {
   private EbicsUser 			user;
   private String 			signatureVersion;
   private byte[]			toSign;
+  private ContentFactory		content;
   private String			name;
   private static final long 		serialVersionUID = 2992372604876703738L;
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.xml;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Tells how the outgoing requests are checked against the EBICS schemas
+ * before being sent.
+ *
+ * <p>The schema validation of a request mostly catches programming errors:
+ * once a request type has been built and validated successfully the
+ * following ones have the same structure. The policy allows to:
+ * <ul>
+ *   <li><code>always</code>: validate every request, the default
+ *   <li><code>first-N-per-type</code>: validate the first N requests of
+ *       each request type only
+ *   <li><code>structural-only</code>: validate every request but skip the
+ *       content of the large base64 elements, the order data segments
+ *   <li><code>off</code>: never validate
+ * </ul>
+ *
+ */
+public class ValidationPolicy {
+
+  /**
+   * The validation modes.
+   */
+  public enum Mode {
+    ALWAYS,
+    FIRST_N_PER_TYPE,
+    STRUCTURAL_ONLY,
+    OFF
+  }
+
+  /**
+   * Constructs a new <code>ValidationPolicy</code>.
+   * @param mode the validation mode
+   * @param count the number of requests validated per type in
+   *              {@link Mode#FIRST_N_PER_TYPE} mode
+   */
+  public ValidationPolicy(Mode mode, int count) {
+    this.mode = mode;
+    this.count = count;
+    validated = new ConcurrentHashMap<Class<?>, AtomicInteger>();
+  }
+
+  /**
+   * Parses a validation mode name.
+   * @param name the mode name, as <code>first-N-per-type</code>
+   * @return the validation mode
+   */
+  public static Mode parseMode(String name) {
+    return Mode.valueOf(name.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+  }
+
+  /**
+   * Returns the policy applied to the requests of the sessions that do
+   * not set their own one: every request is validated.
+   * @return the default policy
+   */
+  public static ValidationPolicy getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Tells if a request should be validated.
+   * @param type the class of the request element
+   * @return True if the request should be validated
+   */
+  public boolean shouldValidate(Class<?> type) {
+    AtomicInteger		counter;
+
+    switch (mode) {
+    case OFF:
+      return false;
+    case FIRST_N_PER_TYPE:
+      counter = validated.get(type);
+      if (counter == null) {
+        validated.putIfAbsent(type, new AtomicInteger());
+        counter = validated.get(type);
+      }
+      return counter.get() < count && counter.incrementAndGet() <= count;
+    default:
+      return true;
+    }
+  }
+
+  /**
+   * Tells if the content of the large base64 elements is skipped.
+   * @return True if only the structure of the requests is validated
+   */
+  public boolean isStructuralOnly() {
+    return mode == Mode.STRUCTURAL_ONLY;
+  }
+
+  /**
+   * Returns the validation mode.
+   * @return the validation mode
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private final Mode					mode;
+  private final int					count;
+  private final ConcurrentMap<Class<?>, AtomicInteger>	validated;
+
+  private static final ValidationPolicy		DEFAULT = new ValidationPolicy(Mode.ALWAYS, 0);
+}
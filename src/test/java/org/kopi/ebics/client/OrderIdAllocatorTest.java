@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.kopi.ebics.exception.EbicsException;
+
+
+/**
+ * Tests the order IDs handed out by the {@link OrderIdAllocator}.
+ *
+ */
+public class OrderIdAllocatorTest extends TestCase {
+
+  @Override
+  protected void setUp() throws IOException {
+    counterFile = File.createTempFile("ebics-orderid-", ".counter");
+    counterFile.delete();
+  }
+
+  @Override
+  protected void tearDown() {
+    counterFile.delete();
+  }
+
+  public void testSeededByLastOrderId() throws EbicsException {
+    OrderIdAllocator		allocator;
+
+    allocator = new OrderIdAllocator(counterFile, 4);
+    assertEquals(MIN_ORDER_ID + 1, allocator.next(0));
+    assertEquals(MIN_ORDER_ID + 2, allocator.next(0));
+
+    allocator = new OrderIdAllocator(counterFile, 4);
+    // the rest of the first block is skipped
+    assertEquals(MIN_ORDER_ID + 5, allocator.next(0));
+  }
+
+  public void testLastOrderIdBeyondCounter() throws EbicsException {
+    OrderIdAllocator		allocator;
+
+    new OrderIdAllocator(counterFile, 4).next(0);
+    allocator = new OrderIdAllocator(counterFile, 4);
+    assertEquals(MIN_ORDER_ID + 101, allocator.next(MIN_ORDER_ID + 100));
+  }
+
+  public void testWrapsAround() throws EbicsException {
+    OrderIdAllocator		allocator;
+
+    allocator = new OrderIdAllocator(counterFile, 2);
+    assertEquals(MAX_ORDER_ID, allocator.next(MAX_ORDER_ID - 1));
+    assertEquals(MIN_ORDER_ID, allocator.next(MAX_ORDER_ID - 1));
+    assertEquals(MIN_ORDER_ID + 1, allocator.next(MAX_ORDER_ID - 1));
+  }
+
+  public void testAllocatorsShareTheCounter() throws EbicsException {
+    OrderIdAllocator		first;
+    OrderIdAllocator		second;
+    Set<Integer>		ids;
+
+    first = new OrderIdAllocator(counterFile, 3);
+    second = new OrderIdAllocator(counterFile, 3);
+    ids = new HashSet<Integer>();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(ids.add(first.next(0)));
+      assertTrue(ids.add(second.next(0)));
+    }
+  }
+
+  public void testInvalidBlockSize() {
+    try {
+      new OrderIdAllocator(counterFile, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private File				counterFile;
+
+  private static final int		MIN_ORDER_ID = 10*36*36*36;
+  private static final int		MAX_ORDER_ID = 36*36*36*36 - 1;
+}
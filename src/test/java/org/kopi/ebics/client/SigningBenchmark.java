@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.kopi.ebics.utils.NamedThreadFactory;
+import org.kopi.ebics.utils.Utils;
+import org.kopi.ebics.xml.SignedInfo;
+
+
+/**
+ * Benchmark of the request signing steps.
+ *
+ * <p>Times the canonicalization of the authenticated elements of a signed
+ * transfer request, which gives its digest, and the canonicalization of
+ * its SignedInfo element, which is the signed input, over a number of
+ * iterations and threads. The benchmark is kept with the test classes,
+ * out of the client jar:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... org.kopi.ebics.client.SigningBenchmark [iterations] [threads]
+ * </pre>
+ *
+ */
+public final class SigningBenchmark {
+
+  private SigningBenchmark() {}
+
+  public static void main(String[] args) throws Exception {
+    final byte[]		request;
+    int				iterations;
+    int				threads;
+
+    iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+    WarmUp.initSecurity();
+    WarmUp.loadSchemas();
+    request = WarmUp.buildRequest();
+
+    run("authenticated c14n", request, iterations, threads, false);
+    run("SignedInfo c14n", request, iterations, threads, true);
+  }
+
+  /**
+   * Runs a canonicalization step, once unmeasured to warm up the
+   * compiler, then measured, and reports the mean time per request.
+   */
+  private static void run(String step,
+                          final byte[] request,
+                          final int iterations,
+                          int threads,
+                          final boolean signedInfo)
+    throws Exception
+  {
+    ExecutorService		executor;
+    List<Future<Void>>		tasks;
+    long			start;
+
+    executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("ebics-benchmark"));
+    try {
+      for (int pass = 0; pass < 2; pass++) {
+        tasks = new ArrayList<Future<Void>>();
+        start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+          tasks.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              for (int i = 0; i < iterations; i++) {
+                if (signedInfo) {
+                  new SignedInfo(null, null).canonize(request);
+                } else {
+                  Utils.canonize(request);
+                }
+              }
+              return null;
+            }
+          }));
+        }
+        for (Future<Void> task : tasks) {
+          task.get();
+        }
+        if (pass == 1) {
+          System.out.println(String.format("%-24s %8.1f us/request (%d threads, %d requests/s)",
+                                           step,
+                                           TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / (double) iterations,
+                                           threads,
+                                           (long) threads * iterations * 1000000000L / (System.nanoTime() - start)));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
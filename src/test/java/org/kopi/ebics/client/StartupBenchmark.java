@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+
+package org.kopi.ebics.client;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Startup benchmark of the client.
+ *
+ * <p>Reports how long a fresh process takes to reach its first request:
+ * the JVM startup, then each subsystem initialized by the {@link WarmUp}
+ * and the first request built, signed and printed. A second request shows
+ * the cost left once everything is loaded. Compare runs with and without
+ * the class data sharing archive of the <code>cds</code> profile. The
+ * benchmark is kept with the test classes, out of the client jar:
+ *
+ * <pre>
+ * java -cp target/ebics-&lt;version&gt;.jar:$(cat target/classpath.txt):target/test-classes org.kopi.ebics.client.StartupBenchmark
+ * java -XX:SharedArchiveFile=target/ebics.jsa -cp target/ebics-&lt;version&gt;.jar:$(cat target/classpath.txt):target/test-classes org.kopi.ebics.client.StartupBenchmark
+ * </pre>
+ *
+ */
+public final class StartupBenchmark {
+
+  private StartupBenchmark() {}
+
+  public static void main(String[] args) throws Exception {
+    long			start;
+    int				types;
+
+    report("jvm startup", ManagementFactory.getRuntimeMXBean().getUptime());
+
+    start = System.nanoTime();
+    WarmUp.initSecurity();
+    report("security init", elapsed(start));
+
+    start = System.nanoTime();
+    types = WarmUp.loadSchemas();
+    report("schemas (" + types + " types)", elapsed(start));
+
+    start = System.nanoTime();
+    WarmUp.buildRequest();
+    report("first request", elapsed(start));
+
+    start = System.nanoTime();
+    WarmUp.initHttpClient();
+    report("http client", elapsed(start));
+
+    report("time to first request", ManagementFactory.getRuntimeMXBean().getUptime());
+
+    start = System.nanoTime();
+    WarmUp.buildRequest();
+    report("next request", elapsed(start));
+  }
+
+  private static long elapsed(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  private static void report(String step, long millis) {
+    System.out.println(String.format("%-24s %6d ms", step, millis));
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.io;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.kopi.ebics.exception.EbicsException;
+
+
+/**
+ * Tests the parsing of the CSV manifests by the {@link ManifestReader}.
+ *
+ */
+public class ManifestReaderTest extends TestCase {
+
+  public void testLines() throws IOException, EbicsException {
+    ManifestReader		reader;
+
+    reader = open("userId, orderType ,file\n"
+                  + "# comment\n"
+                  + "\n"
+                  + "U1,FUL, a.xml \n"
+                  + "U2,,\n"
+                  + "U3\n",
+                  "userId", "orderType");
+    assertTrue(reader.hasColumn("file"));
+    assertFalse(reader.hasColumn("partnerId"));
+
+    assertTrue(reader.next());
+    assertEquals(4, reader.getLineNumber());
+    assertEquals("U1", reader.require("userId"));
+    assertEquals("FUL", reader.get("orderType"));
+    assertEquals("a.xml", reader.get("file"));
+    assertNull(reader.get("partnerId"));
+
+    assertTrue(reader.next());
+    assertEquals("U2", reader.get("userId"));
+    assertNull(reader.get("orderType"));
+    assertNull(reader.get("file"));
+
+    assertTrue(reader.next());
+    assertNull(reader.get("file"));
+    try {
+      reader.require("orderType");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("missing value for orderType", e.getMessage());
+    }
+    assertEquals("manifest:6: bad line", reader.error("bad line").getMessage());
+
+    assertFalse(reader.next());
+    reader.close();
+  }
+
+  public void testMissingColumn() throws IOException {
+    try {
+      open("userId,file\nU1,a.xml\n", "userId", "orderType");
+      fail();
+    } catch (EbicsException e) {
+      assertEquals("manifest: missing column orderType", e.getMessage());
+    }
+  }
+
+  public void testEmpty() throws IOException, EbicsException {
+    ManifestReader		reader;
+
+    reader = open("", new String[0]);
+    assertFalse(reader.next());
+    reader.close();
+  }
+
+  private static ManifestReader open(String content, String... required) throws IOException, EbicsException {
+    return new ManifestReader("manifest", new StringReader(content), required);
+  }
+}
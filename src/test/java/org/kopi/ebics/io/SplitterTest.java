@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.Security;
+import java.util.Arrays;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.binary.Base64;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.kopi.ebics.exception.EbicsException;
+
+
+/**
+ * Tests the segmentation of the order data by the {@link Splitter}.
+ *
+ */
+public class SplitterTest extends TestCase {
+
+  @Override
+  protected void setUp() {
+    Security.addProvider(new BouncyCastleProvider());
+  }
+
+  public void testSizes() {
+    assertEquals(0, Splitter.getMaxContentSize(3));
+    assertEquals(3, Splitter.getMaxContentSize(4));
+    assertEquals(3, Splitter.getMaxContentSize(7));
+    assertEquals(786432, Splitter.getMaxContentSize(Splitter.DEFAULT_SEGMENT_SIZE));
+    assertEquals(0, Splitter.getEncodedSize(0));
+    assertEquals(4, Splitter.getEncodedSize(1));
+    assertEquals(4, Splitter.getEncodedSize(3));
+    assertEquals(8, Splitter.getEncodedSize(4));
+    assertEquals(Splitter.DEFAULT_SEGMENT_SIZE, Splitter.getEncodedSize(786432));
+  }
+
+  public void testSegments() throws EbicsException {
+    for (int size : new int[] { 0, 1, 47, 48, 49, 1000 }) {
+      for (int maxSegmentSize : new int[] { 4, 7, 8, 64, 1024 }) {
+        checkSegments(size, maxSegmentSize);
+      }
+    }
+  }
+
+  public void testSegmentSizeTooSmall() {
+    try {
+      new Splitter(new byte[0]).setMaxSegmentSize(3);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Splits an input and checks that every segment fits in the maximum
+   * segment size once base64 coded, that every segment but the last one is
+   * full and that the segments hold the whole content.
+   */
+  private void checkSegments(int size, int maxSegmentSize) throws EbicsException {
+    Splitter			splitter;
+    ByteArrayOutputStream	segments;
+    String			message;
+    int				count;
+
+    splitter = new Splitter(new byte[size]);
+    splitter.setMaxSegmentSize(maxSegmentSize);
+    splitter.readInput(false, KEY);
+    message = size + " bytes in segments of " + maxSegmentSize;
+    count = splitter.getSegmentNumber();
+    segments = new ByteArrayOutputStream();
+    for (int i = 1; i <= count; i++) {
+      ByteBuffer		segment;
+      byte[]			content;
+
+      segment = splitter.getSegment(i);
+      content = new byte[segment.remaining()];
+      segment.get(content);
+      assertTrue(message, Base64.encodeBase64(content).length <= maxSegmentSize);
+      if (i < count) {
+        assertEquals(message, Splitter.getMaxContentSize(maxSegmentSize), content.length);
+      }
+      segments.write(content, 0, content.length);
+    }
+    assertTrue(message, count >= 1);
+    assertEquals(message, splitter.getContent().length, segments.size());
+    assertTrue(message, Arrays.equals(splitter.getContent(), segments.toByteArray()));
+    splitter.dispose();
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private static final SecretKeySpec	KEY = new SecretKeySpec(new byte[16], "AES");
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.metrics;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the bucketing and the statistics of the {@link Histogram}.
+ *
+ */
+public class HistogramTest extends TestCase {
+
+  public void testEmpty() {
+    Histogram			histogram;
+
+    histogram = new Histogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0.0, histogram.getMean(), 0.0);
+    assertEquals(0, histogram.getValueAtPercentile(50));
+  }
+
+  public void testStatistics() {
+    Histogram			histogram;
+
+    histogram = new Histogram();
+    histogram.record(10);
+    histogram.record(20);
+    histogram.record(-5);
+    assertEquals(3, histogram.getCount());
+    assertEquals(30, histogram.getTotal());
+    assertEquals(0, histogram.getMin());
+    assertEquals(20, histogram.getMax());
+    assertEquals(10.0, histogram.getMean(), 0.0);
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+  }
+
+  public void testSmallValuesAreExact() {
+    Histogram			histogram;
+
+    histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(50, histogram.getValueAtPercentile(50));
+    assertEquals(99, histogram.getValueAtPercentile(99));
+    assertEquals(100, histogram.getValueAtPercentile(100));
+    assertEquals(1, histogram.getValueAtPercentile(0));
+  }
+
+  public void testRelativePrecision() {
+    long[]			values = { 128, 1000, 65537, 123456789L, 1L << 40, Long.MAX_VALUE / 3 };
+
+    for (long value : values) {
+      Histogram			histogram;
+      long			percentile;
+
+      histogram = new Histogram();
+      histogram.record(value);
+      histogram.record(Long.MAX_VALUE / 2);
+      percentile = histogram.getValueAtPercentile(50);
+      assertTrue(value + " -> " + percentile, percentile >= value);
+      assertTrue(value + " -> " + percentile, percentile - value <= value / 64);
+    }
+  }
+
+  public void testPercentileNeverExceedsMax() {
+    Histogram			histogram;
+
+    histogram = new Histogram();
+    histogram.record(1000);
+    assertEquals(1000, histogram.getValueAtPercentile(100));
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 1990-2012 kopiLeft Development SARL, Bizerte, Tunisia
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ * $Id$
+ */
+
+package org.kopi.ebics.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+
+import junit.framework.TestCase;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.kopi.ebics.client.Bank;
+import org.kopi.ebics.client.Partner;
+import org.kopi.ebics.client.User;
+import org.kopi.ebics.exception.EbicsException;
+import org.kopi.ebics.interfaces.ContentFactory;
+import org.kopi.ebics.io.ByteArrayContentFactory;
+import org.kopi.ebics.session.DefaultConfiguration;
+import org.kopi.ebics.session.EbicsSession;
+import org.kopi.ebics.session.OrderType;
+
+
+/**
+ * Tests that the segment requests spliced from a
+ * {@link TransferRequestTemplate} are the same, byte for byte, as the
+ * requests built, canonized, signed and printed in full.
+ *
+ */
+public class TransferRequestTemplateTest extends TestCase {
+
+  @Override
+  protected void setUp() throws GeneralSecurityException, IOException {
+    Bank			bank;
+    User			user;
+
+    if (session == null) {
+      org.apache.xml.security.Init.init();
+      Security.addProvider(new BouncyCastleProvider());
+      bank = new Bank(new URL("https://localhost/ebics"), "Test bank", "TESTHOST", false);
+      user = new User(new Partner(bank, "PARTNER1"), "USER1", "Test user", "user@test.org", "FR", "Test", null);
+      session = new EbicsSession(user, new DefaultConfiguration(new File(System.getProperty("java.io.tmpdir"),
+                                                                         "ebics-test").getPath()));
+    }
+  }
+
+  public void testDownloadSegments() throws EbicsException {
+    TransferRequestTemplate	template;
+
+    template = new TransferRequestTemplate(session, OrderType.FDL, TRANSACTION_ID, false);
+    // the requests are spliced, not built again
+    assertNotNull(template.print(1, false));
+    assertNotNull(template.print(1, true));
+    for (int segmentNumber = 2; segmentNumber <= 11; segmentNumber++) {
+      boolean			lastSegment;
+      byte[]			expected;
+      byte[]			actual;
+
+      lastSegment = segmentNumber == 11;
+      expected = printDownload(segmentNumber, lastSegment, null);
+      actual = printDownload(segmentNumber, lastSegment, template);
+      assertEquals("segment " + segmentNumber, new String(expected), new String(actual));
+    }
+  }
+
+  public void testUploadSegments() throws EbicsException, IOException {
+    TransferRequestTemplate	template;
+
+    template = new TransferRequestTemplate(session, OrderType.FUL, TRANSACTION_ID, true);
+    assertNotNull(template.print(1, false));
+    assertNotNull(template.print(1, true));
+    for (int segmentNumber = 1; segmentNumber <= 10; segmentNumber++) {
+      boolean			lastSegment;
+      ContentFactory		content;
+      byte[]			expected;
+      byte[]			actual;
+
+      lastSegment = segmentNumber == 10;
+      content = new ByteArrayContentFactory(("segment " + segmentNumber).getBytes());
+      expected = printUpload(segmentNumber, lastSegment, content, null);
+      actual = printUpload(segmentNumber, lastSegment, content, template);
+      assertEquals("segment " + segmentNumber, new String(expected), new String(actual));
+    }
+  }
+
+  public void testOtherTransaction() {
+    TransferRequestTemplate	template;
+
+    template = new TransferRequestTemplate(session, OrderType.FUL, TRANSACTION_ID, true);
+    assertTrue(template.matches(OrderType.FUL, TRANSACTION_ID.clone(), true));
+    assertFalse(template.matches(OrderType.FUL, TRANSACTION_ID, false));
+    assertFalse(template.matches(OrderType.FDL, TRANSACTION_ID, true));
+    assertFalse(template.matches(OrderType.FUL, new byte[16], true));
+  }
+
+  private byte[] printDownload(int segmentNumber, boolean lastSegment, TransferRequestTemplate template)
+    throws EbicsException
+  {
+    DownloadTransferRequestElement	request;
+
+    request = new DownloadTransferRequestElement(session, OrderType.FDL, segmentNumber, lastSegment, TRANSACTION_ID);
+    request.setTemplate(template);
+    request.build();
+    request.validate();
+    return request.prettyPrint();
+  }
+
+  private byte[] printUpload(int segmentNumber,
+                             boolean lastSegment,
+                             ContentFactory content,
+                             TransferRequestTemplate template)
+    throws EbicsException, IOException
+  {
+    UploadTransferRequestElement	request;
+    ByteArrayOutputStream		output;
+    byte[]				buffer;
+    int					read;
+
+    request = new UploadTransferRequestElement(session, OrderType.FUL, segmentNumber, lastSegment, TRANSACTION_ID, content);
+    request.setTemplate(template);
+    request.build();
+    request.validate();
+    output = new ByteArrayOutputStream();
+    buffer = new byte[4096];
+    try (InputStream in = request.getRequestContent().getContent()) {
+      while ((read = in.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+    }
+    return output.toByteArray();
+  }
+
+  // --------------------------------------------------------------------
+  // DATA MEMBERS
+  // --------------------------------------------------------------------
+
+  private static EbicsSession			session;
+
+  private static final byte[]			TRANSACTION_ID = {
+    0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xAB, (byte) 0xCD, (byte) 0xEF,
+    0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xAB, (byte) 0xCD, (byte) 0xEF
+  };
+}